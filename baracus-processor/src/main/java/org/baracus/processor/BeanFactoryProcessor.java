@@ -0,0 +1,196 @@
+package org.baracus.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor generating a BeanFactory for every class annotated with
+ * org.baracus.annotations.Bean. The generated factory is named &lt;BeanClass&gt;BeanFactory,
+ * lives in the package of the bean class and implements org.baracus.context.BeanFactory.
+ * <p/>
+ * The factory calls the public constructor with the most parameters directly, so the bean
+ * container creates the bean without reflection. The container passes registered beans and the
+ * Android Context as constructor arguments, which enables constructor injection into final fields :
+ * <pre>
+ * {@code
+ * @Bean
+ * public class CustomerService {
+ *     private final CustomerDao customerDao;
+ *
+ *     public CustomerService(CustomerDao customerDao) {
+ *         this.customerDao = customerDao;
+ *     }
+ * }
+ * }
+ * </pre>
+ * Abstract classes and interfaces are skipped. Classes without a suitable constructor are
+ * reported as a warning and left to the reflective instantiation.
+ */
+@SupportedAnnotationTypes(BeanFactoryProcessor.BEAN)
+public class BeanFactoryProcessor extends AbstractProcessor {
+
+    static final String BEAN = "org.baracus.annotations.Bean";
+
+    private static final String BEAN_FACTORY = "org.baracus.context.BeanFactory";
+
+    private static final String SUFFIX = "BeanFactory";
+
+    private Messager messager;
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        messager = processingEnv.getMessager();
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+
+        TypeElement bean = elements.getTypeElement(BEAN);
+        if (bean == null) {
+            return false;
+        }
+
+        // @Bean also documents injection targets, only classes are of interest here
+        for (TypeElement beanClass : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(bean))) {
+            try {
+                generate(beanClass);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Could not write the BeanFactory : " + e.getMessage(), beanClass);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement beanClass) throws IOException {
+        if (beanClass.getKind() != ElementKind.CLASS || beanClass.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+        if (beanClass.getModifiers().contains(Modifier.PRIVATE)
+                || (beanClass.getNestingKind() == NestingKind.MEMBER && !beanClass.getModifiers().contains(Modifier.STATIC))) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "No BeanFactory generated, the bean must be a non-private top level or static nested class", beanClass);
+            return;
+        }
+
+        ExecutableElement constructor = findConstructor(beanClass);
+        if (constructor == null) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "No BeanFactory generated, there is no public constructor taking beans or the Context only", beanClass);
+            return;
+        }
+
+        String packageName = elements.getPackageOf(beanClass).getQualifiedName().toString();
+        String beanName = beanClass.getQualifiedName().toString();
+        if (packageName.length() > 0) {
+            beanName = beanName.substring(packageName.length() + 1);
+        }
+        // matches the lookup of the bean container, which replaces the $ of nested classes
+        String factoryName = beanName.replace('.', '_') + SUFFIX;
+
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        StringBuilder dependencies = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < parameters.size(); ++i) {
+            String typeName = types.erasure(parameters.get(i).asType()).toString();
+            if (i > 0) {
+                dependencies.append(", ");
+                arguments.append(", ");
+            }
+            dependencies.append(typeName).append(".class");
+            arguments.append('(').append(typeName).append(") dependencies[").append(i).append(']');
+        }
+
+        String qualifiedFactoryName = packageName.length() > 0 ? packageName + "." + factoryName : factoryName;
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedFactoryName, beanClass).openWriter());
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * BeanFactory for " + beanName + ", generated by " + getClass().getName() + ". Do not edit.");
+            out.println(" */");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            out.println("public final class " + factoryName + " implements " + BEAN_FACTORY + "<" + beanName + "> {");
+            out.println();
+            out.println("    private static final Class<?>[] DEPENDENCIES = {" + dependencies + "};");
+            out.println();
+            out.println("    @Override");
+            out.println("    public Class<?>[] getDependencies() {");
+            out.println("        return DEPENDENCIES;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + beanName + " create(Object[] dependencies) {");
+            out.println("        return new " + beanName + "(" + arguments + ");");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the public constructor with the most parameters, which are all classes or interfaces, or null.
+     * Ties are broken by the parameter type names like the BeanContainer does.
+     */
+    private ExecutableElement findConstructor(TypeElement beanClass) {
+        ExecutableElement result = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(beanClass.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            boolean injectable = true;
+            for (VariableElement parameter : constructor.getParameters()) {
+                TypeMirror type = types.erasure(parameter.asType());
+                injectable &= type.getKind() == TypeKind.DECLARED;
+            }
+            if (!injectable) {
+                continue;
+            }
+            int order = result == null ? 1 : constructor.getParameters().size() - result.getParameters().size();
+            if (order == 0) {
+                order = compareTypeNames(result, constructor);
+            }
+            if (order > 0) {
+                result = constructor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * compares the binary parameter type names of two constructors with the same number of parameters
+     */
+    private int compareTypeNames(ExecutableElement a, ExecutableElement b) {
+        for (int i = 0; i < a.getParameters().size(); ++i) {
+            int order = binaryName(a.getParameters().get(i)).compareTo(binaryName(b.getParameters().get(i)));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    private String binaryName(VariableElement parameter) {
+        TypeElement type = (TypeElement) types.asElement(types.erasure(parameter.asType()));
+        return elements.getBinaryName(type).toString();
+    }
+}
@@ -0,0 +1,581 @@
+package org.baracus.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor generating a RowMapper for every model bean annotated with
+ * org.baracus.annotations.Table. The generated mapper is named &lt;ModelClass&gt;RowMapper,
+ * lives in the package of the model class and extends org.baracus.dao.GeneratedRowMapper.
+ * <p/>
+ * The generated code reads every column by its field index, binds it straight into the
+ * precompiled statements of the DAO and creates model instances with their default constructor,
+ * so no reflection is involved at runtime. Primitive members are read and bound without boxing.
+ * <p/>
+ * Add this artifact to the annotation processor path of Your application, e.g. :
+ * <pre>
+ * {@code
+ * <dependency>
+ *     <groupId>org.baracus</groupId>
+ *     <artifactId>baracus-processor</artifactId>
+ *     <version>1.1.0-SNAPSHOT</version>
+ *     <scope>provided</scope>
+ * </dependency>
+ * }
+ * </pre>
+ * The processor only refers to the framework classes by name, so it does not depend on the
+ * framework or Android.
+ */
+@SupportedAnnotationTypes(RowMapperProcessor.TABLE)
+public class RowMapperProcessor extends AbstractProcessor {
+
+    static final String TABLE = "org.baracus.annotations.Table";
+    static final String COLUMN = "org.baracus.annotations.Column";
+
+    private static final String ABSTRACT_MODEL_BASE = "org.baracus.orm.AbstractModelBase";
+    private static final String LEGACY_MODEL_BASE = "org.baracus.orm.LegacyModelBase";
+    private static final String OPTIMISTIC_LOCKING = "org.baracus.orm.OptmisticLocking";
+
+    private static final String SUFFIX = "RowMapper";
+
+    /**
+     * the supported column types
+     */
+    enum Kind {
+        STRING, LONG, INT, SHORT, DOUBLE, FLOAT, BOOLEAN, DATE, BLOB
+    }
+
+    /**
+     * a mapped column of the model bean
+     */
+    static final class ColumnSpec {
+        String constant;
+        String fieldExpression;
+        Kind kind;
+        boolean primitive;
+        String getter;
+        String setter;
+    }
+
+    private Messager messager;
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        messager = processingEnv.getMessager();
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+
+        TypeElement table = elements.getTypeElement(TABLE);
+        if (table == null) {
+            return false;
+        }
+
+        for (TypeElement model : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(table))) {
+            try {
+                generate(model);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Could not write the RowMapper : " + e.getMessage(), model);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement model) throws IOException {
+        if (!checkModel(model)) {
+            return;
+        }
+
+        String packageName = elements.getPackageOf(model).getQualifiedName().toString();
+        String modelName = model.getQualifiedName().toString();
+        if (packageName.length() > 0) {
+            modelName = modelName.substring(packageName.length() + 1);
+        }
+        String mapperName = modelName.replace('.', '_') + SUFFIX;
+
+        AnnotationMirror tableAnnotation = getAnnotation(model, TABLE);
+        String tableName = (String) getValue(tableAnnotation, "value");
+        String nameField = (String) getValue(tableAnnotation, "nameField");
+
+        List<ColumnSpec> columns = collectColumns(model, modelName, packageName);
+        if (columns == null) {
+            return;
+        }
+
+        String idField = isSubtype(model, LEGACY_MODEL_BASE) ? LEGACY_MODEL_BASE + ".idCol" : "org.baracus.orm.ModelBase.idCol";
+
+        String qualifiedMapperName = packageName.length() > 0 ? packageName + "." + mapperName : mapperName;
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedMapperName, model).openWriter());
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import android.content.ContentValues;");
+            out.println("import android.database.Cursor;");
+            out.println("import android.database.sqlite.SQLiteProgram;");
+            out.println("import org.baracus.dao.GeneratedRowMapper;");
+            out.println("import org.baracus.orm.Field;");
+            out.println();
+            out.println("/**");
+            out.println(" * RowMapper for " + modelName + ", generated by " + getClass().getName() + ". Do not edit.");
+            out.println(" */");
+            out.println("public class " + mapperName + " extends GeneratedRowMapper<" + modelName + "> {");
+            out.println();
+
+            // precomputed fields, indexes and bind positions
+            out.println("    private static final Field ID = " + idField + ";");
+            out.println("    private static final int ID_INDEX = ID.fieldIndex;");
+            for (ColumnSpec column : columns) {
+                out.println();
+                out.println("    private static final Field " + column.constant + " = " + column.fieldExpression + ";");
+                out.println("    private static final int " + column.constant + "_INDEX = " + column.constant + ".fieldIndex;");
+                out.println("    private static final int " + column.constant + "_POSITION = bindPosition(" + modelName + ".fieldList, ID, " + column.constant + ");");
+            }
+            out.println();
+            out.println("    static {");
+            StringBuilder mapped = new StringBuilder();
+            for (ColumnSpec column : columns) {
+                mapped.append(", ").append(column.constant);
+            }
+            out.println("        checkMapped(" + modelName + ".fieldList, ID" + mapped + ");");
+            out.println("    }");
+            out.println();
+
+            out.println("    public " + mapperName + "() {");
+            out.println("        super(\"" + escape(tableName) + "\", " + modelName + ".fieldList, "
+                    + (nameField != null && nameField.length() > 0 ? modelName + "." + nameField : "null") + ");");
+            out.println("    }");
+            out.println();
+
+            // cursor -> model
+            out.println("    @Override");
+            out.println("    public " + modelName + " from(Cursor c) {");
+            out.println("        " + modelName + " result = new " + modelName + "();");
+            out.println("        result.setId(c.getLong(ID_INDEX));");
+            for (ColumnSpec column : columns) {
+                out.println("        " + String.format(column.setter, readExpression(column)) + ";");
+            }
+            out.println("        result.setTransient(false);");
+            out.println("        return result;");
+            out.println("    }");
+            out.println();
+
+            // model -> content values
+            out.println("    @Override");
+            out.println("    public ContentValues getContentValues(" + modelName + " item) {");
+            out.println("        ContentValues result = new ContentValues();");
+            out.println("        if (item.getId() != null) {");
+            out.println("            result.put(ID.fieldName, item.getId());");
+            out.println("        }");
+            for (ColumnSpec column : columns) {
+                if (column.primitive) {
+                    out.println("        result.put(" + column.constant + ".fieldName, " + column.getter + ");");
+                } else {
+                    String value = column.kind == Kind.DATE ? "value.getTime()" : "value";
+                    out.println("        {");
+                    out.println("            " + typeName(column) + " value = " + column.getter + ";");
+                    out.println("            if (value != null) {");
+                    out.println("                result.put(" + column.constant + ".fieldName, " + value + ");");
+                    out.println("            }");
+                    out.println("        }");
+                }
+            }
+            out.println("        return result;");
+            out.println("    }");
+            out.println();
+
+            // model -> statement
+            out.println("    @Override");
+            out.println("    public void bindValues(SQLiteProgram statement, int firstIndex, " + modelName + " item) {");
+            for (ColumnSpec column : columns) {
+                out.println("        " + bindStatement(column, "firstIndex + " + column.constant + "_POSITION") + ";");
+            }
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean checkModel(TypeElement model) {
+        boolean ok = true;
+        if (!isSubtype(model, ABSTRACT_MODEL_BASE)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Table requires a subclass of " + ABSTRACT_MODEL_BASE, model);
+            ok = false;
+        }
+        if (model.getModifiers().contains(Modifier.ABSTRACT) || model.getModifiers().contains(Modifier.PRIVATE)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Table requires a non-private concrete class", model);
+            ok = false;
+        }
+        if (model.getNestingKind() == NestingKind.MEMBER && !model.getModifiers().contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Table requires a static nested class", model);
+            ok = false;
+        }
+        boolean hasDefaultConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasDefaultConstructor = true;
+            }
+        }
+        if (!hasDefaultConstructor) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Table requires a non-private default constructor", model);
+            ok = false;
+        }
+        return ok;
+    }
+
+    /**
+     * collects the @Column members of the model and its superclasses
+     *
+     * @return the columns or null, if there were errors
+     */
+    private List<ColumnSpec> collectColumns(TypeElement model, String modelName, String packageName) {
+        List<ColumnSpec> result = new ArrayList<ColumnSpec>();
+        boolean ok = true;
+        boolean versionMapped = false;
+        // owners of the generated constant names, every column declares NAME, NAME_INDEX and NAME_POSITION
+        Map<String, String> constants = new HashMap<String, String>();
+        constants.put("ID", "the id column");
+        constants.put("ID_INDEX", "the id column");
+
+        for (VariableElement field : declaredFields(model)) {
+            AnnotationMirror column = getAnnotation(field, COLUMN);
+            if (column == null) {
+                continue;
+            }
+            String constant = (String) getValue(column, "value");
+            if ("idCol".equals(constant)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "The id column is mapped automatically", field);
+                ok = false;
+                continue;
+            }
+            versionMapped |= "versionCol".equals(constant);
+
+            ColumnSpec spec = new ColumnSpec();
+            spec.constant = toConstantName(field.getSimpleName().toString());
+            spec.fieldExpression = modelName + "." + constant;
+            if (!resolveKind(spec, field.asType())) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Unsupported column type " + field.asType(), field);
+                ok = false;
+                continue;
+            }
+            if (!resolveAccessors(spec, model, field, packageName)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "No accessible getter and setter for " + field.getSimpleName(), field);
+                ok = false;
+                continue;
+            }
+            if (!claimConstants(constants, spec, field.getSimpleName().toString(), field)) {
+                ok = false;
+                continue;
+            }
+            result.add(spec);
+        }
+
+        if (!versionMapped && isSubtype(model, OPTIMISTIC_LOCKING)) {
+            ColumnSpec version = new ColumnSpec();
+            version.constant = "VERSION";
+            version.fieldExpression = "org.baracus.orm.OptimisticLockingModelBase.versionCol";
+            version.kind = Kind.INT;
+            version.primitive = true;
+            version.getter = "item.getVersion()";
+            version.setter = "result.setVersion(%s)";
+            ok &= claimConstants(constants, version, "the version column", model);
+            result.add(version);
+        }
+
+        return ok ? result : null;
+    }
+
+    /**
+     * registers the constants generated for the column. Different members may map to the same
+     * constant names, e.g. name and nameIndex both produce NAME_INDEX.
+     *
+     * @param constants - the owners of the constants claimed so far
+     * @param column    - the column
+     * @param owner     - the member owning the column
+     * @param element   - the element to report a collision on
+     * @return false, if one of the constants is already taken. The collision is reported.
+     */
+    private boolean claimConstants(Map<String, String> constants, ColumnSpec column, String owner, Element element) {
+        String[] names = {column.constant, column.constant + "_INDEX", column.constant + "_POSITION"};
+        for (String name : names) {
+            String other = constants.get(name);
+            if (other != null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "The generated constant " + name + " of " + owner + " collides with " + other + ". Rename one of the members", element);
+                return false;
+            }
+        }
+        for (String name : names) {
+            constants.put(name, owner);
+        }
+        return true;
+    }
+
+    /**
+     * @return the fields of the type and all its superclasses, including the private ones
+     */
+    private List<VariableElement> declaredFields(TypeElement type) {
+        List<VariableElement> result = new ArrayList<VariableElement>();
+        TypeElement current = type;
+        while (current != null) {
+            result.addAll(ElementFilter.fieldsIn(current.getEnclosedElements()));
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return result;
+    }
+
+    private boolean resolveKind(ColumnSpec spec, TypeMirror type) {
+        spec.primitive = type.getKind().isPrimitive();
+        switch (type.getKind()) {
+            case LONG:
+                spec.kind = Kind.LONG;
+                return true;
+            case INT:
+                spec.kind = Kind.INT;
+                return true;
+            case SHORT:
+                spec.kind = Kind.SHORT;
+                return true;
+            case DOUBLE:
+                spec.kind = Kind.DOUBLE;
+                return true;
+            case FLOAT:
+                spec.kind = Kind.FLOAT;
+                return true;
+            case BOOLEAN:
+                spec.kind = Kind.BOOLEAN;
+                return true;
+            case ARRAY:
+                spec.kind = Kind.BLOB;
+                return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE;
+            case DECLARED:
+                String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+                if ("java.lang.String".equals(name)) {
+                    spec.kind = Kind.STRING;
+                } else if ("java.lang.Long".equals(name)) {
+                    spec.kind = Kind.LONG;
+                } else if ("java.lang.Integer".equals(name)) {
+                    spec.kind = Kind.INT;
+                } else if ("java.lang.Short".equals(name)) {
+                    spec.kind = Kind.SHORT;
+                } else if ("java.lang.Double".equals(name)) {
+                    spec.kind = Kind.DOUBLE;
+                } else if ("java.lang.Float".equals(name)) {
+                    spec.kind = Kind.FLOAT;
+                } else if ("java.lang.Boolean".equals(name)) {
+                    spec.kind = Kind.BOOLEAN;
+                } else if ("java.util.Date".equals(name)) {
+                    spec.kind = Kind.DATE;
+                } else {
+                    return false;
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * prefers bean accessors, falls back to direct member access
+     */
+    private boolean resolveAccessors(ColumnSpec spec, TypeElement model, VariableElement field, String packageName) {
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        String getter = null;
+        String setter = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(model))) {
+            if (!isAccessible(method, packageName) || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String methodName = method.getSimpleName().toString();
+            if (method.getParameters().isEmpty() && types.isSameType(method.getReturnType(), field.asType())
+                    && (methodName.equals("get" + capitalized) || (spec.kind == Kind.BOOLEAN && methodName.equals("is" + capitalized)))) {
+                getter = "item." + methodName + "()";
+            } else if (method.getParameters().size() == 1 && methodName.equals("set" + capitalized)
+                    && types.isSameType(method.getParameters().get(0).asType(), field.asType())) {
+                setter = "result." + methodName + "(%s)";
+            }
+        }
+
+        if (getter == null || setter == null) {
+            boolean direct = isAccessible(field, packageName) && !field.getModifiers().contains(Modifier.FINAL);
+            if (!direct) {
+                return false;
+            }
+            if (getter == null) {
+                getter = "item." + name;
+            }
+            if (setter == null) {
+                setter = "result." + name + " = %s";
+            }
+        }
+
+        spec.getter = getter;
+        spec.setter = setter;
+        return true;
+    }
+
+    private boolean isAccessible(Element element, String packageName) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        // protected and package private members are accessible from the same package
+        return elements.getPackageOf(element).getQualifiedName().toString().equals(packageName);
+    }
+
+    private static String readExpression(ColumnSpec column) {
+        String index = column.constant + "_INDEX";
+        switch (column.kind) {
+            case STRING:
+                return "c.getString(" + index + ")";
+            case BLOB:
+                return "c.getBlob(" + index + ")";
+            case DATE:
+                return "getDate(c, " + index + ")";
+            case LONG:
+                return column.primitive ? "c.getLong(" + index + ")" : "getLongObject(c, " + index + ")";
+            case INT:
+                return column.primitive ? "c.getInt(" + index + ")" : "getIntObject(c, " + index + ")";
+            case SHORT:
+                return column.primitive ? "c.getShort(" + index + ")" : "getShortObject(c, " + index + ")";
+            case DOUBLE:
+                return column.primitive ? "c.getDouble(" + index + ")" : "getDoubleObject(c, " + index + ")";
+            case FLOAT:
+                return column.primitive ? "c.getFloat(" + index + ")" : "getFloatObject(c, " + index + ")";
+            case BOOLEAN:
+                return column.primitive ? "getBoolean(c, " + index + ")" : "getBooleanObject(c, " + index + ")";
+            default:
+                throw new IllegalArgumentException(column.kind.name());
+        }
+    }
+
+    private static String bindStatement(ColumnSpec column, String index) {
+        String value = column.getter;
+        switch (column.kind) {
+            case STRING:
+                return "bindString(statement, " + index + ", " + value + ")";
+            case BLOB:
+                return "bindBlob(statement, " + index + ", " + value + ")";
+            case DATE:
+                return "bindDate(statement, " + index + ", " + value + ")";
+            case LONG:
+            case INT:
+            case SHORT:
+                return column.primitive
+                        ? "statement.bindLong(" + index + ", " + value + ")"
+                        : "bindLong(statement, " + index + ", " + value + ")";
+            case DOUBLE:
+            case FLOAT:
+                return column.primitive
+                        ? "statement.bindDouble(" + index + ", " + value + ")"
+                        : "bindDouble(statement, " + index + ", " + value + ")";
+            case BOOLEAN:
+                return column.primitive
+                        ? "statement.bindLong(" + index + ", " + value + " ? 1 : 0)"
+                        : "bindBoolean(statement, " + index + ", " + value + ")";
+            default:
+                throw new IllegalArgumentException(column.kind.name());
+        }
+    }
+
+    private static String typeName(ColumnSpec column) {
+        switch (column.kind) {
+            case STRING:
+                return "String";
+            case BLOB:
+                return "byte[]";
+            case DATE:
+                return "java.util.Date";
+            case LONG:
+                return "Long";
+            case INT:
+                return "Integer";
+            case SHORT:
+                return "Short";
+            case DOUBLE:
+                return "Double";
+            case FLOAT:
+                return "Float";
+            case BOOLEAN:
+                return "Boolean";
+            default:
+                throw new IllegalArgumentException(column.kind.name());
+        }
+    }
+
+    private boolean isSubtype(TypeElement type, String superTypeName) {
+        TypeElement superType = elements.getTypeElement(superTypeName);
+        return superType != null && types.isSubtype(types.erasure(type.asType()), types.erasure(superType.asType()));
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(annotation).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * configParameterValue -> CONFIG_PARAMETER_VALUE
+     */
+    static String toConstantName(String memberName) {
+        StringBuilder sb = new StringBuilder(memberName.length() + 8);
+        for (int i = 0; i < memberName.length(); ++i) {
+            char ch = memberName.charAt(i);
+            if (Character.isUpperCase(ch) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(ch));
+        }
+        String result = sb.toString();
+        // do not clash with the id constants
+        return "ID".equals(result) || "ID_INDEX".equals(result) ? result + "_COLUMN" : result;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,278 @@
+package org.baracus.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the RowMapper generation. The model sources are compiled together with the
+ * processor against the framework sources, which are found by the system property
+ * baracus.framework.sources (default ../src/main/java). The generated mappers are loaded and
+ * run against the RowCursor fixture of the framework tests, found by the system property
+ * baracus.test.sources (default ../src/test/java).
+ */
+public class RowMapperProcessorTest {
+
+    private static final String FRAMEWORK_SOURCES = System.getProperty("baracus.framework.sources", "../src/main/java");
+
+    private static final String TEST_SOURCES = System.getProperty("baracus.test.sources", "../src/test/java");
+
+    private static final String ROW_CURSOR = "org.baracus.dao.RowCursor";
+
+    private static final String[] CUSTOMER = {
+            "package org.example;",
+            "",
+            "import org.baracus.annotations.Column;",
+            "import org.baracus.annotations.Table;",
+            "import org.baracus.orm.Field;",
+            "import org.baracus.orm.FieldList;",
+            "import org.baracus.orm.ModelBase;",
+            "",
+            "@Table(value = \"customer\", nameField = \"nameCol\")",
+            "public class Customer extends ModelBase {",
+            "    private static int prefix = 0;",
+            "    public static final FieldList fieldList = new FieldList(Customer.class.getSimpleName());",
+            "    public static final Field nameCol = new Field(\"name\", ModelBase.fieldList.size() + prefix++);",
+            "    public static final Field ageCol = new Field(\"age\", ModelBase.fieldList.size() + prefix++);",
+            "    public static final Field scoreCol = new Field(\"score\", ModelBase.fieldList.size() + prefix++);",
+            "    public static final Field activeCol = new Field(\"active\", ModelBase.fieldList.size() + prefix++);",
+            "%s",
+            "    static {",
+            "        fieldList.add(ModelBase.fieldList);",
+            "        fieldList.add(nameCol);",
+            "        fieldList.add(ageCol);",
+            "        fieldList.add(scoreCol);",
+            "        fieldList.add(activeCol);",
+            "%s",
+            "    }",
+            "",
+            "    @Column(\"nameCol\") private String name;",
+            "    @Column(\"ageCol\") private int age;",
+            "    @Column(\"scoreCol\") private Double score;",
+            "    @Column(\"activeCol\") boolean active;",
+            "",
+            "    public Customer() { super(\"customer\"); }",
+            "    public String getName() { return name; }",
+            "    public void setName(String name) { this.name = name; }",
+            "    public int getAge() { return age; }",
+            "    public void setAge(int age) { this.age = age; }",
+            "    public Double getScore() { return score; }",
+            "    public void setScore(Double score) { this.score = score; }",
+            "}"
+    };
+
+    private File output;
+
+    /**
+     * the result of a compilation
+     */
+    private static final class Compilation {
+        boolean success;
+        final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        File output;
+
+        String generated(String path) throws IOException {
+            File file = new File(output, path);
+            assertTrue("no generated source " + path, file.isFile());
+            return new String(java.nio.file.Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+        }
+
+        ClassLoader classLoader() throws IOException {
+            return new URLClassLoader(new URL[]{output.toURI().toURL()}, RowMapperProcessorTest.class.getClassLoader());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        output = File.createTempFile("baracus", "processor");
+        output.delete();
+        output.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(output);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String customer(boolean withUnmappedField) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : CUSTOMER) {
+            sb.append(line).append('\n');
+        }
+        return String.format(sb.toString(),
+                withUnmappedField ? "    public static final Field noteCol = new Field(\"note\", ModelBase.fieldList.size() + prefix++);" : "",
+                withUnmappedField ? "        fieldList.add(noteCol);" : "");
+    }
+
+    private static JavaFileObject source(String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private Compilation compile(JavaFileObject... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("the tests require a JDK", compiler);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, Charset.forName("UTF-8"));
+        try {
+            List<String> options = Arrays.asList(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-sourcepath", FRAMEWORK_SOURCES,
+                    "-implicit:class",
+                    "-nowarn",
+                    "-d", output.getAbsolutePath(),
+                    "-s", output.getAbsolutePath());
+            List<JavaFileObject> units = new ArrayList<JavaFileObject>(Arrays.asList(sources));
+            for (JavaFileObject fixture : fileManager.getJavaFileObjects(new File(TEST_SOURCES, ROW_CURSOR.replace('.', '/') + ".java"))) {
+                units.add(fixture);
+            }
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, units);
+            task.setProcessors(Collections.singletonList(new RowMapperProcessor()));
+
+            Compilation result = new Compilation();
+            result.success = task.call();
+            result.output = output;
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    result.errors.add(diagnostic);
+                }
+            }
+            return result;
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private static void assertError(Compilation compilation, String message) {
+        assertFalse(compilation.success);
+        for (Diagnostic<? extends JavaFileObject> error : compilation.errors) {
+            if (error.getMessage(Locale.ENGLISH).contains(message)) {
+                return;
+            }
+        }
+        fail("missing error \"" + message + "\" in " + compilation.errors);
+    }
+
+    /**
+     * @return the RowCursor test fixture over one row, loaded by the passed class loader and placed on the row
+     */
+    private static Object cursor(ClassLoader loader, Object[] row) throws Exception {
+        Object result = loader.loadClass(ROW_CURSOR).getMethod("over", Object[][].class).invoke(null, (Object) new Object[][]{row});
+        loader.loadClass("android.database.Cursor").getMethod("moveToFirst").invoke(result);
+        return result;
+    }
+
+    private static Object invoke(Object target, String name) throws Exception {
+        return target.getClass().getMethod(name).invoke(target);
+    }
+
+    @Test
+    public void testFieldMapping() throws Exception {
+        Compilation compilation = compile(source("org.example.Customer", customer(false)));
+        assertTrue(compilation.errors.toString(), compilation.success);
+
+        String mapper = compilation.generated("org/example/CustomerRowMapper.java");
+        assertTrue(mapper.contains("public class CustomerRowMapper extends GeneratedRowMapper<Customer>"));
+        assertTrue(mapper.contains("super(\"customer\", Customer.fieldList, Customer.nameCol);"));
+        assertTrue(mapper.contains("result.setName(c.getString(NAME_INDEX));"));
+        assertTrue(mapper.contains("result.setAge(c.getInt(AGE_INDEX));"));
+        assertTrue(mapper.contains("result.active = getBoolean(c, ACTIVE_INDEX);"));
+        assertTrue(mapper.contains("statement.bindLong(firstIndex + AGE_POSITION, item.getAge());"));
+        assertTrue(mapper.contains("checkMapped(Customer.fieldList, ID, NAME, AGE, SCORE, ACTIVE);"));
+
+        ClassLoader loader = compilation.classLoader();
+        Object candidate = loader.loadClass("org.example.CustomerRowMapper").newInstance();
+        Method from = candidate.getClass().getMethod("from", loader.loadClass("android.database.Cursor"));
+        Object customer = from.invoke(candidate, cursor(loader, new Object[]{7L, "Jane", 42, 1.5, 1}));
+
+        assertEquals(7L, invoke(customer, "getId"));
+        assertEquals("Jane", invoke(customer, "getName"));
+        assertEquals(42, invoke(customer, "getAge"));
+        assertEquals(1.5, invoke(customer, "getScore"));
+        java.lang.reflect.Field active = customer.getClass().getDeclaredField("active");
+        active.setAccessible(true);
+        assertTrue(active.getBoolean(customer));
+        assertEquals(false, invoke(customer, "isTransient"));
+    }
+
+    @Test
+    public void testNullHandling() throws Exception {
+        Compilation compilation = compile(source("org.example.Customer", customer(false)));
+        assertTrue(compilation.errors.toString(), compilation.success);
+
+        String mapper = compilation.generated("org/example/CustomerRowMapper.java");
+        assertTrue(mapper.contains("result.setScore(getDoubleObject(c, SCORE_INDEX));"));
+        assertTrue(mapper.contains("bindDouble(statement, firstIndex + SCORE_POSITION, item.getScore());"));
+        assertTrue(mapper.contains("bindString(statement, firstIndex + NAME_POSITION, item.getName());"));
+
+        ClassLoader loader = compilation.classLoader();
+        Object candidate = loader.loadClass("org.example.CustomerRowMapper").newInstance();
+        Method from = candidate.getClass().getMethod("from", loader.loadClass("android.database.Cursor"));
+        Object customer = from.invoke(candidate, cursor(loader, new Object[]{8L, null, 0, null, 0}));
+
+        assertNull(invoke(customer, "getName"));
+        assertNull(invoke(customer, "getScore"));
+        assertEquals(0, invoke(customer, "getAge"));
+    }
+
+    @Test
+    public void testUnmappedFieldFailsOnLoad() throws Exception {
+        Compilation compilation = compile(source("org.example.Customer", customer(true)));
+        assertTrue(compilation.errors.toString(), compilation.success);
+
+        try {
+            Class.forName("org.example.CustomerRowMapper", true, compilation.classLoader());
+            fail("the mapper must not load with an unmapped field");
+        } catch (ExceptionInInitializerError e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(e.getCause().getMessage().contains("note"));
+        }
+    }
+
+    @Test
+    public void testRejectsUnsupportedModels() throws Exception {
+        assertError(compile(source("org.example.Plain",
+                "package org.example;\n"
+                        + "@org.baracus.annotations.Table(\"plain\")\n"
+                        + "public class Plain {}\n")), "@Table requires a subclass of org.baracus.orm.AbstractModelBase");
+
+        assertError(compile(source("org.example.Customer",
+                customer(false).replace("@Column(\"activeCol\") boolean active;", "@Column(\"activeCol\") java.util.List<String> active;"))),
+                "Unsupported column type");
+
+        assertError(compile(source("org.example.Customer",
+                customer(false).replace("@Column(\"activeCol\") boolean active;", "@Column(\"activeCol\") private boolean active;"))),
+                "No accessible getter and setter for active");
+
+        assertError(compile(source("org.example.Customer",
+                customer(false).replace("@Column(\"activeCol\") boolean active;", "@Column(\"activeCol\") String nameIndex;"))),
+                "The generated constant NAME_INDEX of nameIndex collides with name");
+    }
+}
@@ -1,5 +1,8 @@
 package org.baracus.annotations;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 /**
  * Bean annotation denoting a bean as a component or a variable as an injection target.<br><hr>
  * <p/>
@@ -11,6 +14,53 @@ package org.baracus.annotations;
  * process which is relying on types.<br>
  * <p/>
  * Use this bean to document components and injection targets as well.
+ * <p/>
+ * On a bean class, lazy = true defers the instantiation of the bean until it is
+ * needed the first time, either by getBean or by an injection point.
+ * <p/>
+ * The scope defines how many instances of a bean class exist, @see Scope. Prototypes
+ * implementing org.baracus.lifecycle.Resettable can be pooled by setting poolSize, hand
+ * them back using BaracusApplicationContext.releaseBean when You are done with them.
  */
+@Retention(RetentionPolicy.RUNTIME)
 public @interface Bean {
+
+    /**
+     * @return true, if the singleton shall be created on first use instead of on context startup
+     */
+    boolean lazy() default false;
+
+    /**
+     * @return the scope of the bean
+     */
+    Scope scope() default Scope.SINGLETON;
+
+    /**
+     * @return the maximum number of idle instances kept for reuse, only used for resettable prototypes
+     */
+    int poolSize() default 0;
+
+    /**
+     * The lifecycles of beans
+     */
+    enum Scope {
+        /**
+         * one instance for the whole application, the default
+         */
+        SINGLETON,
+        /**
+         * a new instance for every getBean call and every injection point
+         */
+        PROTOTYPE,
+        /**
+         * one instance per activity. The bean is bound to the activity it is injected into, to the
+         * owner returned by an ActivityScopeOwner target, or to the activity created or resumed last.
+         * It is destroyed together with the activity.
+         */
+        ACTIVITY,
+        /**
+         * one instance per thread
+         */
+        THREAD
+    }
 }
@@ -0,0 +1,61 @@
+package org.baracus.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the second level entity cache of a DAO.<br><hr>
+ * <p/>
+ * Annotate Your DAO class with this annotation to have getById and getByName answered from
+ * a bounded in-memory cache. The cache is cleared on every write of the DAO (save, delete,
+ * deleteById, deleteAll) and on every set change event of the managed class.
+ * <p/>
+ * Use this only for read-mostly tables (e.g. configuration or reference data) and never modify
+ * a cached entity without saving it, because all callers share the same instance.
+ * <p/>
+ * Example :
+ * <pre>
+ * {@code
+ * @Cached(maxEntries = 500, ttlMillis = 60000)
+ * public class CountryDao extends BaseDao<Country> {
+ * ...
+ * }
+ * </pre>
+ *
+ * @see org.baracus.dao.BoundedEntityCache for caches with a memory budget
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+
+    /**
+     * eviction strategy applied when the cache is full
+     */
+    enum Eviction {
+        /**
+         * evict the least recently used entry
+         */
+        LRU,
+        /**
+         * evict the least frequently used entry
+         */
+        LFU
+    }
+
+    /**
+     * @return the maximum number of cached entries
+     */
+    int maxEntries() default 1000;
+
+    /**
+     * @return the time to live of an entry in milliseconds, 0 means no expiry
+     */
+    long ttlMillis() default 0;
+
+    /**
+     * @return the eviction strategy
+     */
+    Eviction eviction() default Eviction.LRU;
+}
@@ -0,0 +1,23 @@
+package org.baracus.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a member of a {@link Table} annotated model bean to a column.<br><hr>
+ * <p/>
+ * The value is the name of the static Field constant describing the column, e.g.
+ * {@code @Column("nameCol")}. The member is read and written by its bean getter and setter,
+ * or directly if there is none and the member is not private.
+ * <p/>
+ * Supported types are String, Date, byte[], all primitives and their wrappers.
+ * Booleans are stored as 0 and 1, Dates as milliseconds.
+ */
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * @return the name of the static Field constant of the column
+     */
+    String value();
+}
@@ -0,0 +1,48 @@
+package org.baracus.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a model bean for RowMapper generation.<br><hr>
+ * <p/>
+ * If the baracus-processor is on Your annotation processor path, a RowMapper named
+ * &lt;ModelClass&gt;RowMapper is generated into the package of the model class at compile time.
+ * The generated mapper reads and binds all columns by their precomputed indexes without
+ * any reflection, so it replaces a hand-written RowMapper :
+ * <pre>
+ * {@code
+ * @Table("customer")
+ * public class Customer extends ModelBase {
+ *     public static final FieldList fieldList = new FieldList(Customer.class.getSimpleName());
+ *     public static final Field nameCol = new Field("name", ModelBase.fieldList.size());
+ *     ...
+ *     @Column("nameCol")
+ *     private String name;
+ *     ...
+ * }
+ *
+ * public class CustomerDao extends BaseDao<Customer> {
+ *     private final RowMapper<Customer> rowMapper = new CustomerRowMapper();
+ *     ...
+ * }
+ * }
+ * </pre>
+ * The model class must have an accessible default constructor and a static field list
+ * named fieldList. Every field of the field list except the id must be mapped by a
+ * {@link Column} annotation. The version of optimistic locking beans is mapped automatically.
+ */
+@Target(ElementType.TYPE)
+public @interface Table {
+
+    /**
+     * @return the name of the table
+     */
+    String value();
+
+    /**
+     * @return the name of the static Field constant returned by getNameField(), leave it
+     * empty if the model has no unique name
+     */
+    String nameField() default "";
+}
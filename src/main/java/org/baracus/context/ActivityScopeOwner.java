@@ -0,0 +1,14 @@
+package org.baracus.context;
+
+/**
+ * An injection target bound to the scope of an activity without being an activity or fragment
+ * itself, e.g. a presenter or a view holder. ACTIVITY scoped beans injected into it are bound to
+ * the owner it returns and destroyed together with that owner.
+ */
+public interface ActivityScopeOwner {
+
+    /**
+     * @return the owner of the scope, usually the activity
+     */
+    Object getScopeOwner();
+}
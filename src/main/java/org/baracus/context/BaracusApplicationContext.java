@@ -8,7 +8,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.view.View;
 import org.baracus.dao.BaracusOpenHelper;
+import org.baracus.dao.BaseDao;
 import org.baracus.dao.ConfigurationDao;
+import org.baracus.dao.StatementCache;
 import org.baracus.errorhandling.CustomErrorHandler;
 import org.baracus.errorhandling.ErrorHandlingFactory;
 import org.baracus.errorhandling.ErrorSeverity;
@@ -23,6 +25,7 @@ import org.baracus.validation.Validator;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * Created with IntelliJ IDEA.  <br>
@@ -87,10 +90,8 @@ public abstract class BaracusApplicationContext extends Application {
     private static int refCount = 0;
 
     // Awareness Refs, event handlers
-    protected final static Map<Class<?>, DeleteAwareComponent> deleteListeners = new HashMap<Class<?>, DeleteAwareComponent>();
-    protected final static Map<Class<?>, DataSetChangeAwareComponent> changeListener = new HashMap<Class<?>, DataSetChangeAwareComponent>();
-    protected final static Map<Class<?>, Set<DataChangeAwareComponent>> dataListener = new HashMap<Class<?>, Set<DataChangeAwareComponent>>();
-    protected final static Map<Class<? extends GenericEvent>, Set<GenericEventAwareComponent<? extends GenericEvent>>> eventConsumers = new HashMap<Class<? extends GenericEvent>, Set<GenericEventAwareComponent<? extends GenericEvent>>>();
+    private final static EventDispatcher eventDispatcher = new EventDispatcher();
+    private final static EventCoalescer eventCoalescer = new EventCoalescer(eventDispatcher);
 
     private static final Logger logger = new Logger(BaracusApplicationContext.class);
 
@@ -149,6 +150,8 @@ public abstract class BaracusApplicationContext extends Application {
             logger.info("Initializing BARACUS Framework");
             logger.info(Nerve.logo);
             long now = System.currentTimeMillis();
+            StartupTracer.reset();
+            long start = StartupTracer.begin();
             init = true;
             beanContainer.createInstances();
 //            beanContainer.holdBean(Context.class, __instance);   // Inject a context simply
@@ -162,14 +165,52 @@ public abstract class BaracusApplicationContext extends Application {
             logger.info("Baracus Core System initialized after $1 millis",System.currentTimeMillis() - now);
 
             if (applicationContextInitializer != null) {
+                long initializerStart = StartupTracer.begin();
                 beanContainer.performInjection(applicationContextInitializer);
                 applicationContextInitializer.afterContextIsBuilt();
+                StartupTracer.end(StartupTracer.Phase.INITIALIZER, applicationContextInitializer.getClass().getName(), initializerStart);
             }
+            StartupTracer.end(StartupTracer.Phase.CONTEXT, "initApplicationContext", start);
             logger.info("Baracus Core System fully initialized after $1 millis",System.currentTimeMillis() - now);
 
         }
     }
 
+    /**
+     * switches lazy instantiation on or off for all beans. Lazy beans are created, injected and post
+     * constructed the first time they are requested by getBean or an injection point instead of on
+     * context startup. To make single beans lazy, annotate their class with @Bean(lazy = true).
+     * Call this function before the context is initialized, e.g. in the static block of Your context.
+     *
+     * @param lazy - true, if all beans shall be created on first use
+     */
+    public static void setLazyInstantiation(boolean lazy) {
+        BeanContainer.setLazyByDefault(lazy);
+    }
+
+    /**
+     * sets the number of threads used to create and post construct the beans on context startup.
+     * With more than one thread, the constructors run in parallel and every postConstruct runs as soon
+     * as the postConstructs of all beans injected into it are done. Beans taking part in a dependency
+     * cycle are reported and post constructed sequentially afterwards. The default is 1, which keeps
+     * everything on the calling thread.
+     * <p/>
+     * Only use this if Your constructors and postConstruct methods are thread safe, e.g. if several
+     * beans do I/O in postConstruct. Call this function before the context is initialized.
+     *
+     * @param threads - the number of startup threads
+     */
+    public static void setStartupThreads(int threads) {
+        BeanContainer.setStartupThreads(threads);
+    }
+
+    /**
+     * @return the bean container
+     */
+    static BeanContainer getBeanContainer() {
+        return beanContainer;
+    }
+
     /**
      * performs a reinitialization of the context. This function has to be called
      * if bean implementations have been substituted by other candidates
@@ -187,6 +228,7 @@ public abstract class BaracusApplicationContext extends Application {
                 public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
                     logger.debug("onActivityCreated called for $1", activity.getClass().getName());
                     BeanContainer.addExistingActivity(activity);
+                    BeanContainer.setCurrentActivity(activity);
 //                    beanContainer.holdBean(activity.getClass(), activity);
                     if (!init) {
                         logger.debug("build application context");
@@ -206,6 +248,7 @@ public abstract class BaracusApplicationContext extends Application {
                 public void onActivityResumed(Activity activity) {
                     logger.debug("onActivityResumed called for $1", activity.getClass().getName());
                     BeanContainer.removePausedActivity(activity);
+                    BeanContainer.setCurrentActivity(activity);
                     beanContainer.performInjection(activity);
                 }
 
@@ -233,6 +276,7 @@ public abstract class BaracusApplicationContext extends Application {
                 public void onActivityDestroyed(Activity activity) {
                     logger.debug("onActivityDestroyed called for $1", activity.getClass().getName());
                     BeanContainer.removeExistingActivity(activity);
+                    BeanContainer.destroyActivityBeans(activity);
                 }
             };
 
@@ -365,9 +409,12 @@ public abstract class BaracusApplicationContext extends Application {
 
             __instance.unregisterActivityLifecycleCallbacks(callbacks);
 
+            StatementCache.invalidate();
+            BaseDao.invalidateEntityCaches();
             connectDbHandle().close();
-            deleteListeners.clear();
-            changeListener.clear();
+            eventDispatcher.getDeleteListeners().clear();
+            eventDispatcher.getSetChangeListeners().clear();
+            eventDispatcher.getChangeSetListeners().clear();
 
             db = null;
             validationFactory = null;
@@ -375,6 +422,7 @@ public abstract class BaracusApplicationContext extends Application {
 
             semaphore = false;
             init = false;
+            Logger.flush();
             System.gc();
         }
     }
@@ -385,17 +433,52 @@ public abstract class BaracusApplicationContext extends Application {
      * is called automatically on the deletion of the associated class. notice, if a delete listener
      * causes in exception in the callback processing, it will be automatically removed from the listener table
      *
+     * CHANGED BEHAVIOUR : formerly a registration replaced the listener of the class and held it
+     * strongly. Now any number of listeners can be registered per class, and they are held weakly :
+     * <ul>
+     * <li>an anonymous listener nobody else references stops firing after the next garbage
+     * collection, keep it in a field of its owner</li>
+     * <li>an activity registering itself in onCreate is added again on every rotation; the destroyed
+     * instance is notified until it is collected, so unregister it in onDestroy</li>
+     * </ul>
+     *
+     * @param clazz - the class
+     * @param dac   - the delete listener
+     */
+    public static void registerDeleteListener(Class<? extends AbstractModelBase> clazz, DeleteAwareComponent dac) {
+        registerDeleteListener(clazz, dac, DispatchMode.SYNCHRONOUS);
+    }
+
+    /**
+     * register a deletion listener, @see registerDeleteListener
+     *
      * @param clazz - the class
      * @param dac   - the delete listener
+     * @param mode  - the thread to call the listener on
      */
-    public static synchronized void registerDeleteListener(Class<? extends AbstractModelBase> clazz, DeleteAwareComponent dac) {
+    public static void registerDeleteListener(Class<? extends AbstractModelBase> clazz, DeleteAwareComponent dac, DispatchMode mode) {
         logger.debug("Registered DeleteListener $1 for class $2", clazz.getSimpleName(), dac.getClass().getSimpleName());
-        deleteListeners.put(clazz, dac);
+        eventDispatcher.getDeleteListeners().add(clazz, dac, mode);
+    }
+
+    /**
+     * removes all delete listeners of the class
+     *
+     * @param clazz - the class
+     */
+    public static void unregisterDeleteListener(Class<? extends AbstractModelBase> clazz) {
+        logger.debug("Unregister DeleteListener for class $1", clazz.getSimpleName());
+        eventDispatcher.getDeleteListeners().clear(clazz);
     }
 
-    public static synchronized void unregisterDeleteListener(Class<? extends AbstractModelBase> clazz) {
-        logger.debug("Unregister DeleteListener for class $2", clazz.getSimpleName());
-        deleteListeners.remove(clazz);
+    /**
+     * removes a single delete listener
+     *
+     * @param clazz - the class
+     * @param dac   - the delete listener
+     */
+    public static void unregisterDeleteListener(Class<? extends AbstractModelBase> clazz, DeleteAwareComponent<?> dac) {
+        eventDispatcher.getDeleteListeners().remove(clazz, dac);
     }
 
     /**
@@ -403,28 +486,67 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param clazz - the class to raise the event for
      */
-    public static synchronized void emitDeleteEvent(Class<? extends AbstractModelBase> clazz) {
-        if (deleteListeners.containsKey(clazz)) {
-            DeleteAwareComponent<?> dac = deleteListeners.get(clazz);
-            try {
-                dac.onDelete();
-            } catch (Exception e) {
-                logger.error("Caught exception while emitting delete event", e);
-                deleteListeners.remove(clazz);
-            }
-        }
+    public static void emitDeleteEvent(Class<? extends AbstractModelBase> clazz) {
+        eventCoalescer.deleted(clazz, null);
+    }
+
+    /**
+     * emit a delete event on the passed model class for a single row. Inside an event batch the
+     * ids are collected and passed to the ChangeSetAwareComponents on commit.
+     *
+     * @param clazz - the class to raise the event for
+     * @param id    - the id of the deleted row
+     */
+    public static void emitDeleteEvent(Class<? extends AbstractModelBase> clazz, Long id) {
+        eventCoalescer.deleted(clazz, id);
     }
 
     /**
      * register a change listener on the entity. @see registerDeleteListener. same restrictions, same behaviour
      * but this time for change events
      *
-     * @param clazz
-     * @param dac
+     * CHANGED BEHAVIOUR : formerly a registration replaced the listener of the class and held it
+     * strongly. Now the listeners are added and held weakly : an anonymous listener nobody else
+     * references stops firing after the next garbage collection, and an activity registering itself
+     * on every rotation leaves the destroyed instance notified until it is collected. Keep anonymous
+     * listeners in a field and call unregisterSetChangeListener(clazz, listener) in onDestroy.
+     *
+     * @param clazz - the class
+     * @param dac   - the change listener
      */
-    public static synchronized void registerSetChangeListener(Class<? extends AbstractModelBase> clazz, DataSetChangeAwareComponent dac) {
+    public static void registerSetChangeListener(Class<? extends AbstractModelBase> clazz, DataSetChangeAwareComponent dac) {
+        registerSetChangeListener(clazz, dac, DispatchMode.SYNCHRONOUS);
+    }
+
+    /**
+     * register a change listener on the entity, @see registerSetChangeListener
+     *
+     * @param clazz - the class
+     * @param dac   - the change listener
+     * @param mode  - the thread to call the listener on
+     */
+    public static void registerSetChangeListener(Class<? extends AbstractModelBase> clazz, DataSetChangeAwareComponent dac, DispatchMode mode) {
         logger.debug("Registered SetChangeListener $1 for class $2", clazz.getSimpleName(), dac.getClass().getSimpleName());
-        changeListener.put(clazz, dac);
+        eventDispatcher.getSetChangeListeners().add(clazz, dac, mode);
+    }
+
+    /**
+     * removes all set change listeners of the class
+     *
+     * @param clazz - the class
+     */
+    public static void unregisterSetChangeListener(Class<? extends AbstractModelBase> clazz) {
+        eventDispatcher.getSetChangeListeners().clear(clazz);
+    }
+
+    /**
+     * removes a single set change listener
+     *
+     * @param clazz - the class
+     * @param dac   - the change listener
+     */
+    public static void unregisterSetChangeListener(Class<? extends AbstractModelBase> clazz, DataSetChangeAwareComponent<?> dac) {
+        eventDispatcher.getSetChangeListeners().remove(clazz, dac);
     }
 
     /**
@@ -432,16 +554,20 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param clazz
      */
-    public static synchronized void emitSetChangeEvent(Class<? extends AbstractModelBase> clazz) {
-        if (changeListener.containsKey(clazz)) {
-            DataSetChangeAwareComponent<?> dac = changeListener.get(clazz);
-            try {
-                dac.onChange(clazz);
-            } catch (Exception e) {
-                logger.error("Caught exception while emitting change set event", e);
-                changeListener.remove(clazz);
-            }
-        }
+    public static void emitSetChangeEvent(Class<? extends AbstractModelBase> clazz) {
+        BaseDao.invalidateEntityCache(clazz);
+        eventCoalescer.setChanged(clazz);
+    }
+
+    /**
+     * emits a set change event for a newly inserted item. Inside an event batch the
+     * ids are collected and passed to the ChangeSetAwareComponents on commit.
+     *
+     * @param insertedItem - the inserted item
+     */
+    public static void emitInsertEvent(AbstractModelBase insertedItem) {
+        BaseDao.invalidateEntityCache(insertedItem.getClass());
+        eventCoalescer.inserted(insertedItem);
     }
 
 
@@ -452,14 +578,20 @@ public abstract class BaracusApplicationContext extends Application {
      * @param clazz - the model class, for which we want to listen for changes
      * @param dac   - the change listener instance
      */
-    public static synchronized void registerDataChangeListener(Class<? extends AbstractModelBase> clazz, DataChangeAwareComponent dac) {
+    public static void registerDataChangeListener(Class<? extends AbstractModelBase> clazz, DataChangeAwareComponent dac) {
+        registerDataChangeListener(clazz, dac, DispatchMode.SYNCHRONOUS);
+    }
+
+    /**
+     * register a change listener on the entity, @see registerDataChangeListener
+     *
+     * @param clazz - the model class, for which we want to listen for changes
+     * @param dac   - the change listener instance
+     * @param mode  - the thread to call the listener on
+     */
+    public static void registerDataChangeListener(Class<? extends AbstractModelBase> clazz, DataChangeAwareComponent dac, DispatchMode mode) {
         logger.debug("Registered SetChangeListener $1 for class $2", clazz.getSimpleName(), dac.getClass().getSimpleName());
-        Set<DataChangeAwareComponent> set = dataListener.get(clazz);
-        if (set == null) {
-            set = new HashSet<DataChangeAwareComponent>();
-            dataListener.put(clazz, set);
-        }
-        set.add(dac);
+        eventDispatcher.getDataChangeListeners().add(clazz, dac, mode);
     }
 
     /**
@@ -467,11 +599,9 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param dac - the change listener instance
      */
-    public static synchronized void unregisterDataChangeListener(DataChangeAwareComponent<?> dac) {
-        for (Set<DataChangeAwareComponent> sets : dataListener.values()) {
-            if (sets.remove(dac)) {
-                logger.debug("DAC was successfully removed $1", dac);
-            }
+    public static void unregisterDataChangeListener(DataChangeAwareComponent<?> dac) {
+        if (eventDispatcher.getDataChangeListeners().remove(dac)) {
+            logger.debug("DAC was successfully removed $1", dac);
         }
     }
 
@@ -480,39 +610,95 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param changedItem - the changed item
      */
-    public static synchronized void emitDataChangeEvent(AbstractModelBase changedItem) {
-
+    public static void emitDataChangeEvent(AbstractModelBase changedItem) {
         if (changedItem != null) {
-            if (dataListener.containsKey(changedItem.getClass())) {
-                Set<DataChangeAwareComponent> dac = dataListener.get(changedItem.getClass());
-                if (dac != null && dac.size() > 0) {
-                    for (DataChangeAwareComponent component : dac) {
-                        try {
-                            component.onChange(changedItem);
-                        } catch (Exception e) {
-                            logger.error("Caught exception while emitting change set event", e);
-                            dac.remove(component);
-                        }
-                    }
-                }
-            }
+            eventCoalescer.updated(changedItem);
         }
     }
 
+    /**
+     * register a listener receiving the changes of an entity type as one ChangeSet per transaction,
+     * @see ChangeSetAwareComponent
+     *
+     * @param clazz - the model class
+     * @param csc   - the listener
+     */
+    public static void registerChangeSetListener(Class<? extends AbstractModelBase> clazz, ChangeSetAwareComponent<?> csc) {
+        registerChangeSetListener(clazz, csc, DispatchMode.SYNCHRONOUS);
+    }
+
+    /**
+     * register a change set listener, @see registerChangeSetListener
+     *
+     * @param clazz - the model class
+     * @param csc   - the listener
+     * @param mode  - the thread to call the listener on
+     */
+    public static void registerChangeSetListener(Class<? extends AbstractModelBase> clazz, ChangeSetAwareComponent<?> csc, DispatchMode mode) {
+        logger.debug("Registered ChangeSetListener $1 for class $2", csc.getClass().getSimpleName(), clazz.getSimpleName());
+        eventDispatcher.getChangeSetListeners().add(clazz, csc, mode);
+    }
+
+    /**
+     * @param csc - the change set listener to remove
+     */
+    public static void unregisterChangeSetListener(ChangeSetAwareComponent<?> csc) {
+        eventDispatcher.getChangeSetListeners().remove(csc);
+    }
+
+    /**
+     * opens an event batch on the current thread. The delete, insert and change events emitted until the
+     * matching commitEventBatch are merged per entity class and delivered once. Every TxHandle opens a batch,
+     * so You only need this to batch events outside of transactions. Batches nest.
+     */
+    public static void beginEventBatch() {
+        eventCoalescer.begin();
+    }
+
+    /**
+     * closes an event batch, the outermost batch delivers the merged events
+     */
+    public static void commitEventBatch() {
+        eventCoalescer.commit();
+    }
+
+    /**
+     * closes an event batch, the events of the outermost batch are discarded
+     */
+    public static void discardEventBatch() {
+        eventCoalescer.rollback();
+    }
+
+    /**
+     * collects the events emitted outside of event batches for the passed time and delivers them merged.
+     * Synchronous listeners are called on a timer thread then.
+     *
+     * @param millis - the window in millis, 0 (the default) delivers them immediately
+     */
+    public static void setEventWindow(long millis) {
+        eventCoalescer.setWindow(millis);
+    }
+
+    /**
+     * register a generic listener for a generic event.
+     *
+     * @param eventClass - the event class
+     * @param handler    - the handler
+     */
+    public static void registerGenericListener(Class<? extends GenericEvent> eventClass, GenericEventAwareComponent<?> handler) {
+        registerGenericListener(eventClass, handler, DispatchMode.SYNCHRONOUS);
+    }
+
     /**
      * register a generic listener for a generic event.
      *
      * @param eventClass - the event class
      * @param handler    - the handler
+     * @param mode       - the thread to call the handler on
      */
-    public static synchronized void registerGenericListener(Class<? extends GenericEvent> eventClass, GenericEventAwareComponent<?> handler) {
+    public static void registerGenericListener(Class<? extends GenericEvent> eventClass, GenericEventAwareComponent<?> handler, DispatchMode mode) {
         logger.debug("Registered Generic Listener $1 for class $2", eventClass.getSimpleName(), handler.getClass().getSimpleName());
-        Set<GenericEventAwareComponent<? extends GenericEvent>> set = eventConsumers.get(eventClass);
-        if (set == null) {
-            set = new HashSet<GenericEventAwareComponent<? extends GenericEvent>>();
-            eventConsumers.put(eventClass, set);
-        }
-        set.add(handler);
+        eventDispatcher.getGenericListeners().add(eventClass, handler, mode);
     }
 
     /**
@@ -520,11 +706,8 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param eventClass
      */
-    public static synchronized void freeGenericListeners(Class<? extends GenericEvent> eventClass) {
-        Set<GenericEventAwareComponent<? extends GenericEvent>> set = eventConsumers.get(eventClass);
-        if (set != null) {
-            set.clear();
-        }
+    public static void freeGenericListeners(Class<? extends GenericEvent> eventClass) {
+        eventDispatcher.getGenericListeners().clear(eventClass);
     }
 
     /**
@@ -532,11 +715,8 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param forClazz - the model class whose event listeners should be removed
      */
-    public static synchronized void freeDataChangeListeners(Class<? extends AbstractModelBase> forClazz) {
-        Set<DataChangeAwareComponent> set = dataListener.get(forClazz);
-        if (set != null) {
-            set.clear();
-        }
+    public static void freeDataChangeListeners(Class<? extends AbstractModelBase> forClazz) {
+        eventDispatcher.getDataChangeListeners().clear(forClazz);
     }
 
 
@@ -545,18 +725,18 @@ public abstract class BaracusApplicationContext extends Application {
      *
      * @param event
      */
-    public static synchronized void emitGenericEvent(GenericEvent event) {
-        Set<GenericEventAwareComponent<?>> receivers = eventConsumers.get(event.getClass());
-        if (receivers != null) {
-            for (GenericEventAwareComponent receiver : receivers) {
-                try {
-                    receiver.handleEvent(event);
-                } catch (Exception e) {
-                    logger.error("Caught exception while emitting generic event", e);
-                    receivers.remove(receiver);
-                }
-            }
-        }
+    public static void emitGenericEvent(GenericEvent event) {
+        eventDispatcher.emitGeneric(event);
+    }
+
+    /**
+     * replaces the executor calling the listeners registered with DispatchMode.BACKGROUND.
+     * By default a single background thread calls them in emission order.
+     *
+     * @param executor - the executor
+     */
+    public static void setEventExecutor(Executor executor) {
+        eventDispatcher.setBackgroundExecutor(executor);
     }
 
 
@@ -592,7 +772,7 @@ public abstract class BaracusApplicationContext extends Application {
     public static synchronized BaracusOpenHelper connectOpenHelper() {
         if (baracusOpenHelper == null) {
             for (Object o : beanContainer.beanMap.values()) {
-                if (BaracusOpenHelper.class.isAssignableFrom(o.getClass())) {
+                if (o != null && BaracusOpenHelper.class.isAssignableFrom(o.getClass())) {
                     baracusOpenHelper = (BaracusOpenHelper) o;
                 }
             }
@@ -781,6 +961,28 @@ public abstract class BaracusApplicationContext extends Application {
         return (T) BeanContainer.getBean(clazz);
     }
 
+    /**
+     * hands a prototype bean back to the container when You are done with it. Pooled prototypes
+     * (@Bean(scope = Bean.Scope.PROTOTYPE, poolSize = n) implementing Resettable) are reset and reused
+     * by the next getBean call, all other prototypes are destroyed. Do not use the bean afterwards!
+     * Releasing singletons or scoped beans has no effect.
+     *
+     * @param bean - the bean
+     */
+    public static void releaseBean(Object bean) {
+        if (bean != null) {
+            beanContainer.releaseBean(bean);
+        }
+    }
+
+    /**
+     * destroys all thread scoped beans of the calling thread. Call this at the end of a worker thread
+     * using thread scoped beans.
+     */
+    public static void releaseThreadBeans() {
+        BeanContainer.releaseThreadBeans();
+    }
+
     /**
      * run a type based dependency injection on the passed object
      *
@@ -794,7 +996,8 @@ public abstract class BaracusApplicationContext extends Application {
 
     /**
      * creates a bean instance not cached by the container - no singleton! -
-     * for your personal transient use. does not support custom constructors!
+     * for your personal transient use. Constructor parameters must be registered beans
+     * or the android Context.
      *
      * @param clazz - the class to be instantiaten
      * @param <T>   the type
@@ -848,8 +1051,9 @@ public abstract class BaracusApplicationContext extends Application {
      */
     public static <T> List<T> getBeansOfType(Class<T> superclass) {
         List<T> result = new ArrayList<T>();
+        beanContainer.resolveBeansOfType(superclass);
         for (Object o : beanContainer.beanMap.values()) {
-            if (superclass.isAssignableFrom(o.getClass())) {
+            if (o != null && superclass.isAssignableFrom(o.getClass())) {
                 result.add((T) o);
             }
         }
@@ -4,18 +4,23 @@ import android.app.Activity;
 import android.app.Fragment;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import org.baracus.annotations.Bean;
 import org.baracus.context.Exceptions.IncompatibleTypesException;
 import org.baracus.context.Exceptions.InjectionException;
 import org.baracus.context.Exceptions.RegistrationException;
 import org.baracus.dao.BaracusOpenHelper;
 import org.baracus.lifecycle.Destroyable;
 import org.baracus.lifecycle.Initializeable;
+import org.baracus.lifecycle.Resettable;
 import org.baracus.util.Logger;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Bean container carrying all bean instances order to keep the
@@ -26,20 +31,123 @@ public class BeanContainer {
     private static final Logger logger = new Logger(BeanContainer.class);
 
     // We are carrying a className to Object map and a Class to Object map
-    // this is simply done to avoid too many type based questions
-    protected final static Map<String, Object> beanMap = new HashMap<String, Object>();
-    private final static Map<Class<?>, Object> clazzMap = new HashMap<Class<?>, Object>();
-    private final static Map<Class<?>, Class<?>> interfaceMap = new HashMap<Class<?>, Class<?>>();
+    // this is simply done to avoid too many type based questions.
+    // Both are read mostly and read from any thread, so they are copy on write maps :
+    // reads take no lock, iterations work on a snapshot, registered but not created
+    // beans are mapped to null
+    protected final static Map<String, Object> beanMap = new CopyOnWriteMap<String, Object>();
+    private final static CopyOnWriteMap<Class<?>, Object> clazzMap = new CopyOnWriteMap<Class<?>, Object>();
+    private final static Map<Class<?>, Class<?>> interfaceMap = new ConcurrentHashMap<Class<?>, Class<?>>();
 
     // fragment holder. registering all fragments as bean will cause them
     // to be held here. Registering fragments as bean makes them become
     // injection capable and being used as a injection target
-    protected final static Set<Fragment> knownFragments = new HashSet<Fragment>();
+    protected final static Set<Fragment> knownFragments = Collections.newSetFromMap(new ConcurrentHashMap<Fragment, Boolean>());
 
     // stats maps for handling context events
-    protected final static Map<Class<?>, Object> activeActivitiesMap = new HashMap<Class<?>, Object>();
-    protected final static Map<Class<?>, Object> pausedActivitiesMap = new HashMap<Class<?>, Object>();
-    protected final static Map<Class<?>, Object> existingActivitiesMap = new HashMap<Class<?>, Object>();
+    protected final static Map<Class<?>, Object> activeActivitiesMap = new ConcurrentHashMap<Class<?>, Object>();
+    protected final static Map<Class<?>, Object> pausedActivitiesMap = new ConcurrentHashMap<Class<?>, Object>();
+    protected final static Map<Class<?>, Object> existingActivitiesMap = new ConcurrentHashMap<Class<?>, Object>();
+
+    // injection plans by target class, computed on first injection and dropped whenever
+    // the set of registered bean classes changes
+    private final static Map<Class<?>, InjectionPoint[]> injectionPlans = new ConcurrentHashMap<Class<?>, InjectionPoint[]>();
+
+    // if true, all beans are created on first use
+    private static volatile boolean lazyByDefault = false;
+
+    // number of threads used to create and post construct the beans on startup, 1 means sequential
+    private static volatile int startupThreads = 1;
+
+    // true between the start of createInstances and the shutdown, lazy beans can be created meanwhile
+    private static volatile boolean started = false;
+
+    // true after the post construction of the eagerly created beans, lazily created beans
+    // are post constructed by themselves afterwards
+    private static volatile boolean postConstructed = false;
+
+    // true once the injection of the eagerly created beans has started. Beans created on demand
+    // before, e.g. as constructor arguments, are injected together with all other beans
+    private static volatile boolean injectionsStarted = false;
+
+    // generated bean factories by bean class, NO_FACTORY for classes without factory
+    private final static Map<Class<?>, BeanFactory<?>> beanFactories = new ConcurrentHashMap<Class<?>, BeanFactory<?>>();
+
+    private static final String FACTORY_SUFFIX = "BeanFactory";
+
+    private static final BeanFactory<Object> NO_FACTORY = new BeanFactory<Object>() {
+        @Override
+        public Class<?>[] getDependencies() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object create(Object[] dependencies) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    // scopes by registered class and constructors by class without factory, dropped with the injection plans
+    private final static Map<Class<?>, Bean.Scope> scopes = new ConcurrentHashMap<Class<?>, Bean.Scope>();
+    private final static Map<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    // pools of prototypes by implementation class, classes without pooling have a pool of capacity 0
+    private final static ConcurrentMap<Class<?>, BeanPool> pools = new ConcurrentHashMap<Class<?>, BeanPool>();
+
+    // activity scoped beans by scope owner (the activity) and implementation class
+    private final static Map<Object, Map<Class<?>, Object>> activityBeans = new WeakHashMap<Object, Map<Class<?>, Object>>();
+
+    // the activity created or resumed last
+    private static volatile WeakReference<Object> currentActivity;
+
+    // thread scoped beans of the current thread
+    private static final ThreadLocal<ThreadScope> threadBeans = new ThreadLocal<ThreadScope>();
+
+    // the thread scopes of all threads, so the shutdown destroys the beans of every thread
+    private static final Set<ThreadScope> threadScopes = Collections.newSetFromMap(new ConcurrentHashMap<ThreadScope, Boolean>());
+
+    // incremented on shutdown, thread scopes of older generations are discarded
+    private static volatile int scopeGeneration = 0;
+
+    /**
+     * the thread scoped beans of a thread. The beans are guarded by the scope, because the
+     * shutdown collects them from another thread.
+     */
+    private static final class ThreadScope {
+        final int generation;
+        final Map<Class<?>, Object> beans = new HashMap<Class<?>, Object>();
+
+        ThreadScope(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    // the classes under construction by the current thread, used to detect constructor cycles
+    private static final ThreadLocal<List<Class<?>>> constructionStack = new ThreadLocal<List<Class<?>>>() {
+        @Override
+        protected List<Class<?>> initialValue() {
+            return new ArrayList<Class<?>>();
+        }
+    };
+
+    /**
+     * A field of an injection target together with the source of the value to inject.
+     */
+    static final class InjectionPoint {
+        static final int BEAN = 0;
+        static final int DATABASE = 1;
+        static final int OPEN_HELPER = 2;
+        static final int CONTEXT = 3;
+
+        final Field field;
+        final int kind;
+
+        InjectionPoint(Field field, int kind) {
+            this.field = field;
+            this.kind = kind;
+            field.setAccessible(true);
+        }
+    }
 
     /**
      * Exception while destroying a bean. thrown if a shutdown caused
@@ -56,10 +164,18 @@ public class BeanContainer {
      * instanciate all registered beans
      */
     void createInstances() {
-        for (Class<?> clazz : clazzMap.keySet()) {
-            if (clazzMap.get(clazz) == null) {
+        started = true;
+        postConstructed = false;
+        injectionsStarted = false;
+        if (startupThreads > 1) {
+            createImplementationsInParallel();
+        }
+        for (Class<?> clazz : new ArrayList<Class<?>>(clazzMap.keySet())) {
+            if (clazzMap.get(clazz) == null && !isLazy(clazz)) {
+                long start = StartupTracer.begin();
                 try {
                     instantiateSingletonBean(clazz);
+                    StartupTracer.end(StartupTracer.Phase.INSTANTIATION, clazz.getName(), start);
                     logger.debug("Instantiation of $1 succeded.", clazz.getName());
                 } catch (Exception e) {
                     logger.debug("Instantiation of $1 failed. Reason : $2", clazz.getName(), e.getMessage());
@@ -70,17 +186,175 @@ public class BeanContainer {
     }
 
     /**
-     * perform postconstruct method on all bean instances implementing Initializeable
+     * perform postconstruct method on all bean instances implementing Initializeable. Lazy beans
+     * created meanwhile, e.g. by the postConstruct of another bean, are post constructed in
+     * another round, until no new bean shows up.
      */
     void performPostConstuct() {
+        // identity, so a bean held under several names is post constructed once
+        Set<Object> done = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        while (true) {
+            Set<Object> allBeans = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            // resolveBean holds the lock while creating a bean, so no bean slips in between
+            // the last round and the switch to post constructing on demand
+            synchronized (this) {
+                for (Object bean : beanMap.values()) {
+                    if (bean != null && !done.contains(bean)) { // null : lazy bean not created yet
+                        allBeans.add(bean);
+                    }
+                }
+                if (allBeans.isEmpty()) {
+                    postConstructed = true;
+                    return;
+                }
+            }
+            if (startupThreads > 1) {
+                performPostConstructInParallel(allBeans);
+            } else {
+                for (Object o : allBeans) {
+                    long start = StartupTracer.begin();
+                    performPostConstructOn(o);
+                    StartupTracer.end(StartupTracer.Phase.POST_CONSTRUCT, o.getClass().getName(), start);
+                }
+            }
+            done.addAll(allBeans);
+        }
+    }
+
+    /**
+     * @param threads - the number of threads used to create and post construct the beans on startup
+     */
+    static void setStartupThreads(int threads) {
+        startupThreads = Math.max(1, threads);
+    }
+
+    /**
+     * creates the instances of all eager implementation classes on the startup threads. A class is
+     * constructed after the beans its constructor takes. Classes depending on lazy or unresolvable
+     * beans are left to the sequential creation. The instances are held in class name order
+     * afterwards, so createInstances just picks them up.
+     */
+    private void createImplementationsInParallel() {
+        Set<Class<?>> implementations = new HashSet<Class<?>>();
+        for (Class<?> clazz : clazzMap.keySet()) {
+            if (clazzMap.get(clazz) == null && !isLazy(clazz)) {
+                Class<?> implementation = getImplementation(clazz);
+                if (beanMap.get(implementation.getName()) == null) {
+                    implementations.add(implementation);
+                }
+            }
+        }
+
+        Map<Class<?>, List<Class<?>>> dependencies = new HashMap<Class<?>, List<Class<?>>>();
+        for (Class<?> implementation : implementations) {
+            Class<?>[] types = getConstructorDependencies(implementation);
+            if (types == null) {
+                continue;
+            }
+            List<Class<?>> deps = new ArrayList<Class<?>>(types.length);
+            for (Class<?> type : types) {
+                if (!type.equals(Context.class) && clazzMap.get(type) == null) {
+                    deps.add(getImplementation(type));
+                }
+            }
+            dependencies.put(implementation, deps);
+        }
+
+        // drop everything depending on a class which is not created here, until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<Class<?>> it = implementations.iterator(); it.hasNext(); ) {
+                Class<?> implementation = it.next();
+                List<Class<?>> deps = dependencies.get(implementation);
+                if (deps == null || !implementations.containsAll(deps)) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+        }
+        if (implementations.size() < 2) {
+            return;
+        }
 
-        Set<Object> allBeans = new HashSet<Object>(beanMap.values()); // avoid multiple execution of postconstruct
+        List<Class<?>> ordered = new ArrayList<Class<?>>(implementations);
+        Collections.sort(ordered, CLASS_NAME_ORDER);
+        final Map<Class<?>, Object> instances = new ConcurrentHashMap<Class<?>, Object>();
+        new StartupScheduler<Class<?>>(startupThreads).runAll(ordered, dependencies, new StartupScheduler.Task<Class<?>>() {
+            @Override
+            public void run(Class<?> implementation) {
+                long start = StartupTracer.begin();
+                try {
+                    instances.put(implementation, instantiatePojo(implementation, instances));
+                } catch (Exception e) {
+                    logger.debug("Instantiation of $1 failed. Reason : $2", implementation.getName(), e.getMessage());
+                    throw new Exceptions.IntantiationException(e);
+                }
+                StartupTracer.end(StartupTracer.Phase.INSTANTIATION, implementation.getName(), start);
+            }
+        });
+
+        for (Class<?> implementation : ordered) {
+            holdBean(implementation, instances.get(implementation));
+        }
+    }
+
+    /**
+     * runs the post construction of all beans on the startup threads. A bean is post constructed after
+     * all beans injected into it or passed to its constructor, dependency cycles are reported and run
+     * sequentially.
+     *
+     * @param beans - the beans
+     */
+    private void performPostConstructInParallel(Set<Object> beans) {
+        List<Object> ordered = new ArrayList<Object>(beans);
+        Collections.sort(ordered, new Comparator<Object>() {
+            @Override
+            public int compare(Object a, Object b) {
+                return a.getClass().getName().compareTo(b.getClass().getName());
+            }
+        });
 
-        for (Object o : allBeans) {
-            performPostConstructOn(o);
+        Map<Object, List<Object>> dependencies = new IdentityHashMap<Object, List<Object>>();
+        for (Object bean : ordered) {
+            List<Object> deps = new ArrayList<Object>();
+            for (InjectionPoint point : getInjectionPlan(bean.getClass())) {
+                if (point.kind == InjectionPoint.BEAN) {
+                    Object dep = clazzMap.get(point.field.getType());
+                    if (dep != null && dep != bean) {
+                        deps.add(dep);
+                    }
+                }
+            }
+            Class<?>[] types = getConstructorDependencies(bean.getClass());
+            if (types != null) {
+                for (Class<?> type : types) {
+                    Object dep = clazzMap.get(type);
+                    if (dep != null && dep != bean) {
+                        deps.add(dep);
+                    }
+                }
+            }
+            dependencies.put(bean, deps);
         }
+
+        new StartupScheduler<Object>(startupThreads).runAll(ordered, dependencies, new StartupScheduler.Task<Object>() {
+            @Override
+            public void run(Object bean) {
+                long start = StartupTracer.begin();
+                performPostConstructOn(bean);
+                StartupTracer.end(StartupTracer.Phase.POST_CONSTRUCT, bean.getClass().getName(), start);
+            }
+        });
     }
 
+    private static final Comparator<Class<?>> CLASS_NAME_ORDER = new Comparator<Class<?>>() {
+        @Override
+        public int compare(Class<?> a, Class<?> b) {
+            return a.getName().compareTo(b.getName());
+        }
+    };
+
     void performPostConstructOn(Object o) {
         if (o instanceof Initializeable) {
             logger.debug("Running Post Construction method on $1", o.getClass().getName());
@@ -92,11 +366,15 @@ public class BeanContainer {
      * perform all bean injections on all beans
      */
     void performInjections() {
-        for (Class<?> clazz : clazzMap.keySet()) {
+        injectionsStarted = true;
+        for (Class<?> clazz : new ArrayList<Class<?>>(clazzMap.keySet())) {
+            if (clazzMap.get(clazz) == null) {
+                continue; // lazy bean, injected on creation
+            }
+            long start = StartupTracer.begin();
             performInjection(clazz);
+            StartupTracer.end(StartupTracer.Phase.INJECTION, clazz.getName(), start);
         }
-
-        //To change body of created methods use File | Settings | File Templates.
     }
 
     /**
@@ -115,47 +393,385 @@ public class BeanContainer {
      * @param o
      */
     void performInjection(Object o) {
-        Class<?> clazz = o.getClass();
-        for (Field field : getAllDeclaredFields(clazz)) {
-            String type = field.getType().getName();
-            for (Class<?> clazz2 : clazzMap.keySet()) {
-                if (type.equals(clazz2.getName())) {
-                    field.setAccessible(true);
-                    logger.debug("$1.$2 candidate is $3", clazz.getName(), field.getName(), clazz2.getName());
-                    try {
-                        field.set(o, clazzMap.get(clazz2));
-                    } catch (IllegalAccessException e) {
-                        throw new InjectionException("Failed to set " + clazz.getName() + "." + field.getName() + " with bean " + clazz2.getName(), e);
-                    }
-                } else if (type.equals(SQLiteDatabase.class.getName())) {
-                    field.setAccessible(true);
-                    logger.debug("$1.$2 candidate is $3", clazz.getName(), field.getName(), clazz2.getName());
-                    try {
+        for (InjectionPoint point : getInjectionPlan(o.getClass())) {
+            Field field = point.field;
+            try {
+                switch (point.kind) {
+                    case InjectionPoint.BEAN:
+                        Object bean = clazzMap.get(field.getType());
+                        field.set(o, bean != null ? bean : getInstance(field.getType(), o));
+                        break;
+                    case InjectionPoint.DATABASE:
                         field.set(o, BaracusApplicationContext.getInstance().connectDbHandle());
-                    } catch (IllegalAccessException e) {
-                        throw new InjectionException("OMG SQLite injection issued a major clusterfuck", e);
-                    }
-                } else if (type.equals(BaracusOpenHelper.class.getName())) {
-                    field.setAccessible(true);
-                    logger.debug("$1.$2 candidate is $3", clazz.getName(), field.getName(), clazz2.getName());
-                    try {
+                        break;
+                    case InjectionPoint.OPEN_HELPER:
                         field.set(o, BaracusApplicationContext.getInstance().connectOpenHelper());
-                    } catch (IllegalAccessException e) {
-                        throw new InjectionException("OMG OpenHelper injection issued a major clusterfuck", e);
-                    }
-                } else if (!(o instanceof ManagedActivity) && type.equals(Context.class.getName())) {
-                    field.setAccessible(true);
-                    logger.debug("$1.$2 candidate is $3", clazz.getName(), field.getName(), clazz2.getName());
-                    try {
+                        break;
+                    default:
                         field.set(o, BaracusApplicationContext.getInstance());
-                    } catch (IllegalAccessException e) {
-                        throw new InjectionException("OMG Context injection issued a major clusterfuck", e);
-                    }
+                        break;
+                }
+            } catch (IllegalAccessException e) {
+                throw new InjectionException("Failed to set " + o.getClass().getName() + "." + field.getName() + " with bean " + field.getType().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * returns the injection plan of the passed class. The plan lists all fields taking a registered bean,
+     * the database, the open helper or the context. It is computed by scanning the class hierarchy once,
+     * all later injections into the same class only walk the plan.
+     *
+     * @param clazz - the target class
+     * @return the injection points of the class
+     */
+    InjectionPoint[] getInjectionPlan(Class<?> clazz) {
+        InjectionPoint[] plan = injectionPlans.get(clazz);
+        if (plan == null) {
+            List<InjectionPoint> points = new ArrayList<InjectionPoint>();
+            boolean isActivity = ManagedActivity.class.isAssignableFrom(clazz);
+            for (Field field : getAllDeclaredFields(clazz)) {
+                Class<?> type = field.getType();
+                InjectionPoint point = null;
+                if (clazzMap.containsKey(type)) {
+                    point = new InjectionPoint(field, InjectionPoint.BEAN);
+                } else if (type.equals(SQLiteDatabase.class)) {
+                    point = new InjectionPoint(field, InjectionPoint.DATABASE);
+                } else if (type.equals(BaracusOpenHelper.class)) {
+                    point = new InjectionPoint(field, InjectionPoint.OPEN_HELPER);
+                } else if (!isActivity && type.equals(Context.class)) {
+                    point = new InjectionPoint(field, InjectionPoint.CONTEXT);
+                }
+                if (point != null) {
+                    logger.debug("$1.$2 candidate is $3", clazz.getName(), field.getName(), type.getName());
+                    points.add(point);
                 }
             }
+            plan = points.toArray(new InjectionPoint[points.size()]);
+            injectionPlans.put(clazz, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @param lazy - true, if all beans shall be created on first use
+     */
+    static void setLazyByDefault(boolean lazy) {
+        lazyByDefault = lazy;
+    }
+
+    /**
+     * @param clazz - a registered class
+     * @return true, if the bean of the class is created on first use. Open helpers are always created
+     * eagerly, because the database is needed by everyone. Beans which are no singletons are never
+     * created on startup.
+     */
+    boolean isLazy(Class<?> clazz) {
+        Class<?> implementation = interfaceMap.containsKey(clazz) ? interfaceMap.get(clazz) : clazz;
+        if (BaracusOpenHelper.class.isAssignableFrom(implementation)) {
+            return false;
+        }
+        if (getScope(clazz) != Bean.Scope.SINGLETON || lazyByDefault) {
+            return true;
+        }
+        Bean bean = implementation.getAnnotation(Bean.class);
+        return bean != null && bean.lazy();
+    }
+
+    /**
+     * @param clazz - a registered class
+     * @return the scope declared on the implementation class, open helpers are always singletons
+     */
+    Bean.Scope getScope(Class<?> clazz) {
+        Bean.Scope scope = scopes.get(clazz);
+        if (scope == null) {
+            Class<?> implementation = getImplementation(clazz);
+            Bean bean = implementation.getAnnotation(Bean.class);
+            scope = bean != null && !BaracusOpenHelper.class.isAssignableFrom(implementation) ? bean.scope() : Bean.Scope.SINGLETON;
+            scopes.put(clazz, scope);
+        }
+        return scope;
+    }
+
+    /**
+     * returns the bean of the passed class regarding its scope
+     *
+     * @param clazz  - a registered class
+     * @param target - the object the bean is injected into or null
+     * @return the bean
+     */
+    Object getInstance(Class<?> clazz, Object target) {
+        switch (getScope(clazz)) {
+            case PROTOTYPE:
+                return createPrototype(clazz);
+            case THREAD:
+                return getThreadBean(clazz);
+            case ACTIVITY:
+                return getActivityBean(clazz, target);
+            default:
+                return resolveBean(clazz);
+        }
+    }
+
+    /**
+     * @param clazz - a registered prototype class
+     * @return a pooled instance or a new one
+     */
+    Object createPrototype(Class<?> clazz) {
+        Object result = getPool(clazz).acquire();
+        return result != null ? result : createScopedBean(clazz);
+    }
+
+    /**
+     * hands a prototype back to the container. Resettable prototypes are reset and pooled, if the pool
+     * of their class has room, all others are destroyed. Singletons and scoped beans are left alone,
+     * they are destroyed by the container.
+     *
+     * @param bean - the bean
+     */
+    void releaseBean(Object bean) {
+        Class<?> clazz = bean.getClass();
+        if (!clazzMap.containsKey(clazz) || getScope(clazz) != Bean.Scope.PROTOTYPE) {
+            return;
+        }
+        if (bean instanceof Resettable) {
+            ((Resettable) bean).reset();
+            if (getPool(clazz).release(bean)) {
+                return;
+            }
+        }
+        destroy(Collections.singleton(bean));
+    }
+
+    /**
+     * destroys the thread scoped beans of the calling thread
+     */
+    static void releaseThreadBeans() {
+        ThreadScope scope = threadBeans.get();
+        threadBeans.remove();
+        if (scope != null && threadScopes.remove(scope)) {
+            destroy(drain(scope));
+        }
+    }
+
+    private static List<Object> drain(ThreadScope scope) {
+        synchronized (scope) {
+            List<Object> result = new ArrayList<Object>(scope.beans.values());
+            scope.beans.clear();
+            return result;
+        }
+    }
+
+    /**
+     * @param activity - the activity or scope owner the activity scoped beans created from now on without
+     *                 activity target are bound to
+     */
+    static void setCurrentActivity(Object activity) {
+        currentActivity = new WeakReference<Object>(activity);
+    }
+
+    /**
+     * destroys the beans bound to the passed activity
+     *
+     * @param activity - the destroyed activity or scope owner
+     */
+    static void destroyActivityBeans(Object activity) {
+        Map<Class<?>, Object> beans;
+        synchronized (activityBeans) {
+            beans = activityBeans.remove(activity);
+        }
+        WeakReference<Object> current = currentActivity;
+        if (current != null && current.get() == activity) {
+            currentActivity = null;
+        }
+        if (beans != null) {
+            destroy(beans.values());
+        }
+    }
+
+    private BeanPool getPool(Class<?> clazz) {
+        Class<?> implementation = getImplementation(clazz);
+        BeanPool pool = pools.get(implementation);
+        if (pool == null) {
+            Bean bean = implementation.getAnnotation(Bean.class);
+            int capacity = bean != null ? bean.poolSize() : 0;
+            if (capacity > 0 && !Resettable.class.isAssignableFrom(implementation)) {
+                logger.warn("$1 does not implement Resettable and is not pooled", implementation.getName());
+                capacity = 0;
+            }
+            pool = new BeanPool(capacity);
+            BeanPool existing = pools.putIfAbsent(implementation, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    private Object getThreadBean(Class<?> clazz) {
+        ThreadScope scope = threadBeans.get();
+        if (scope == null || scope.generation != scopeGeneration) {
+            scope = new ThreadScope(scopeGeneration);
+            threadBeans.set(scope);
+            threadScopes.add(scope);
+        }
+        Class<?> implementation = getImplementation(clazz);
+        Object result;
+        synchronized (scope) {
+            result = scope.beans.get(implementation);
+        }
+        if (result == null) {
+            result = createScopedBean(clazz);
+            synchronized (scope) {
+                scope.beans.put(implementation, result);
+            }
+        }
+        return result;
+    }
+
+    private Object getActivityBean(Class<?> clazz, Object target) {
+        Object activity = null;
+        if (target instanceof Activity) {
+            activity = target;
+        } else if (target instanceof Fragment) {
+            activity = ((Fragment) target).getActivity();
+        } else if (target instanceof ActivityScopeOwner) {
+            activity = ((ActivityScopeOwner) target).getScopeOwner();
+        }
+        if (activity == null) {
+            WeakReference<Object> current = currentActivity;
+            activity = current != null ? current.get() : null;
+        }
+        if (activity == null) {
+            throw new InjectionException("There is no activity to bind " + clazz.getName() + " to", null);
+        }
+
+        Class<?> implementation = getImplementation(clazz);
+        synchronized (activityBeans) {
+            Map<Class<?>, Object> beans = activityBeans.get(activity);
+            if (beans == null) {
+                beans = new HashMap<Class<?>, Object>();
+                activityBeans.put(activity, beans);
+            }
+            Object result = beans.get(implementation);
+            if (result == null) {
+                result = createScopedBean(clazz);
+                beans.put(implementation, result);
+            }
+            return result;
         }
     }
 
+    /**
+     * creates, injects and post constructs a bean which is not held by the container
+     */
+    private Object createScopedBean(Class<?> clazz) {
+        Object result;
+        try {
+            result = instantiatePojo(getImplementation(clazz));
+        } catch (Exception e) {
+            logger.debug("Instantiation of $1 failed. Reason : $2", clazz.getName(), e.getMessage());
+            throw new Exceptions.IntantiationException(e);
+        }
+        performInjection(result);
+        performPostConstructOn(result);
+        return result;
+    }
+
+    /**
+     * destroys all activity scoped, pooled and thread scoped beans, the latter of all threads
+     */
+    private static void destroyScopedBeans() {
+        List<Object> beans = new ArrayList<Object>();
+        synchronized (activityBeans) {
+            for (Map<Class<?>, Object> activityScope : activityBeans.values()) {
+                beans.addAll(activityScope.values());
+            }
+            activityBeans.clear();
+        }
+        currentActivity = null;
+        for (BeanPool pool : pools.values()) {
+            beans.addAll(pool.drain());
+        }
+        pools.clear();
+        // thread scopes of other threads are replaced on their next access
+        scopeGeneration++;
+        threadBeans.remove();
+        for (ThreadScope scope : threadScopes) {
+            if (threadScopes.remove(scope)) {
+                beans.addAll(drain(scope));
+            }
+        }
+        destroy(beans);
+    }
+
+    private static void destroy(Collection<Object> beans) {
+        for (Object bean : beans) {
+            if (bean instanceof Destroyable) {
+                ((Destroyable) bean).onDestroy();
+            }
+        }
+    }
+
+    /**
+     * returns the singleton of the passed class. If it is a lazy bean which has not been created yet,
+     * it is created, injected and post constructed now.
+     *
+     * @param clazz - the bean class
+     * @return the bean or null, if the class is not registered or the context is not started
+     */
+    synchronized Object resolveBean(Class<?> clazz) {
+        Object result = clazzMap.get(clazz);
+        if (result != null || !started || !clazzMap.containsKey(clazz)) {
+            return result;
+        }
+
+        logger.debug("Creating bean $1 on demand", clazz.getName());
+        Object existing = beanMap.get(getImplementation(clazz).getName());
+        try {
+            instantiateSingletonBean(clazz);
+        } catch (Exception e) {
+            logger.debug("Instantiation of $1 failed. Reason : $2", clazz.getName(), e.getMessage());
+            throw new Exceptions.IntantiationException(e);
+        }
+        result = clazzMap.get(clazz);
+        if (result == existing) {
+            return result; // an interface bound to an implementation which has been created already
+        }
+
+        // the bean is held already, so cyclic references between lazy beans resolve to this instance.
+        // Beans created as constructor arguments during the startup are injected with all others.
+        if (injectionsStarted) {
+            performInjection(result);
+        }
+        if (postConstructed) {
+            performPostConstructOn(result);
+        }
+        return result;
+    }
+
+    /**
+     * creates all lazy beans assignable to the passed type, which have not been created yet
+     *
+     * @param type - the type
+     */
+    synchronized void resolveBeansOfType(Class<?> type) {
+        for (Class<?> clazz : new ArrayList<Class<?>>(clazzMap.keySet())) {
+            if (clazzMap.get(clazz) == null && type.isAssignableFrom(clazz) && getScope(clazz) == Bean.Scope.SINGLETON) {
+                resolveBean(clazz);
+            }
+        }
+    }
+
+    /**
+     * drops all injection plans, scopes and constructors, called whenever bean classes are registered or replaced
+     */
+    private static void invalidateInjectionPlans() {
+        injectionPlans.clear();
+        scopes.clear();
+        constructors.clear();
+    }
+
     /**
      * @param clazz - the class to scan
      * @return all fields of all types
@@ -178,8 +794,13 @@ public class BeanContainer {
      * nullify component refs in all beans
      */
     void performDestruction() {
+        started = false;
+        postConstructed = false;
+        injectionsStarted = false;
         for (Class<?> clazz : clazzMap.keySet()) {
-            performOutjection(clazz);
+            if (clazzMap.get(clazz) != null || !isLazy(clazz)) {
+                performOutjection(clazz);
+            }
         }
 
         for (Class<?> clazz : clazzMap.keySet()) {
@@ -202,18 +823,13 @@ public class BeanContainer {
     }
 
     void performOutjection(Object o) {
-        Class<?> clazz = o.getClass();
-        for (Field field : getAllDeclaredFields(clazz)) {
-            String type = field.getType().getName();
-            for (Class<?> clazz2 : clazzMap.keySet()) {
-                if (type.equals(clazz2.getName())) {
-                    field.setAccessible(true);
-                    logger.debug("$1.$2 nullified", clazz.getName(), field.getName(), clazz2.getName());
-                    try {
-                        field.set(o, null);
-                    } catch (IllegalAccessException e) {
-                        throw new BeanDestructionException(e);
-                    }
+        for (InjectionPoint point : getInjectionPlan(o.getClass())) {
+            if (point.kind == InjectionPoint.BEAN) {
+                logger.debug("$1.$2 nullified", o.getClass().getName(), point.field.getName());
+                try {
+                    point.field.set(o, null);
+                } catch (IllegalAccessException e) {
+                    throw new BeanDestructionException(e);
                 }
             }
         }
@@ -221,9 +837,8 @@ public class BeanContainer {
 
 
     /**
-     * instanciate a bean class. if the bean class has got a constructor carrying the android Context,
-     * this constructor is used to pass the context. Otherwise, your bean has to implement a default
-     * constructor!
+     * instanciate a bean class. The constructor with the most parameters, which are all registered
+     * beans or the android Context, is used. Beans passed to the constructor are created first.
      *
      * @param theClazz - the clazz to instanciate
      * @throws InstantiationException
@@ -260,26 +875,196 @@ public class BeanContainer {
      * @throws InvocationTargetException
      */
     <T> T instantiatePojo(Class<T> theClazz) throws InstantiationException, IllegalAccessException, InvocationTargetException {
-        T result = null;
+        return instantiatePojo(theClazz, null);
+    }
+
+    /**
+     * create an instance of the passed class. A generated BeanFactory is used if there is one, otherwise
+     * the greediest resolvable public constructor is called by reflection.
+     *
+     * @param theClazz - the class to instantiate
+     * @param created  - instances by implementation class which are not held yet, may be null
+     * @return the instance
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     */
+    <T> T instantiatePojo(Class<T> theClazz, Map<Class<?>, Object> created) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        List<Class<?>> stack = constructionStack.get();
+        if (stack.contains(theClazz)) {
+            StringBuilder cycle = new StringBuilder();
+            for (Class<?> clazz : stack.subList(stack.indexOf(theClazz), stack.size())) {
+                cycle.append(clazz.getName()).append(" -> ");
+            }
+            throw new Exceptions.CyclicDependencyException("Cyclic constructor dependency " + cycle + theClazz.getName() + ". Inject one of the beans into a field instead!");
+        }
+
+        stack.add(theClazz);
+        try {
+            BeanFactory<T> factory = getBeanFactory(theClazz);
+            if (factory != null) {
+                Class<?>[] dependencies = factory.getDependencies();
+                if (isResolvable(dependencies)) {
+                    return factory.create(resolveConstructorArguments(theClazz, dependencies, created));
+                }
+                logger.debug("$1 has unresolvable constructor parameters, falling back to reflection", factory.getClass().getName());
+            }
+
+            Constructor<T> constructor = findConstructor(theClazz);
+            if (constructor == null) {
+                throw new InstantiationException(theClazz.getName() + " could not be instantiated. Please provide a public constructor taking registered beans or the Android Context only, or a public default constructor!");
+            }
+            return constructor.newInstance(resolveConstructorArguments(theClazz, constructor.getParameterTypes(), created));
+        } finally {
+            stack.remove(stack.size() - 1);
+        }
+    }
 
-        for (Constructor c : theClazz.getConstructors()) {
+    /**
+     * @param clazz - an implementation class
+     * @return the parameter types of the constructor used to create the class or null, if there is none
+     */
+    private Class<?>[] getConstructorDependencies(Class<?> clazz) {
+        BeanFactory<?> factory = getBeanFactory(clazz);
+        if (factory != null && isResolvable(factory.getDependencies())) {
+            return factory.getDependencies();
+        }
+        Constructor<?> constructor = findConstructor(clazz);
+        return constructor != null ? constructor.getParameterTypes() : null;
+    }
+
+    /**
+     * @return the public constructor with the most parameters, which can all be resolved, or null.
+     * The JVM returns the constructors in no particular order, so among resolvable constructors with
+     * the same number of parameters the one with the lowest parameter type names is taken.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Constructor<T> findConstructor(Class<T> theClazz) {
+        Constructor<T> result = (Constructor<T>) constructors.get(theClazz);
+        if (result != null) {
+            return result;
+        }
+        boolean ambiguous = false;
+        for (Constructor<?> c : theClazz.getConstructors()) {
             Class<?>[] parameterTypes = c.getParameterTypes();
-            if (parameterTypes == null || parameterTypes.length == 0) {
-                // default Constructor
-                result = theClazz.newInstance();
-                break;
-            } else if (parameterTypes.length == 1 && parameterTypes[0].equals(Context.class)) {
-                result = (T) c.newInstance(BaracusApplicationContext.getContext());
-                break;
+            if (!isResolvable(parameterTypes)) {
+                continue;
+            }
+            int order = result == null ? 1 : parameterTypes.length - result.getParameterTypes().length;
+            if (order == 0) {
+                ambiguous = true;
+                order = compareTypeNames(result.getParameterTypes(), parameterTypes);
+            }
+            if (order > 0) {
+                result = (Constructor<T>) c;
+            }
+        }
+        if (result != null) {
+            if (ambiguous && result.getParameterTypes().length > 0) {
+                logger.warn("$1 has several resolvable constructors taking $2 beans, using $3", theClazz.getName(), result.getParameterTypes().length, result);
             }
+            constructors.put(theClazz, result);
         }
+        return result;
+    }
 
-        if (result == null) {
-            throw new InstantiationException(theClazz.getName() + " could not be instantiated. Please provide a) a public default constructor or b) a public constructor takinng the Android Context as it's only parameter!");
+    /**
+     * compares two parameter lists of the same length by their type names
+     */
+    private static int compareTypeNames(Class<?>[] a, Class<?>[] b) {
+        for (int i = 0; i < a.length; ++i) {
+            int order = a[i].getName().compareTo(b[i].getName());
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return true, if all types are registered beans or the android Context
+     */
+    private boolean isResolvable(Class<?>[] types) {
+        for (Class<?> type : types) {
+            if (!type.equals(Context.class) && !clazzMap.containsKey(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * resolves the constructor arguments. Beans not created yet are created now.
+     */
+    private Object[] resolveConstructorArguments(Class<?> theClazz, Class<?>[] types, Map<Class<?>, Object> created) throws InstantiationException {
+        Object[] result = new Object[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            Class<?> type = types[i];
+            if (type.equals(Context.class)) {
+                result[i] = BaracusApplicationContext.getContext();
+                continue;
+            }
+            Object bean = created != null ? created.get(getImplementation(type)) : null;
+            if (bean == null) {
+                bean = clazzMap.get(type);
+            }
+            if (bean == null) {
+                bean = getInstance(type, null);
+            }
+            if (bean == null) {
+                throw new InstantiationException(theClazz.getName() + " could not be instantiated, the bean " + type.getName() + " is not available!");
+            }
+            result[i] = bean;
         }
         return result;
     }
 
+    /**
+     * @param clazz - a registered class
+     * @return the implementation class registered for an interface or the class itself
+     */
+    private Class<?> getImplementation(Class<?> clazz) {
+        Class<?> implementation = interfaceMap.get(clazz);
+        return implementation != null ? implementation : clazz;
+    }
+
+    /**
+     * looks up the generated factory of a bean class once, @see BeanFactory
+     *
+     * @param clazz - the bean class
+     * @return the factory or null, if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> BeanFactory<T> getBeanFactory(Class<T> clazz) {
+        BeanFactory<?> factory = beanFactories.get(clazz);
+        if (factory == null) {
+            factory = loadBeanFactory(clazz);
+            beanFactories.put(clazz, factory);
+        }
+        return factory != NO_FACTORY ? (BeanFactory<T>) factory : null;
+    }
+
+    private static BeanFactory<?> loadBeanFactory(Class<?> clazz) {
+        // nested classes are generated as Outer_InnerBeanFactory
+        String name = clazz.getName();
+        int dot = name.lastIndexOf('.');
+        String factoryName = name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + FACTORY_SUFFIX;
+        try {
+            Class<?> factoryClass = Class.forName(factoryName, true, clazz.getClassLoader());
+            if (BeanFactory.class.isAssignableFrom(factoryClass)) {
+                logger.debug("Using $1 to create $2", factoryName, name);
+                return (BeanFactory<?>) factoryClass.newInstance();
+            }
+        } catch (ClassNotFoundException e) {
+            // no generated factory, use reflection
+        } catch (InstantiationException e) {
+            logger.warn("Could not create the factory $1, falling back to reflection", factoryName);
+        } catch (IllegalAccessException e) {
+            logger.warn("Could not create the factory $1, falling back to reflection", factoryName);
+        }
+        return NO_FACTORY;
+    }
+
     /**
      * put the bean into the holders
      *
@@ -288,6 +1073,9 @@ public class BeanContainer {
      */
     void holdBean(Class<?> theClazz, Object o) {
         beanMap.put(theClazz.getName(), o);
+        if (!clazzMap.containsKey(theClazz)) {
+            invalidateInjectionPlans();
+        }
         clazzMap.put(theClazz, o);
         if (o instanceof Fragment) {
             knownFragments.add((Fragment) o);
@@ -359,6 +1147,7 @@ public class BeanContainer {
     final void replaceBeanClass(Class<?> interfaceType, Class<?> implementationClass) {
         interfaceMap.remove(interfaceType);
         clazzMap.remove(interfaceType);
+        invalidateInjectionPlans();
         beanMap.remove(interfaceType.getName());
         registerBeanClass(interfaceType, implementationClass);
     }
@@ -367,15 +1156,27 @@ public class BeanContainer {
      * Shred the beans.
      */
     synchronized void shutdownContext() {
-        for (Object o : beanMap.values()) {
-            if (o instanceof Destroyable) {
-                ((Destroyable) o).onDestroy();
-            }
-        }
+        destroyScopedBeans();
+        // a bean held under several names is destroyed once
+        Set<Object> singletons = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        singletons.addAll(beanMap.values());
+        destroy(singletons);
         performDestruction();
+        invalidateInjectionPlans();
         System.gc();
     }
 
+    /**
+     * drops all registered classes. Call shutdownContext first, this only empties the registry
+     * so a new set of bean classes can be registered.
+     */
+    synchronized void clearRegistrations() {
+        beanMap.clear();
+        clazzMap.clear();
+        interfaceMap.clear();
+        invalidateInjectionPlans();
+    }
+
     private void unregisterClasses() {
         for (Class<?> c : clazzMap.keySet()) {
             removeBean(c);
@@ -457,8 +1258,19 @@ public class BeanContainer {
         }
     }
 
+    /**
+     * returns the bean of the passed class. Safe to call from any thread, created singletons are
+     * returned without taking a lock.
+     *
+     * @param clazz - the bean class
+     * @return the bean or null
+     */
     public static Object getBean(Class<?> clazz) {
-        Object result = clazzMap.get(clazz);
+        Map<Class<?>, Object> beans = clazzMap.snapshot();
+        Object result = beans.get(clazz);
+        if (result == null && beans.containsKey(clazz)) {
+            result = BaracusApplicationContext.getBeanContainer().getInstance(clazz, null);
+        }
         if (result == null) {
             result = activeActivitiesMap.get(clazz);
         }
@@ -0,0 +1,29 @@
+package org.baracus.context;
+
+/**
+ * Creates the instances of a bean class without reflection. Factories are generated at compile
+ * time by the BeanFactoryProcessor of the baracus-processor module for every class annotated
+ * with org.baracus.annotations.Bean. The generated factory is named &lt;BeanClass&gt;BeanFactory
+ * and lives in the package of the bean class, the bean container looks it up once per class.
+ * <p/>
+ * The factory calls the constructor with the most parameters. Every parameter must be either
+ * a registered bean type or the Android Context, the container resolves them in dependency order
+ * before calling create. Constructor injected dependencies can be assigned to final fields.
+ *
+ * @param <T> the bean type
+ */
+public interface BeanFactory<T> {
+
+    /**
+     * @return the parameter types of the constructor in declaration order
+     */
+    Class<?>[] getDependencies();
+
+    /**
+     * creates a new instance
+     *
+     * @param dependencies - the resolved constructor arguments, in the order of getDependencies()
+     * @return the bean instance
+     */
+    T create(Object[] dependencies);
+}
@@ -0,0 +1,68 @@
+package org.baracus.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of idle prototype beans. Acquiring and releasing is lock free, so pooled
+ * beans can be used from several threads in hot loops.
+ */
+final class BeanPool {
+
+    private final int capacity;
+    private final Queue<Object> idle = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity - the maximum number of idle beans
+     */
+    BeanPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return an idle bean or null, if the pool is empty
+     */
+    Object acquire() {
+        Object result = idle.poll();
+        if (result != null) {
+            size.decrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @param bean - a reset bean
+     * @return false, if the pool is full and the bean has not been taken
+     */
+    boolean release(Object bean) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        idle.offer(bean);
+        return true;
+    }
+
+    /**
+     * @return the number of idle beans
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return all idle beans, the pool is empty afterwards
+     */
+    List<Object> drain() {
+        List<Object> result = new ArrayList<Object>();
+        Object bean;
+        while ((bean = acquire()) != null) {
+            result.add(bean);
+        }
+        return result;
+    }
+}
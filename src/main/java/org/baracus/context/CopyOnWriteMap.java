@@ -0,0 +1,116 @@
+package org.baracus.context;
+
+import java.util.*;
+
+/**
+ * Map for read mostly data. Every modification copies the map and publishes the copy as an
+ * immutable snapshot, so reads take no lock and never see a map under modification. Iterating
+ * the key set, the values or the entries iterates the snapshot taken when the view was requested,
+ * the map can be modified meanwhile. Unlike ConcurrentHashMap, null values are allowed.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class CopyOnWriteMap<K, V> implements Map<K, V> {
+
+    private volatile Map<K, V> snapshot = Collections.emptyMap();
+
+    /**
+     * @return the current content, an immutable map
+     */
+    Map<K, V> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return snapshot.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return snapshot.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return snapshot.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Map<K, V> current = snapshot;
+        V previous = current.get(key);
+        if (previous == value && current.containsKey(key)) {
+            return previous; // nothing to copy
+        }
+        Map<K, V> copy = new HashMap<K, V>(current);
+        copy.put(key, value);
+        snapshot = Collections.unmodifiableMap(copy);
+        return previous;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        Map<K, V> current = snapshot;
+        if (!current.containsKey(key)) {
+            return null;
+        }
+        Map<K, V> copy = new HashMap<K, V>(current);
+        V previous = copy.remove(key);
+        snapshot = Collections.unmodifiableMap(copy);
+        return previous;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> map) {
+        Map<K, V> copy = new HashMap<K, V>(snapshot);
+        copy.putAll(map);
+        snapshot = Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public synchronized void clear() {
+        snapshot = Collections.emptyMap();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return snapshot.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return snapshot.values();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return snapshot.entrySet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || snapshot.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return snapshot.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot.toString();
+    }
+}
@@ -21,6 +21,16 @@ public class Exceptions {
         }
     }
 
+    /**
+     * Beans requiring each other by their constructors. Such a cycle cannot be resolved,
+     * one of the dependencies must be injected into a field instead.
+     */
+    final static class CyclicDependencyException extends RuntimeException {
+        CyclicDependencyException(String message) {
+            super(message);
+        }
+    }
+
     final static class IncompatibleTypesException extends RuntimeException {
         IncompatibleTypesException(String message) {
             super(message);
@@ -0,0 +1,222 @@
+package org.baracus.context;
+
+import org.baracus.util.Logger;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs startup tasks on a bounded thread pool while respecting their dependencies : a task is
+ * started when the tasks of all its dependencies have finished. Items taking part in a dependency
+ * cycle, and all items depending on them, are reported and run one after another on the calling
+ * thread after all other items, in the order they were passed.
+ * <p/>
+ * Startup code usually runs while the caller holds the monitor of the BaracusApplicationContext
+ * class, and bean code tends to call synchronized context functions. To avoid a dead lock the
+ * calling thread releases this monitor while waiting for the workers.
+ *
+ * @param <T> the item type, items are compared by identity
+ */
+final class StartupScheduler<T> {
+
+    private static final Logger logger = new Logger(StartupScheduler.class);
+
+    /**
+     * the work to do for a single item
+     */
+    interface Task<T> {
+        void run(T item);
+    }
+
+    private final int threads;
+
+    /**
+     * @param threads - the maximum number of worker threads
+     */
+    StartupScheduler(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * runs the task for all items. Returns when all items are done.
+     *
+     * @param items        - the items in a deterministic order
+     * @param dependencies - the dependencies of each item, items without entry have no dependencies
+     * @param task         - the task
+     * @throws RuntimeException the first failure in item order
+     */
+    void runAll(List<T> items, Map<T, ? extends Collection<T>> dependencies, final Task<T> task) {
+        final Map<T, Node<T>> nodes = new IdentityHashMap<T, Node<T>>();
+        for (T item : items) {
+            nodes.put(item, new Node<T>(item));
+        }
+        for (Node<T> node : nodes.values()) {
+            Collection<T> deps = dependencies.get(node.item);
+            if (deps == null) {
+                continue;
+            }
+            for (T dep : deps) {
+                Node<T> depNode = nodes.get(dep);
+                if (depNode != null && depNode != node && !depNode.dependents.contains(node)) {
+                    depNode.dependents.add(node);
+                    node.pending.incrementAndGet();
+                }
+            }
+        }
+
+        // everything not reachable from the roots is part of or behind a cycle
+        List<Node<T>> runnable = findRunnable(items, nodes);
+        List<Node<T>> blocked = new ArrayList<Node<T>>();
+        for (T item : items) {
+            Node<T> node = nodes.get(item);
+            if (!node.reachable) {
+                blocked.add(node);
+            }
+        }
+        if (!blocked.isEmpty()) {
+            StringBuilder names = new StringBuilder();
+            for (Node<T> node : blocked) {
+                names.append(names.length() > 0 ? ", " : "").append(node.item.getClass().getName());
+            }
+            logger.warn("Cyclic bean dependencies detected, running $1 sequentially", names);
+        }
+
+        final int total = runnable.size();
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = total > 0 ? Executors.newFixedThreadPool(Math.min(threads, total), new StartupThreadFactory()) : null;
+        try {
+            // collect the roots first, running workers decrement the counters of their dependents
+            List<Node<T>> roots = new ArrayList<Node<T>>();
+            for (Node<T> node : runnable) {
+                if (node.pending.get() == 0) {
+                    roots.add(node);
+                }
+            }
+            for (Node<T> node : roots) {
+                submit(executor, node, task, done);
+            }
+            awaitCompletion(done, total);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        for (Node<T> node : blocked) {
+            run(node, task);
+        }
+
+        for (T item : items) {
+            RuntimeException failure = nodes.get(item).failure;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private List<Node<T>> findRunnable(List<T> items, Map<T, Node<T>> nodes) {
+        // Kahn's algorithm on a copy of the pending counters
+        Map<Node<T>, Integer> pending = new IdentityHashMap<Node<T>, Integer>();
+        Deque<Node<T>> queue = new ArrayDeque<Node<T>>();
+        for (T item : items) {
+            Node<T> node = nodes.get(item);
+            pending.put(node, node.pending.get());
+            if (node.pending.get() == 0) {
+                queue.add(node);
+            }
+        }
+        List<Node<T>> result = new ArrayList<Node<T>>();
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.poll();
+            node.reachable = true;
+            result.add(node);
+            for (Node<T> dependent : node.dependents) {
+                int left = pending.get(dependent) - 1;
+                pending.put(dependent, left);
+                if (left == 0) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void submit(final ExecutorService executor, final Node<T> node, final Task<T> task, final AtomicInteger done) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    StartupScheduler.this.run(node, task);
+                    for (Node<T> dependent : node.dependents) {
+                        if (dependent.reachable && dependent.pending.decrementAndGet() == 0) {
+                            submit(executor, dependent, task, done);
+                        }
+                    }
+                } finally {
+                    done.incrementAndGet();
+                    synchronized (BaracusApplicationContext.class) {
+                        BaracusApplicationContext.class.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private void run(Node<T> node, Task<T> task) {
+        try {
+            task.run(node.item);
+        } catch (RuntimeException e) {
+            node.failure = e;
+        } catch (Error e) {
+            node.failure = new RuntimeException(e);
+        }
+    }
+
+    /**
+     * waits for the workers, releasing the context monitor if the calling thread holds it
+     */
+    private static void awaitCompletion(AtomicInteger done, int total) {
+        try {
+            if (Thread.holdsLock(BaracusApplicationContext.class)) {
+                while (done.get() < total) {
+                    BaracusApplicationContext.class.wait(10);
+                }
+            } else {
+                synchronized (BaracusApplicationContext.class) {
+                    while (done.get() < total) {
+                        BaracusApplicationContext.class.wait(10);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the startup workers", e);
+        }
+    }
+
+    private static final class Node<T> {
+        private final T item;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final List<Node<T>> dependents = new ArrayList<Node<T>>(2);
+        private volatile RuntimeException failure;
+        private boolean reachable = false;
+
+        private Node(T item) {
+            this.item = item;
+        }
+    }
+
+    private static final class StartupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "baracus-startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
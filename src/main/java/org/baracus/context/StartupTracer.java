@@ -0,0 +1,289 @@
+package org.baracus.context;
+
+import org.baracus.util.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Records the timings of the context startup. For every bean the instantiation, the injection
+ * and the post construction are recorded, as well as the ApplicationContextInitializer and the
+ * whole initApplicationContext call. The spans of the last startup are kept in memory until
+ * the next one begins.
+ * <p/>
+ * Query the spans to find slow beans :
+ * <pre>
+ * {@code
+ * for (StartupTracer.Span span : StartupTracer.getSlowest(10)) {
+ *     Log.i("STARTUP", span.toString());
+ * }
+ * }
+ * </pre>
+ * or export them as a Chrome trace-event file and open it in chrome://tracing :
+ * <pre>
+ * {@code
+ * StartupTracer.exportChromeTrace(new File(getExternalFilesDir(null), "startup.json"));
+ * }
+ * </pre>
+ */
+public final class StartupTracer {
+
+    private static final Logger logger = new Logger(StartupTracer.class);
+
+    /**
+     * the traced startup phases
+     */
+    public enum Phase {
+        /**
+         * constructor call of a bean
+         */
+        INSTANTIATION,
+        /**
+         * injection of a bean's dependencies
+         */
+        INJECTION,
+        /**
+         * Initializeable.postConstruct of a bean
+         */
+        POST_CONSTRUCT,
+        /**
+         * ApplicationContextInitializer.afterContextIsBuilt
+         */
+        INITIALIZER,
+        /**
+         * the whole initApplicationContext call
+         */
+        CONTEXT
+    }
+
+    /**
+     * A single recorded timing
+     */
+    public static final class Span {
+        private final Phase phase;
+        private final String name;
+        private final long startNanos;
+        private final long durationNanos;
+        private final long threadId;
+
+        Span(Phase phase, String name, long startNanos, long durationNanos, long threadId) {
+            this.phase = phase;
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return the bean class name or the name of the traced step
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the start time, relative to the origin of the startup
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        @Override
+        public String toString() {
+            return phase + " " + name + " : " + (durationNanos / 1000) + " micros";
+        }
+    }
+
+    private static final List<Span> spans = new ArrayList<Span>();
+
+    private static volatile boolean enabled = true;
+
+    private static long origin = System.nanoTime();
+
+    private StartupTracer() {
+        // Utility class constructor
+    }
+
+    /**
+     * @param enabled - false to switch tracing off
+     */
+    public static void setEnabled(boolean enabled) {
+        StartupTracer.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * drops all spans and sets the origin of the trace to now. Called when the context is initialized.
+     */
+    static synchronized void reset() {
+        spans.clear();
+        origin = System.nanoTime();
+    }
+
+    /**
+     * @return the start timestamp to pass to end()
+     */
+    static long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * records a span
+     *
+     * @param phase - the phase
+     * @param name  - the bean class name or step name
+     * @param start - the timestamp returned by begin()
+     */
+    static void end(Phase phase, String name, long start) {
+        if (enabled && start != 0) {
+            long now = System.nanoTime();
+            synchronized (StartupTracer.class) {
+                spans.add(new Span(phase, name, start - origin, now - start, Thread.currentThread().getId()));
+            }
+        }
+    }
+
+    /**
+     * @return all spans of the last startup in recording order
+     */
+    public static synchronized List<Span> getSpans() {
+        return new ArrayList<Span>(spans);
+    }
+
+    /**
+     * @param phase - the phase
+     * @return all spans of the phase
+     */
+    public static synchronized List<Span> getSpans(Phase phase) {
+        List<Span> result = new ArrayList<Span>();
+        for (Span span : spans) {
+            if (span.phase == phase) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param phase - the phase
+     * @return the sum of all durations of the phase in nanos
+     */
+    public static synchronized long getTotalNanos(Phase phase) {
+        long result = 0;
+        for (Span span : spans) {
+            if (span.phase == phase) {
+                result += span.durationNanos;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param count - the maximum number of spans
+     * @return the slowest bean spans, the CONTEXT span is left out
+     */
+    public static List<Span> getSlowest(int count) {
+        List<Span> result = getSpans();
+        for (int i = result.size() - 1; i >= 0; --i) {
+            if (result.get(i).phase == Phase.CONTEXT) {
+                result.remove(i);
+            }
+        }
+        Collections.sort(result, new Comparator<Span>() {
+            @Override
+            public int compare(Span a, Span b) {
+                return a.durationNanos < b.durationNanos ? 1 : a.durationNanos == b.durationNanos ? 0 : -1;
+            }
+        });
+        return result.size() > count ? new ArrayList<Span>(result.subList(0, count)) : result;
+    }
+
+    /**
+     * writes the spans as Chrome trace-event JSON (complete events, timestamps in micros)
+     *
+     * @param writer - the target, it is not closed
+     * @throws IOException
+     */
+    public static void writeChromeTrace(Writer writer) throws IOException {
+        List<Span> snapshot = getSpans();
+        writer.write("{\"traceEvents\":[");
+        for (int i = 0; i < snapshot.size(); ++i) {
+            Span span = snapshot.get(i);
+            if (i > 0) {
+                writer.write(",");
+            }
+            writer.write("\n{\"name\":\"");
+            writer.write(escape(span.name));
+            writer.write("\",\"cat\":\"");
+            writer.write(span.phase.name());
+            writer.write("\",\"ph\":\"X\",\"ts\":");
+            writer.write(String.valueOf(span.startNanos / 1000));
+            writer.write(",\"dur\":");
+            writer.write(String.valueOf(span.durationNanos / 1000));
+            writer.write(",\"pid\":1,\"tid\":");
+            writer.write(String.valueOf(span.threadId));
+            writer.write("}");
+        }
+        writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+
+    /**
+     * exports the spans as Chrome trace-event JSON file, @see writeChromeTrace
+     *
+     * @param file - the target file
+     * @return true, if the file has been written
+     */
+    public static boolean exportChromeTrace(File file) {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            writeChromeTrace(writer);
+            return true;
+        } catch (IOException e) {
+            logger.error("Could not export the startup trace to " + file.getAbsolutePath(), e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); ++i) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(' ');
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -3,13 +3,17 @@ package org.baracus.dao;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteStatement;
 import org.baracus.annotations.Bean;
+import org.baracus.annotations.Cached;
 import org.baracus.context.BaracusApplicationContext;
 import org.baracus.orm.*;
 import org.baracus.util.Logger;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DAO Base Class. If You want to make use of DAOs, You must derive this class to manage a
@@ -27,6 +31,15 @@ public abstract class BaseDao<T extends AbstractModelBase> {
 
     protected final Class<T> managedClass;
 
+    /**
+     * all registered second level caches by managed class
+     */
+    private static final Map<Class<?>, CacheSlot<?>> entityCaches = new ConcurrentHashMap<Class<?>, CacheSlot<?>>();
+
+    private volatile CacheSlot<T> cacheSlot;
+
+    private volatile int batchFetchSize = 1;
+
     /**
      * Rowmapper component providing the object mapping functions
      * example :
@@ -118,6 +131,29 @@ public abstract class BaseDao<T extends AbstractModelBase> {
         Field getCreationDateField();
     }
 
+    /**
+     * Interface for a RowMapper able to bind a model bean directly into a precompiled
+     * statement. If Your RowMapper implements this interface, inserts and updates
+     * are performed with cached statements instead of building ContentValues for every row.
+     * <p/>
+     * Notice : All columns are written, so a null value in Your bean will result in a
+     * NULL column, which differs from the ContentValues path, where null values are left out.
+     *
+     * @param <T>
+     */
+    public static interface StatementBindingRowMapper<T extends AbstractModelBase> extends RowMapper<T> {
+        /**
+         * binds all fields of the field list except the id column in field index order
+         * to the statement. the first field is bound at firstIndex, the second one at
+         * firstIndex + 1 and so on.
+         *
+         * @param statement  - the statement to bind to
+         * @param firstIndex - the 1-based parameter index of the first field
+         * @param item       - the model bean
+         */
+        void bindValues(SQLiteProgram statement, int firstIndex, T item);
+    }
+
     /**
      * Lock-in Constructor. Replaces the deprecated getManagedClass() function in order to save
      * performance
@@ -126,6 +162,133 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      */
     protected BaseDao(Class<T> managedClass) {
         this.managedClass = managedClass;
+        Cached cached = getClass().getAnnotation(Cached.class);
+        if (cached != null) {
+            setEntityCache(new BoundedEntityCache<T>(cached));
+        }
+    }
+
+    /**
+     * sets the second level cache of this DAO. getById and getByName are answered from the cache,
+     * writes of this DAO and set change events of the managed class clear it. Pass null to
+     * switch caching off. Instead of calling this function You can annotate Your DAO with @Cached.
+     * Inside a unit of work, cached entities are registered in the unit of work, but entities
+     * loaded by the unit of work are not put into the cache.
+     *
+     * @param entityCache - the cache
+     */
+    public void setEntityCache(EntityCache<T> entityCache) {
+        CacheSlot<T> slot = entityCache != null ? new CacheSlot<T>(entityCache) : null;
+        this.cacheSlot = slot;
+        if (slot != null) {
+            entityCaches.put(managedClass, slot);
+        } else {
+            entityCaches.remove(managedClass);
+        }
+    }
+
+    /**
+     * @return the second level cache of this DAO or null
+     */
+    public EntityCache<T> getEntityCache() {
+        CacheSlot<T> slot = cacheSlot;
+        return slot != null ? slot.cache : null;
+    }
+
+    /**
+     * sets the batch size used to resolve lazy references and lazy collections pointing to
+     * this DAO's entities. If greater than one, the first access to a lazy reference created
+     * while mapping a result set loads up to batchFetchSize of its siblings with a single
+     * IN query. The default is 1 (no batch fetching).
+     *
+     * @param batchFetchSize - the batch size
+     */
+    public void setBatchFetchSize(int batchFetchSize) {
+        this.batchFetchSize = Math.max(1, Math.min(batchFetchSize, StatementCache.MAX_VARIABLES));
+    }
+
+    /**
+     * @return the batch size for lazy references and collections, @see setBatchFetchSize
+     */
+    public int getBatchFetchSize() {
+        return batchFetchSize;
+    }
+
+    /**
+     * clears the second level cache of the passed model class, if there is one.
+     *
+     * @param clazz - the model class
+     */
+    public static void invalidateEntityCache(Class<?> clazz) {
+        CacheSlot<?> slot = entityCaches.get(clazz);
+        if (slot != null) {
+            slot.invalidate();
+        }
+    }
+
+    /**
+     * clears all second level caches
+     */
+    public static void invalidateEntityCaches() {
+        for (CacheSlot<?> slot : entityCaches.values()) {
+            slot.invalidate();
+        }
+    }
+
+    private void invalidateEntityCache() {
+        CacheSlot<T> slot = cacheSlot;
+        if (slot != null) {
+            slot.invalidate();
+        }
+    }
+
+    /**
+     * a second level cache together with its invalidation generation. A loaded entity is only
+     * put into the cache, if the cache has not been invalidated while the entity was read.
+     * Otherwise a reader racing with a writer could cache the old row after the writer
+     * invalidated the cache, and without a time to live it would never expire.
+     *
+     * @param <T> the model type
+     */
+    private static final class CacheSlot<T extends AbstractModelBase> {
+        private final EntityCache<T> cache;
+        // guarded by cache
+        private long generation = 0;
+
+        private CacheSlot(EntityCache<T> cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * @return the current generation, take it before reading from the database
+         */
+        long generation() {
+            synchronized (cache) {
+                return generation;
+            }
+        }
+
+        /**
+         * caches the item unless the cache was invalidated since the passed generation was taken
+         *
+         * @param key        - the key
+         * @param item       - the loaded item
+         * @param generation - the generation taken before the item was read
+         */
+        void putIfCurrent(Object key, T item, long generation) {
+            synchronized (cache) {
+                if (this.generation == generation) {
+                    cache.put(key, item);
+                }
+            }
+        }
+
+        void invalidate() {
+            synchronized (cache) {
+                generation++;
+                cache.clear();
+            }
+        }
     }
 
     /**
@@ -139,7 +302,9 @@ public abstract class BaseDao<T extends AbstractModelBase> {
         if (!model.isTransient()) {
             Long id = model.getId();
             result = performDeleteById(id);
-            BaracusApplicationContext.emitDeleteEvent(managedClass);
+            forget(id);
+            invalidateEntityCache();
+            BaracusApplicationContext.emitDeleteEvent(managedClass, id);
             model.setTransient(true);
         } else {
             logger.warn("Warning. You tried to delete a transient entity of type $1. No operation performed!.", model.getClass().getName());
@@ -157,14 +322,72 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      */
     public int deleteById(Long id) {
         int i = performDeleteById(id);
-        BaracusApplicationContext.emitDeleteEvent(managedClass);
+        forget(id);
+        invalidateEntityCache();
+        BaracusApplicationContext.emitDeleteEvent(managedClass, id);
         return i;
     }
 
     private int performDeleteById(Long id) {
-        int result;
-        result = db.delete(getRowMapper().getAffectedTable(), getIdField() + " = ?", new String[]{id.toString()});
-        return result;
+        SQLiteStatement statement = getStatements().getDelete();
+        synchronized (statement) {
+            statement.bindLong(1, id);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * @return the cached statements of the managed table
+     */
+    StatementCache.TableStatements getStatements() {
+        RowMapper<T> rowMapper = getRowMapper();
+        return StatementCache.get(db, rowMapper.getAffectedTable(), getIdField(), rowMapper.getFieldList());
+    }
+
+    /**
+     * inserts the item, using the cached insert statement if the rowmapper supports it
+     *
+     * @param rowMapper - the rowmapper
+     * @param item      - the item to insert
+     * @return the row id of the new row
+     */
+    private long performInsert(RowMapper<T> rowMapper, T item) {
+        // an item carrying a preset id is inserted with this id, so it takes the ContentValues path
+        if (item.getId() == null && rowMapper instanceof StatementBindingRowMapper) {
+            SQLiteStatement statement = getStatements().getInsert();
+            synchronized (statement) {
+                statement.clearBindings();
+                ((StatementBindingRowMapper<T>) rowMapper).bindValues(statement, 1, item);
+                return statement.executeInsert();
+            }
+        }
+        ContentValues cv = rowMapper.getContentValues(item);
+        return db.insert(rowMapper.getAffectedTable(), null, cv);
+    }
+
+    /**
+     * updates the item by its id, using the cached update statement if the rowmapper supports it
+     *
+     * @param rowMapper - the rowmapper
+     * @param item      - the item to update
+     */
+    private void performUpdate(RowMapper<T> rowMapper, T item) {
+        if (rowMapper instanceof StatementBindingRowMapper) {
+            StatementCache.TableStatements statements = getStatements();
+            if (statements.getColumnCount() == 0) {
+                return; // nothing but the id, nothing to update
+            }
+            SQLiteStatement statement = statements.getUpdate();
+            synchronized (statement) {
+                statement.clearBindings();
+                ((StatementBindingRowMapper<T>) rowMapper).bindValues(statement, 1, item);
+                statement.bindLong(statements.getColumnCount() + 1, item.getId());
+                statement.executeUpdateDelete();
+            }
+        } else {
+            ContentValues cv = rowMapper.getContentValues(item);
+            db.update(rowMapper.getAffectedTable(), cv, getIdField() + "= ?", new String[]{item.getId().toString()});
+        }
     }
 
     /**
@@ -174,9 +397,132 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @return the model bean;
      */
     public T getById(Long id) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null && id != null) {
+            T known = uow.getIfKnown(managedClass, id);
+            if (known != null) {
+                return known;
+            }
+        }
+
+        CacheSlot<T> slot = cacheSlot;
+        if (slot == null || id == null) {
+            return getUniqueByField(getIdField(), String.valueOf(id));
+        }
+
+        T result = slot.cache.get(id);
+        if (result != null) {
+            return join(uow, result);
+        }
+        long generation = slot.generation();
+        result = getUniqueByField(getIdField(), String.valueOf(id));
+        if (result != null && uow == null) {
+            slot.putIfCurrent(id, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * passes an entity taken from the second level cache through the running unit of work, so
+     * that the unit of work keeps returning one instance per id.
+     *
+     * @param uow    - the running unit of work or null
+     * @param cached - the cached entity
+     * @return the instance known to the unit of work
+     */
+    private T join(UnitOfWork uow, T cached) {
+        if (uow == null) {
+            return cached;
+        }
+        T known = uow.getIfKnown(managedClass, cached.getId());
+        if (known != null) {
+            return known;
+        }
+        uow.put(managedClass, cached.getId(), cached);
+        return cached;
+    }
+
+    /**
+     * fetches all model beans matching the passed ids using IN queries.
+     *
+     * @param ids - the ids
+     * @return the found model beans in no particular order
+     */
+    public List<T> getByIds(Collection<Long> ids) {
+        List<T> result = new ArrayList<T>(ids.size());
+        List<Long> idList = new ArrayList<Long>(ids);
+        for (int start = 0; start < idList.size(); start += StatementCache.MAX_VARIABLES) {
+            List<Long> chunk = idList.subList(start, Math.min(idList.size(), start + StatementCache.MAX_VARIABLES));
+            Cursor c = queryIn(getIdField(), chunk);
+            try {
+                result.addAll(iterateCursor(c));
+            } finally {
+                c.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * fetches all model beans whose foreign key field matches one of the passed keys, grouped
+     * by the key. This is used to load lazy collections of several parents at once.
+     *
+     * @param foreignKeyField - the foreign key field
+     * @param keys            - the foreign key values
+     * @return the model beans by foreign key value. keys without match are left out
+     */
+    Map<Long, List<T>> getByForeignKeys(Field foreignKeyField, List<Long> keys) {
+        Map<Long, List<T>> result = new HashMap<Long, List<T>>(keys.size() * 2);
+        for (int start = 0; start < keys.size(); start += StatementCache.MAX_VARIABLES) {
+            List<Long> chunk = keys.subList(start, Math.min(keys.size(), start + StatementCache.MAX_VARIABLES));
+            Cursor c = queryIn(foreignKeyField, chunk);
+            try {
+                while (c.moveToNext()) {
+                    Long key = c.getLong(foreignKeyField.fieldIndex);
+                    List<T> items = result.get(key);
+                    if (items == null) {
+                        items = new ArrayList<T>();
+                        result.put(key, items);
+                    }
+                    items.add(mapRow(c));
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return result;
+    }
 
+    /**
+     * queries all rows whose field value is one of the passed values
+     *
+     * @param field  - the field
+     * @param values - the values, at most StatementCache.MAX_VARIABLES
+     * @return the cursor, must be closed by the caller
+     */
+    Cursor queryIn(Field field, List<Long> values) {
         RowMapper<T> rowMapper = getRowMapper();
-        return getUniqueByField(getIdField(), String.valueOf(id));
+        return db.query(true, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), inClause(field, values.size()), toArgs(values), null, null, null, null);
+    }
+
+    private static String inClause(Field field, int size) {
+        StringBuilder sb = new StringBuilder(field.fieldName).append(" IN (");
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String[] toArgs(List<Long> values) {
+        String[] result = new String[values.size()];
+        int i = 0;
+        for (Long value : values) {
+            result[i++] = String.valueOf(value);
+        }
+        return result;
     }
 
     /**
@@ -187,6 +533,15 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @return the object identified by this name
      */
     public T getByName(String name) {
+        UnitOfWork uow = UnitOfWork.current();
+        CacheSlot<T> slot = name != null ? cacheSlot : null;
+        if (slot != null) {
+            T cached = slot.cache.get(name);
+            if (cached != null) {
+                return join(uow, cached);
+            }
+        }
+
         logger.trace("get object by name $1", name);
 
         RowMapper<T> rowMapper = getRowMapper();
@@ -195,7 +550,12 @@ public abstract class BaseDao<T extends AbstractModelBase> {
         if (nameField == null) {
             throw new UnsupportedOperationException("NAME FIELD IS NOT DEFINED FOR THIS TYPE : " + rowMapper.getAffectedTable() + ". You have to implement Your RowMapper's getNameField function properly to make use of this feature.");
         }
-        return getUniqueByField(nameField, name);
+        long generation = slot != null ? slot.generation() : 0;
+        T result = getUniqueByField(nameField, name);
+        if (slot != null && result != null && uow == null) {
+            slot.putIfCurrent(name, result, generation);
+        }
+        return result;
     }
 
     /**
@@ -217,7 +577,7 @@ public abstract class BaseDao<T extends AbstractModelBase> {
 
             c = db.query(true, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), field.fieldName + "= ?", new String[]{value}, null, null, null, null);
             if (!c.isAfterLast() && c.moveToNext()) {
-                result = rowMapper.from(c);
+                result = mapRow(c);
                 if (c.moveToNext()) {
                     throw new IllegalArgumentException("Querying " + field.fieldName + " with value " + value + " does not return a single item!");
                 }
@@ -285,7 +645,7 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      */
     public List<T> loadAll() {
         Cursor c = null;
-        List<T> result = new LinkedList<T>();
+        List<T> result = new ArrayList<T>(0);
         try {
             c = getLoadAllCursor();
             result = iterateCursor(c);
@@ -309,24 +669,198 @@ public abstract class BaseDao<T extends AbstractModelBase> {
         return db.query(true, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), null, null, null, null, null, null);
     }
 
+    /**
+     * Streaming query. Other than query(), the rows are mapped lazily while iterating the result,
+     * so even huge result sets can be processed in constant memory. The cursor is closed when the
+     * stream is exhausted; if You break the iteration, You have to close the stream by Yourself.
+     *
+     * @param selection     - the where clause, null selects all rows
+     * @param selectionArgs - the arguments for the where clause
+     * @return a closeable stream of mapped entities
+     */
+    public CursorStream<T> stream(String selection, String... selectionArgs) {
+        RowMapper<T> rowMapper = getRowMapper();
+        Cursor c = db.query(true, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), selection, selectionArgs, null, null, null, null);
+        return new CursorStream<T>(this, c);
+    }
+
+    /**
+     * @return a stream over all entities of Your type in database. @see stream
+     */
+    public CursorStream<T> streamAll() {
+        return new CursorStream<T>(this, getLoadAllCursor());
+    }
+
+    /**
+     * creates a type safe query on the managed table. @see Query
+     *
+     * @return the query builder
+     */
+    public Query<T> select() {
+        return new Query<T>(this);
+    }
+
+    /**
+     * creates a projection query reading only the chosen columns into primitive arrays
+     * instead of entities. @see Projection
+     *
+     * @return the projection builder
+     */
+    public Projection projection() {
+        return new Projection(this);
+    }
+
+    /**
+     * plain column query for projections.
+     *
+     * @param columns       - the column names
+     * @param selection     - the where clause or null
+     * @param selectionArgs - the arguments of the where clause
+     * @param orderBy       - the order by clause or null
+     * @return the cursor, must be closed by the caller
+     */
+    Cursor queryColumns(String[] columns, String selection, String[] selectionArgs, String orderBy) {
+        return db.query(false, getRowMapper().getAffectedTable(), columns, selection, selectionArgs, null, null, orderBy, null);
+    }
+
+    /**
+     * Keyset pagination. Returns at most limit items whose order field value is greater than
+     * the passed key, ordered by the order field. Pass null as key to fetch the first page
+     * and the order field value of the last item of a page to fetch the next one. Because
+     * no OFFSET is used, every page costs the same, no matter how deep You are in the table.
+     * <p/>
+     * The order field should be unique (e.g. the id) and indexed. To walk through a non unique
+     * field, use a Pager, which breaks ties using the id. Items with a NULL value in the order
+     * field are never returned.
+     *
+     * @param orderField - the field to order by
+     * @param afterKey   - the order field value of the last item of the previous page or null
+     * @param limit      - the maximum number of items
+     * @return the items of the page
+     */
+    public List<T> page(Field orderField, Object afterKey, int limit) {
+        Cursor c = queryPage(orderField, afterKey != null ? toKeyArg(afterKey) : null, null, limit);
+        try {
+            return iterateCursor(c);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * creates a keyset pager walking through the table ordered by the passed field. @see Pager
+     *
+     * @param orderField - the field to order by, should be indexed
+     * @param pageSize   - the maximum number of items per page
+     * @return the pager
+     */
+    public Pager<T> pager(Field orderField, int pageSize) {
+        return new Pager<T>(this, orderField, pageSize);
+    }
+
+    /**
+     * queries one page of a keyset pagination.
+     *
+     * @param orderField - the field to order by
+     * @param afterKey   - the order field value to seek behind or null for the first page
+     * @param afterId    - the id of the last item for tie breaking or null, if the order field is unique
+     * @param limit      - the maximum number of rows
+     * @return the cursor of the page
+     */
+    Cursor queryPage(Field orderField, String afterKey, Long afterId, int limit) {
+        RowMapper<T> rowMapper = getRowMapper();
+        String idName = getIdField().fieldName;
+        boolean orderedById = orderField.equals(getIdField());
+
+        String selection = pageSelection(orderField.fieldName, idName, orderedById, afterKey != null, afterId != null);
+        String[] selectionArgs = null;
+        if (afterKey != null) {
+            selectionArgs = orderedById || afterId == null
+                    ? new String[]{afterKey}
+                    : new String[]{afterKey, afterKey, afterId.toString()};
+        }
+        String orderBy = orderedById ? idName : orderField.fieldName + ", " + idName;
+
+        return db.query(false, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), selection, selectionArgs, null, null, orderBy, String.valueOf(limit));
+    }
+
+    /**
+     * builds the where clause of a keyset page. NULL values in the order field are excluded,
+     * because SQLite sorts them first and no key comparison can seek behind them.
+     *
+     * @param fieldName   - the name of the order field
+     * @param idName      - the name of the id field
+     * @param orderedById - true, if the order field is the id
+     * @param afterKey    - true, if the page seeks behind a key
+     * @param afterId     - true, if ties are broken using the id
+     * @return the where clause or null
+     */
+    static String pageSelection(String fieldName, String idName, boolean orderedById, boolean afterKey, boolean afterId) {
+        if (!afterKey) {
+            return orderedById ? null : fieldName + " IS NOT NULL";
+        }
+        if (orderedById || !afterId) {
+            return fieldName + " > ?";
+        }
+        return "(" + fieldName + " > ?) OR (" + fieldName + " = ? AND " + idName + " > ?)";
+    }
+
+    private static String toKeyArg(Object key) {
+        if (key instanceof Date) {
+            return String.valueOf(((Date) key).getTime());
+        }
+        if (key instanceof Boolean) {
+            return ((Boolean) key) ? "1" : "0";
+        }
+        return String.valueOf(key);
+    }
+
     /**
      * Transaction handle. Enables You to have transactions with sqlite in a jdbc-alike way.
      * You can get it by calling the beginTransaction function
+     *
+     * The change events emitted within the transaction are held back and delivered merged
+     * on commit. On rollback they are discarded.
      */
     public final class TxHandle {
         private final SQLiteDatabase db;
+        private final UnitOfWork unitOfWork;
 
         private TxHandle(SQLiteDatabase db) {
             this.db = db;
+            this.unitOfWork = UnitOfWork.beginTransaction();
+            BaracusApplicationContext.beginEventBatch();
         }
 
         public final void commit() {
-            this.db.setTransactionSuccessful();
-            this.db.endTransaction();
+            boolean committed = false;
+            try {
+                this.db.setTransactionSuccessful();
+                this.db.endTransaction();
+                committed = true;
+            } finally {
+                closeUnitOfWork();
+                if (committed) {
+                    BaracusApplicationContext.commitEventBatch();
+                } else {
+                    BaracusApplicationContext.discardEventBatch();
+                }
+            }
         }
 
         public final void rollback() {
-            this.db.endTransaction();
+            try {
+                this.db.endTransaction();
+            } finally {
+                closeUnitOfWork();
+                BaracusApplicationContext.discardEventBatch();
+            }
+        }
+
+        private void closeUnitOfWork() {
+            if (unitOfWork != null) {
+                unitOfWork.close();
+            }
         }
 
     }
@@ -378,8 +912,7 @@ public abstract class BaseDao<T extends AbstractModelBase> {
                     t.setCreationDate(new Date());
                     t.setLastModificationDate(new Date());
                 }
-                ContentValues cv = rowMapper.getContentValues(item);
-                long key = db.insert(rowMapper.getAffectedTable(), null, cv);
+                long key = performInsert(rowMapper, item);
                 item.setId(key);
                 item.setTransient(false);
                 requiresSetChange = true;
@@ -402,9 +935,7 @@ public abstract class BaseDao<T extends AbstractModelBase> {
                     }
                 }
 
-                ContentValues cv = rowMapper.getContentValues(item);
-
-                db.update(rowMapper.getAffectedTable(), cv, getIdField() + "= ?", new String[]{item.getId().toString()});
+                performUpdate(rowMapper, item);
                 requiresInstanceChange = true;
             }
             if (localTransaction) {
@@ -416,8 +947,11 @@ public abstract class BaseDao<T extends AbstractModelBase> {
             }
         }
 
+        remember(item);
+        invalidateEntityCache();
+
         if (requiresSetChange) {
-            BaracusApplicationContext.emitSetChangeEvent(managedClass);
+            BaracusApplicationContext.emitInsertEvent(item);
         }
 
         if (requiresInstanceChange) {
@@ -445,6 +979,11 @@ public abstract class BaseDao<T extends AbstractModelBase> {
     public void deleteAll() {
         RowMapper<T> rowMapper = getRowMapper();
         db.delete(rowMapper.getAffectedTable(), null, null);
+        invalidateEntityCache();
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.evict(managedClass);
+        }
 
     }
 
@@ -463,14 +1002,63 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @return - all mapped entities
      */
     protected List<T> iterateCursor(Cursor c) {
-        RowMapper<T> rowMapper = getRowMapper();
-        List<T> result = new LinkedList<T>();
-        while (!c.isAfterLast() && c.moveToNext()) {
-            result.add(rowMapper.from(c));
+        List<T> result = new ArrayList<T>(c.getCount());
+        BatchFetchScope scope = BatchFetchScope.open();
+        try {
+            while (!c.isAfterLast() && c.moveToNext()) {
+                result.add(mapRow(c));
+            }
+        } finally {
+            scope.close();
         }
         return result;
     }
 
+    /**
+     * maps the current row of the cursor to an entity
+     *
+     * @param c - the cursor, placed on the row to map
+     * @return the mapped entity
+     */
+    T mapRow(Cursor c) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow == null) {
+            return getRowMapper().from(c);
+        }
+
+        Long id = c.getLong(getIdField().fieldIndex);
+        T result = uow.get(managedClass, id);
+        if (result == null) {
+            result = getRowMapper().from(c);
+            uow.put(managedClass, id, result);
+        }
+        return result;
+    }
+
+    /**
+     * registers the saved item in the running unit of work
+     *
+     * @param item - the saved item
+     */
+    private void remember(T item) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.put(managedClass, item.getId(), item);
+        }
+    }
+
+    /**
+     * removes a deleted item from the running unit of work
+     *
+     * @param id - the id of the deleted item
+     */
+    private void forget(Long id) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.remove(managedClass, id);
+        }
+    }
+
     /**
      * @return the rowmapper implemented by you. @see ConfigurationDao.RowMapper
      */
@@ -494,20 +1082,218 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @param handle - the tx handle
      */
     public void saveAll(final List<T> list, final TxHandle handle) {
+        final boolean timed = logger.isDebugEnabled();
+        final long started = timed ? System.nanoTime() : 0;
         final boolean localTransaction = handle == null;
         final TxHandle txHandle = localTransaction ? getTransaction() : handle;
+        final List<T> inserts = new ArrayList<T>();
+        final List<T> updated = new ArrayList<T>();
+        // the state changed before the commit, restored on rollback
+        final List<Long> insertIds = new ArrayList<Long>();
+        final List<Boolean> insertTransients = new ArrayList<Boolean>();
+        int[] versions = null;
         try {
             for (T item : list) {
-                save(item, localTransaction ? txHandle : handle);
+                if (item.getId() == null || item.isTransient()) {
+                    insertIds.add(item.getId());
+                    insertTransients.add(item.isTransient());
+                    if (item instanceof Timestamped) {
+                        Timestamped t = (Timestamped) item;
+                        t.setCreationDate(new Date());
+                        t.setLastModificationDate(new Date());
+                    }
+                    inserts.add(item);
+                } else {
+                    if (item instanceof Timestamped) {
+                        Timestamped t = (Timestamped) item;
+                        if (t.getCreationDate() == null) {
+                            t.setCreationDate(new Date());
+                        }
+                        t.setLastModificationDate(new Date());
+                    }
+                    updated.add(item);
+                }
+            }
+
+            if (!updated.isEmpty() && OptmisticLocking.class.isAssignableFrom(managedClass)) {
+                versions = new int[updated.size()];
+                for (int i = 0; i < versions.length; ++i) {
+                    versions[i] = ((OptmisticLocking) updated.get(i)).getVersion();
+                }
+                checkAndIncrementVersions(updated);
+            }
+
+            RowMapper<T> rowMapper = getRowMapper();
+            performBulkInsert(rowMapper, inserts);
+            // one precompiled statement per row inside the transaction; a multi-row UPDATE would
+            // need UPSERT or a CASE per column, which the SQLite versions of older devices lack
+            for (T item : updated) {
+                performUpdate(rowMapper, item);
             }
 
             if (localTransaction) {
                 txHandle.commit();
             }
         } catch (RuntimeException e) {
+            logger.error("saveAll failed and was aborted.", e);
             if (localTransaction) {
                 txHandle.rollback();
+                for (int i = 0; i < inserts.size(); ++i) {
+                    inserts.get(i).setId(insertIds.get(i));
+                    inserts.get(i).setTransient(insertTransients.get(i));
+                }
+                for (int i = 0; versions != null && i < versions.length; ++i) {
+                    ((OptmisticLocking) updated.get(i)).setVersion(versions[i]);
+                }
+            }
+            return;
+        }
+
+        for (T item : list) {
+            remember(item);
+        }
+        invalidateEntityCache();
+
+        // one set change for the entire batch instead of one event per row
+        BaracusApplicationContext.beginEventBatch();
+        try {
+            for (T item : inserts) {
+                BaracusApplicationContext.emitInsertEvent(item);
+            }
+            for (T item : updated) {
+                BaracusApplicationContext.emitDataChangeEvent(item);
+            }
+        } finally {
+            BaracusApplicationContext.commitEventBatch();
+        }
+
+        if (timed) {
+            logger.atDebug().with("table", getRowMapper().getAffectedTable()).with("inserted", inserts.size())
+                    .with("updated", updated.size()).with("micros", (System.nanoTime() - started) / 1000).log("saveAll");
+        }
+    }
+
+    /**
+     * inserts all passed items. If the rowmapper supports statement binding, the rows are
+     * inserted in batches as large as SQLite's variable limit allows. The ids of a batch are
+     * assigned in ascending order, so they are derived from the id of the last inserted row.
+     * This requires the id column to be an INTEGER PRIMARY KEY.
+     *
+     * @param rowMapper - the rowmapper
+     * @param items     - the transient items to insert
+     */
+    private void performBulkInsert(RowMapper<T> rowMapper, List<T> items) {
+        if (!(rowMapper instanceof StatementBindingRowMapper)) {
+            for (T item : items) {
+                item.setId(performInsert(rowMapper, item));
+                item.setTransient(false);
+            }
+            return;
+        }
+
+        StatementBindingRowMapper<T> binder = (StatementBindingRowMapper<T>) rowMapper;
+        StatementCache.TableStatements statements = getStatements();
+        int columns = statements.getColumnCount();
+        int batchSize = statements.getBulkInsertRows();
+
+        List<T> batch = new ArrayList<T>(Math.min(batchSize, items.size()));
+        for (T item : items) {
+            if (item.getId() != null) {
+                // preset ids are kept, so these rows are inserted one by one
+                item.setId(performInsert(rowMapper, item));
+                item.setTransient(false);
+                continue;
+            }
+            batch.add(item);
+            if (batch.size() == batchSize) {
+                insertBatch(binder, statements, columns, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertBatch(binder, statements, columns, batch);
+        }
+    }
+
+    private void insertBatch(StatementBindingRowMapper<T> binder, StatementCache.TableStatements statements, int columns, List<T> batch) {
+        if (columns == 0) {
+            for (T item : batch) {
+                item.setId(performInsert(binder, item));
+                item.setTransient(false);
+            }
+            return;
+        }
+
+        SQLiteStatement statement = statements.getBulkInsert(batch.size());
+        long lastId;
+        try {
+            synchronized (statement) {
+                statement.clearBindings();
+                int index = 1;
+                for (T item : batch) {
+                    binder.bindValues(statement, index, item);
+                    index += columns;
+                }
+                lastId = statement.executeInsert();
+            }
+        } finally {
+            statements.release(statement);
+        }
+
+        long id = lastId - batch.size() + 1;
+        for (T item : batch) {
+            item.setId(id++);
+            item.setTransient(false);
+        }
+    }
+
+    /**
+     * performs the optimistic locking check for a list of persistent items with one IN query per
+     * batch instead of loading every single item. The version of each item is incremented afterwards.
+     *
+     * @param items - the items to check
+     */
+    private void checkAndIncrementVersions(List<T> items) {
+        final String table = getRowMapper().getAffectedTable();
+        final String idName = getIdField().fieldName;
+        final String versionName = OptimisticLockingModelBase.versionCol.fieldName;
+
+        Map<Long, Integer> versions = new HashMap<Long, Integer>(items.size() * 2);
+        for (int start = 0; start < items.size(); start += StatementCache.MAX_VARIABLES) {
+            int end = Math.min(items.size(), start + StatementCache.MAX_VARIABLES);
+            String[] args = new String[end - start];
+            StringBuilder sql = new StringBuilder("SELECT ").append(idName).append(", ").append(versionName)
+                    .append(" FROM ").append(table).append(" WHERE ").append(idName).append(" IN (");
+            for (int i = start; i < end; ++i) {
+                if (i > start) {
+                    sql.append(',');
+                }
+                sql.append('?');
+                args[i - start] = items.get(i).getId().toString();
             }
+            sql.append(')');
+
+            Cursor c = db.rawQuery(sql.toString(), args);
+            try {
+                while (c.moveToNext()) {
+                    versions.put(c.getLong(0), c.getInt(1));
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        for (T item : items) {
+            OptmisticLocking lockable = (OptmisticLocking) item;
+            Integer version = versions.get(item.getId());
+            if (version == null || version != lockable.getVersion()) {
+                throw new OptimisticLockingModelBase.OptimisticLockException(this.managedClass.getSimpleName());
+            }
+        }
+
+        for (T item : items) {
+            OptmisticLocking lockable = (OptmisticLocking) item;
+            lockable.setVersion(lockable.getVersion() + 1);
         }
     }
 
@@ -523,7 +1309,11 @@ public abstract class BaseDao<T extends AbstractModelBase> {
             }
 
             Cursor c = db.query(true, rowMapper.getAffectedTable(), rowMapper.getFieldList().getFieldNames(), ((TimestampSupportingRowmapper) rowMapper).getLastModifiedField().fieldName + " > ? ", new String[]{String.valueOf(date.getTime())}, null, null, null, null);
-            return iterateCursor(c);
+            try {
+                return iterateCursor(c);
+            } finally {
+                c.close();
+            }
         } else {
             throw new IllegalArgumentException(managedClass.getSimpleName() + " must implement Timestamped to make use of this function!");
         }
@@ -551,34 +1341,21 @@ public abstract class BaseDao<T extends AbstractModelBase> {
     public List<T> queryByExample(T example, boolean withWildCard) {
         ContentValues cv = getRowMapper().getContentValues(example);
 
-        // if optmistic locking, do not regard the version field
-        if (example instanceof OptimisticLockingModelBase) {
-            cv.remove(OptimisticLockingModelBase.versionCol.fieldName);
-        }
-
-        Set<Map.Entry<String, Object>> entries = cv.valueSet();
-        String[] args = new String[entries.size()];
-        StringBuilder clause = new StringBuilder();
-        int i = 0;
-        boolean withAnd = false;
-        for (Map.Entry<String, Object> entry : entries) {
-            if (withAnd) {
-                clause.append(" AND ");
-            } else {
-                withAnd = true;
+        // walk the field list instead of the content values, so equal examples share one query shape
+        Query<T> query = select().distinct();
+        for (Field field : getRowMapper().getFieldList().getFields()) {
+            Object value = cv.get(field.fieldName);
+            // if optmistic locking, do not regard the version field
+            if (value == null || (example instanceof OptimisticLockingModelBase && field.equals(OptimisticLockingModelBase.versionCol))) {
+                continue;
             }
-            if (entry.getValue() instanceof String) {
-                clause.append(entry.getKey()).append((withWildCard ? " LIKE ?" : " = ?"));
+            if (withWildCard && value instanceof String) {
+                query.like(field, (String) value);
             } else {
-                clause.append(entry.getKey()).append(" = ?");
+                query.eq(field, value);
             }
-            args[i++] = entry.getValue().toString();
         }
-
-        Cursor c = getDb().query(true, getRowMapper().getAffectedTable(), getRowMapper().getFieldList().getFieldNames(), clause.toString(), args, null, null, null, null);
-        List<T> result = iterateCursor(c);
-        c.close();
-        return result;
+        return query.list();
     }
 
 
@@ -611,8 +1388,24 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @return - the entity referenced or NullReference if passed ID is null
      */
     public static <U extends ModelBase> Reference<U> createLazyReference(final Class<? extends BaseDao<U>> daoClass, final Long id) {
-        return id == null ? new NullReference<U>() :
-                new LazyReference<U>(createReferenceLoader(daoClass, id));
+        if (id == null) {
+            return new NullReference<U>();
+        }
+
+        // created while mapping a result set : resolve it together with its siblings
+        BatchFetchScope scope = BatchFetchScope.current();
+        if (scope != null) {
+            final BatchFetchScope.ReferenceGroup<U> group = scope.referenceGroup(daoClass);
+            group.register(id);
+            return new LazyReference<U>(new ReferenceLoader<U>(null, id) {
+                @Override
+                public U loadObject() {
+                    return group.load(id);
+                }
+            });
+        }
+
+        return new LazyReference<U>(createReferenceLoader(daoClass, id));
     }
 
     /**
@@ -633,6 +1426,19 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @return Lazy reference pointing to
      */
     public static <U extends ModelBase> LazyCollection<U> createLazyCollection(final Class<? extends BaseDao<U>> daoClass, final Field foreignKeyField, final Long id) {
+        // created while mapping a result set : resolve it together with its siblings
+        BatchFetchScope scope = BatchFetchScope.current();
+        if (scope != null && id != null) {
+            final BatchFetchScope.CollectionGroup<U> group = scope.collectionGroup(daoClass, foreignKeyField);
+            group.register(id);
+            return new LazyCollection<U>(new LazyCollection.LazyLoader<U>() {
+                @Override
+                public List<U> loadReference() {
+                    return group.load(id);
+                }
+            });
+        }
+
         return new LazyCollection<U>(new LazyCollection.LazyLoader<U>() {
             @Override
             public List<U> loadReference() {
@@ -678,16 +1484,7 @@ public abstract class BaseDao<T extends AbstractModelBase> {
      * @param items - the list of items
      */
     public void save(List<T> items) {
-        TxHandle txHandle = getTransaction();
-        try {
-            for (T item : items) {
-                save(item, txHandle);
-            }
-            txHandle.commit();
-        } catch (Exception e) {
-            txHandle.rollback();
-        }
-
+        saveAll(items, null);
     }
 
     /**
@@ -718,7 +1515,9 @@ public abstract class BaseDao<T extends AbstractModelBase> {
                 if (!abstractModelBase.isTransient()) {
                     Long id = abstractModelBase.getId();
                     result += performDeleteById(id);
-                    BaracusApplicationContext.emitDeleteEvent(managedClass);
+                    forget(id);
+                    invalidateEntityCache();
+                    BaracusApplicationContext.emitDeleteEvent(managedClass, id);
                     abstractModelBase.setTransient(true);
                 } else {
                     logger.warn("Warning. You tried to delete a transient entity of type $1. No operation performed!.", abstractModelBase.getClass().getName());
@@ -0,0 +1,216 @@
+package org.baracus.dao;
+
+import org.baracus.context.BaracusApplicationContext;
+import org.baracus.orm.Field;
+import org.baracus.orm.ModelBase;
+
+import java.util.*;
+
+/**
+ * Collects the lazy references and lazy collections created while a result set is mapped.
+ * When the first of them is accessed, its siblings are loaded together with a single
+ * IN query instead of one query per element (N+1 problem). The batch size is taken from
+ * the target DAO, @see BaseDao.setBatchFetchSize
+ * <p/>
+ * A scope is bound to the thread mapping the result set. The groups collected by it live as long
+ * as the lazy references pointing to them, so they may be resolved from any thread later on.
+ */
+final class BatchFetchScope {
+
+    private static final ThreadLocal<BatchFetchScope> current = new ThreadLocal<BatchFetchScope>();
+
+    private final Map<Object, ReferenceGroup<?>> referenceGroups = new HashMap<Object, ReferenceGroup<?>>();
+    private final Map<Object, CollectionGroup<?>> collectionGroups = new HashMap<Object, CollectionGroup<?>>();
+
+    private int depth = 0;
+
+    private BatchFetchScope() {
+    }
+
+    /**
+     * opens a scope on the current thread or joins the running one
+     *
+     * @return the scope, must be closed after mapping
+     */
+    static BatchFetchScope open() {
+        BatchFetchScope scope = current.get();
+        if (scope == null) {
+            scope = new BatchFetchScope();
+            current.set(scope);
+        }
+        scope.depth++;
+        return scope;
+    }
+
+    /**
+     * @return the scope of the current thread or null
+     */
+    static BatchFetchScope current() {
+        return current.get();
+    }
+
+    /**
+     * closes the scope. References created afterwards are not batched with the ones collected so far.
+     */
+    void close() {
+        if (--depth == 0) {
+            current.remove();
+        }
+    }
+
+    <U extends ModelBase> ReferenceGroup<U> referenceGroup(Class<? extends BaseDao<U>> daoClass) {
+        ReferenceGroup<U> group = (ReferenceGroup<U>) referenceGroups.get(daoClass);
+        if (group == null) {
+            group = new ReferenceGroup<U>(daoClass);
+            referenceGroups.put(daoClass, group);
+        }
+        return group;
+    }
+
+    <U extends ModelBase> CollectionGroup<U> collectionGroup(Class<? extends BaseDao<U>> daoClass, Field foreignKeyField) {
+        Object key = Arrays.asList(daoClass, foreignKeyField);
+        CollectionGroup<U> group = (CollectionGroup<U>) collectionGroups.get(key);
+        if (group == null) {
+            group = new CollectionGroup<U>(daoClass, foreignKeyField);
+            collectionGroups.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * takes the requested key and up to batchSize - 1 further pending keys out of the pending set
+     */
+    private static List<Long> takeBatch(Set<Long> pending, Long requested, int batchSize) {
+        List<Long> result = new ArrayList<Long>(Math.min(batchSize, pending.size() + 1));
+        result.add(requested);
+        pending.remove(requested);
+        Iterator<Long> it = pending.iterator();
+        while (result.size() < batchSize && it.hasNext()) {
+            result.add(it.next());
+            it.remove();
+        }
+        return result;
+    }
+
+    /**
+     * the lazy objects of one target DAO created in a scope. A loaded value is held until the last
+     * lazy object of its key has been resolved, so resolved siblings can be collected and a lazy
+     * object created later on reads the current row.
+     *
+     * @param <U> the referenced model type
+     * @param <V> the loaded value type
+     */
+    abstract static class Group<U extends ModelBase, V> {
+        private final Class<? extends BaseDao<U>> daoClass;
+        private final Set<Long> pending = new LinkedHashSet<Long>();
+        private final Map<Long, V> loaded = new HashMap<Long, V>();
+        // the number of unresolved lazy objects per key
+        private final Map<Long, Integer> unresolved = new HashMap<Long, Integer>();
+
+        private Group(Class<? extends BaseDao<U>> daoClass) {
+            this.daoClass = daoClass;
+        }
+
+        synchronized void register(Long id) {
+            Integer count = unresolved.get(id);
+            unresolved.put(id, count != null ? count + 1 : 1);
+            if (!loaded.containsKey(id)) {
+                pending.add(id);
+            }
+        }
+
+        synchronized V load(Long id) {
+            try {
+                if (loaded.containsKey(id)) {
+                    return loaded.get(id);
+                }
+
+                BaseDao<U> dao = BaracusApplicationContext.getBean(daoClass);
+                if (dao.getBatchFetchSize() <= 1) {
+                    pending.remove(id);
+                    return loadOne(dao, id);
+                }
+
+                List<Long> batch = takeBatch(pending, id, dao.getBatchFetchSize());
+                loadAll(dao, batch, loaded);
+                return loaded.get(id);
+            } finally {
+                release(id);
+            }
+        }
+
+        private void release(Long id) {
+            Integer count = unresolved.remove(id);
+            if (count != null && count > 1) {
+                unresolved.put(id, count - 1);
+            } else {
+                loaded.remove(id);
+            }
+        }
+
+        /**
+         * loads the value of a single key
+         */
+        abstract V loadOne(BaseDao<U> dao, Long id);
+
+        /**
+         * loads the values of all keys of the batch into the target map, keys without match included
+         */
+        abstract void loadAll(BaseDao<U> dao, List<Long> batch, Map<Long, V> target);
+    }
+
+    /**
+     * the lazy references of one target DAO created in a scope
+     *
+     * @param <U> the referenced model type
+     */
+    static final class ReferenceGroup<U extends ModelBase> extends Group<U, U> {
+
+        private ReferenceGroup(Class<? extends BaseDao<U>> daoClass) {
+            super(daoClass);
+        }
+
+        @Override
+        U loadOne(BaseDao<U> dao, Long id) {
+            return dao.getById(id);
+        }
+
+        @Override
+        void loadAll(BaseDao<U> dao, List<Long> batch, Map<Long, U> target) {
+            for (Long key : batch) {
+                target.put(key, null);
+            }
+            for (U item : dao.getByIds(batch)) {
+                target.put(item.getId(), item);
+            }
+        }
+    }
+
+    /**
+     * the lazy collections of one target DAO and foreign key created in a scope
+     *
+     * @param <U> the referenced model type
+     */
+    static final class CollectionGroup<U extends ModelBase> extends Group<U, List<U>> {
+        private final Field foreignKeyField;
+
+        private CollectionGroup(Class<? extends BaseDao<U>> daoClass, Field foreignKeyField) {
+            super(daoClass);
+            this.foreignKeyField = foreignKeyField;
+        }
+
+        @Override
+        List<U> loadOne(BaseDao<U> dao, Long id) {
+            return dao.getByField(foreignKeyField, String.valueOf(id));
+        }
+
+        @Override
+        void loadAll(BaseDao<U> dao, List<Long> batch, Map<Long, List<U>> target) {
+            Map<Long, List<U>> byKey = dao.getByForeignKeys(foreignKeyField, batch);
+            for (Long key : batch) {
+                List<U> items = byKey.get(key);
+                target.put(key, items != null ? items : new ArrayList<U>(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.baracus.dao;
+
+import org.baracus.annotations.Cached;
+import org.baracus.orm.AbstractModelBase;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded entity cache with LRU or LFU eviction, a maximum number of entries, an optional
+ * memory budget and an optional time to live.
+ * <p/>
+ * The memory budget is enforced using a Weigher estimating the size of an entity in bytes.
+ * If no weigher is passed, only the number of entries is limited.
+ *
+ * @param <T> the model type
+ */
+public class BoundedEntityCache<T extends AbstractModelBase> implements EntityCache<T> {
+
+    /**
+     * estimates the memory consumption of a cached entity
+     *
+     * @param <T> the model type
+     */
+    public static interface Weigher<T> {
+        /**
+         * @param item - the entity
+         * @return the estimated size in bytes
+         */
+        long weigh(T item);
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+        private final long weight;
+        private int frequency = 0;
+
+        private Entry(T value, long expiresAt, long weight) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+
+    private final Cached.Eviction eviction;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long maxWeight;
+    private final Weigher<T> weigher;
+
+    private final Map<Object, Entry<T>> entries;
+    private long weight = 0;
+
+    /**
+     * @param eviction   - the eviction strategy
+     * @param maxEntries - the maximum number of entries
+     * @param ttlMillis  - the time to live of an entry, 0 means no expiry
+     */
+    public BoundedEntityCache(Cached.Eviction eviction, int maxEntries, long ttlMillis) {
+        this(eviction, maxEntries, ttlMillis, 0, null);
+    }
+
+    /**
+     * @param eviction   - the eviction strategy
+     * @param maxEntries - the maximum number of entries
+     * @param ttlMillis  - the time to live of an entry, 0 means no expiry
+     * @param maxWeight  - the memory budget in bytes, 0 means no budget
+     * @param weigher    - the weigher used to enforce the memory budget
+     */
+    public BoundedEntityCache(Cached.Eviction eviction, int maxEntries, long ttlMillis, long maxWeight, Weigher<T> weigher) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than zero!");
+        }
+        if (maxWeight > 0 && weigher == null) {
+            throw new IllegalArgumentException("A memory budget requires a weigher!");
+        }
+        this.eviction = eviction;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.entries = eviction == Cached.Eviction.LRU
+                ? new LinkedHashMap<Object, Entry<T>>(16, 0.75f, true)
+                : new HashMap<Object, Entry<T>>();
+    }
+
+    /**
+     * creates a cache configured by the passed annotation
+     *
+     * @param config - the annotation
+     */
+    public BoundedEntityCache(Cached config) {
+        this(config.eviction(), config.maxEntries(), config.ttlMillis());
+    }
+
+    @Override
+    public synchronized T get(Object key) {
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt != 0 && entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        entry.frequency++;
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(Object key, T item) {
+        long itemWeight = weigher != null ? weigher.weigh(item) : 0;
+        if (maxWeight > 0 && itemWeight > maxWeight) {
+            return; // would never fit
+        }
+
+        remove(key);
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        entries.put(key, new Entry<T>(item, expiresAt, itemWeight));
+        weight += itemWeight;
+
+        while (entries.size() > maxEntries || (maxWeight > 0 && weight > maxWeight)) {
+            evictOne(key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory consumption of all entries
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private void remove(Object key) {
+        Entry<T> old = entries.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    /**
+     * evicts one entry, never the one just added
+     *
+     * @param added - the key of the entry just added
+     */
+    private void evictOne(Object added) {
+        Iterator<Map.Entry<Object, Entry<T>>> it = entries.entrySet().iterator();
+        if (eviction == Cached.Eviction.LRU) {
+            // access ordered, the eldest entry is the least recently used one
+            Map.Entry<Object, Entry<T>> eldest = it.next();
+            weight -= eldest.getValue().weight;
+            it.remove();
+        } else {
+            Object victim = null;
+            int lowest = Integer.MAX_VALUE;
+            while (it.hasNext()) {
+                Map.Entry<Object, Entry<T>> candidate = it.next();
+                if (candidate.getValue().frequency < lowest && !candidate.getKey().equals(added)) {
+                    lowest = candidate.getValue().frequency;
+                    victim = candidate.getKey();
+                }
+            }
+            remove(victim);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.orm.Field;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of a projection query held in primitive column arrays instead of entities.
+ * Every projected field is stored in one array with one slot per row, so aggregations
+ * and charts over large result sets run without creating an object per row.
+ * <p/>
+ * String columns are dictionary encoded : every row holds an int code pointing into the
+ * dictionary of distinct values, which makes grouping by a string column a simple
+ * array lookup.
+ * <p/>
+ * NULL values are stored as 0 (or code -1 for strings), use isNull to tell them apart.
+ *
+ * @see Projection
+ */
+public final class ColumnarResult {
+
+    /**
+     * the storage type of a projected column
+     */
+    public enum ColumnType {
+        LONG, INT, DOUBLE, STRING
+    }
+
+    /**
+     * A dictionary encoded string column.
+     */
+    public static final class DictionaryColumn {
+        private final int[] codes;
+        private final String[] dictionary;
+
+        DictionaryColumn(int[] codes, String[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @return the dictionary code of every row, -1 for NULL
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        /**
+         * @return the distinct values of the column in order of their first appearance
+         */
+        public String[] getDictionary() {
+            return dictionary;
+        }
+
+        /**
+         * @param row - the row
+         * @return the decoded value of the row or null
+         */
+        public String get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+    }
+
+    private final int size;
+    private final Field[] fields;
+    private final ColumnType[] types;
+    private final Object[] columns;
+    private final long[][] nullMasks;
+
+    private ColumnarResult(int size, Field[] fields, ColumnType[] types) {
+        this.size = size;
+        this.fields = fields;
+        this.types = types;
+        this.columns = new Object[fields.length];
+        this.nullMasks = new long[fields.length][];
+    }
+
+    /**
+     * reads the whole cursor into column arrays. The projected fields must be the columns
+     * of the cursor in the same order.
+     *
+     * @param c      - the cursor, placed before the first row
+     * @param fields - the projected fields
+     * @param types  - the storage type of each field
+     * @return the result
+     */
+    static ColumnarResult read(Cursor c, Field[] fields, ColumnType[] types) {
+        int size = c.getCount();
+        ColumnarResult result = new ColumnarResult(size, fields, types);
+
+        int columnCount = fields.length;
+        long[][] longs = new long[columnCount][];
+        int[][] ints = new int[columnCount][];
+        double[][] doubles = new double[columnCount][];
+        int[][] codes = new int[columnCount][];
+        @SuppressWarnings("unchecked")
+        Map<String, Integer>[] dictionaries = new Map[columnCount];
+
+        for (int col = 0; col < columnCount; ++col) {
+            switch (types[col]) {
+                case LONG:
+                    longs[col] = new long[size];
+                    result.columns[col] = longs[col];
+                    break;
+                case INT:
+                    ints[col] = new int[size];
+                    result.columns[col] = ints[col];
+                    break;
+                case DOUBLE:
+                    doubles[col] = new double[size];
+                    result.columns[col] = doubles[col];
+                    break;
+                case STRING:
+                    codes[col] = new int[size];
+                    dictionaries[col] = new HashMap<String, Integer>();
+                    break;
+            }
+        }
+
+        int row = 0;
+        while (row < size && c.moveToNext()) {
+            for (int col = 0; col < columnCount; ++col) {
+                if (c.isNull(col)) {
+                    result.markNull(col, row);
+                    if (types[col] == ColumnType.STRING) {
+                        codes[col][row] = -1;
+                    }
+                    continue;
+                }
+                switch (types[col]) {
+                    case LONG:
+                        longs[col][row] = c.getLong(col);
+                        break;
+                    case INT:
+                        ints[col][row] = c.getInt(col);
+                        break;
+                    case DOUBLE:
+                        doubles[col][row] = c.getDouble(col);
+                        break;
+                    case STRING:
+                        String value = c.getString(col);
+                        Integer code = dictionaries[col].get(value);
+                        if (code == null) {
+                            code = dictionaries[col].size();
+                            dictionaries[col].put(value, code);
+                        }
+                        codes[col][row] = code;
+                        break;
+                }
+            }
+            row++;
+        }
+
+        for (int col = 0; col < columnCount; ++col) {
+            if (types[col] == ColumnType.STRING) {
+                String[] dictionary = new String[dictionaries[col].size()];
+                for (Map.Entry<String, Integer> entry : dictionaries[col].entrySet()) {
+                    dictionary[entry.getValue()] = entry.getKey();
+                }
+                result.columns[col] = new DictionaryColumn(codes[col], dictionary);
+            }
+        }
+        return result;
+    }
+
+    private void markNull(int col, int row) {
+        if (nullMasks[col] == null) {
+            nullMasks[col] = new long[(size + 63) >>> 6];
+        }
+        nullMasks[col][row >>> 6] |= 1L << (row & 63);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the projected fields in projection order
+     */
+    public Field[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * @param field - a projected field
+     * @param row   - the row
+     * @return true, if the field is NULL in the passed row
+     */
+    public boolean isNull(Field field, int row) {
+        long[] mask = nullMasks[indexOf(field)];
+        return mask != null && (mask[row >>> 6] & (1L << (row & 63))) != 0;
+    }
+
+    /**
+     * @param field - a field projected as long column
+     * @return the values of the column
+     */
+    public long[] getLongs(Field field) {
+        return (long[]) column(field, ColumnType.LONG);
+    }
+
+    /**
+     * @param field - a field projected as int column
+     * @return the values of the column
+     */
+    public int[] getInts(Field field) {
+        return (int[]) column(field, ColumnType.INT);
+    }
+
+    /**
+     * @param field - a field projected as double column
+     * @return the values of the column
+     */
+    public double[] getDoubles(Field field) {
+        return (double[]) column(field, ColumnType.DOUBLE);
+    }
+
+    /**
+     * @param field - a field projected as string column
+     * @return the dictionary encoded column
+     */
+    public DictionaryColumn getStrings(Field field) {
+        return (DictionaryColumn) column(field, ColumnType.STRING);
+    }
+
+    private Object column(Field field, ColumnType expected) {
+        int index = indexOf(field);
+        if (types[index] != expected) {
+            throw new IllegalArgumentException("Field " + field + " has been projected as " + types[index] + ", not as " + expected);
+        }
+        return columns[index];
+    }
+
+    private int indexOf(Field field) {
+        for (int i = 0; i < fields.length; ++i) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Field " + field + " is not part of the projection");
+    }
+}
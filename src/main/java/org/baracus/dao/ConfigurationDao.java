@@ -2,7 +2,9 @@ package org.baracus.dao;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
 import org.baracus.annotations.Bean;
+import org.baracus.annotations.Cached;
 import org.baracus.model.ConfigurationParameter;
 import org.baracus.orm.Field;
 import org.baracus.orm.FieldList;
@@ -22,9 +24,12 @@ import static org.baracus.orm.LegacyModelBase.idCol;
  * but in your app your service should take care of the type and return myCount as an integer
  * value
  *
+ * Configuration parameters are read over and over, so the DAO keeps them in a second level cache.
+ *
  * </pre>
  */
 @Bean
+@Cached(maxEntries = 256)
 public class ConfigurationDao extends BaseDao<ConfigurationParameter> {
 
     public ConfigurationDao() {
@@ -34,7 +39,7 @@ public class ConfigurationDao extends BaseDao<ConfigurationParameter> {
     /**
      * <pre>Row Mapper implementation for configuration parameter</pre>
      */
-    private RowMapper<ConfigurationParameter> rowMapper = new RowMapper<ConfigurationParameter>() {
+    private RowMapper<ConfigurationParameter> rowMapper = new StatementBindingRowMapper<ConfigurationParameter>() {
 
         @Override
         public ConfigurationParameter from(Cursor c) {
@@ -74,6 +79,20 @@ public class ConfigurationDao extends BaseDao<ConfigurationParameter> {
             }
             return result;
         }
+
+        @Override
+        public void bindValues(SQLiteProgram statement, int firstIndex, ConfigurationParameter parm) {
+            bindString(statement, firstIndex, parm.getConfigParameter());
+            bindString(statement, firstIndex + 1, parm.getConfigParameterValue());
+        }
+
+        private void bindString(SQLiteProgram statement, int index, String value) {
+            if (value != null) {
+                statement.bindString(index, value);
+            } else {
+                statement.bindNull(index);
+            }
+        }
     };
 
 
@@ -0,0 +1,108 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.orm.AbstractModelBase;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming result of a DAO query. Rows are mapped one by one while iterating instead of
+ * being collected in a list, so the heap usage does not grow with the size of the result set.
+ * <p/>
+ * The underlying cursor is closed automatically when the last row has been read. If You stop
+ * iterating before, You must close the stream by Yourself :
+ * <p/>
+ * <pre>
+ * {@code
+ * CursorStream<Customer> customers = customerDao.stream("city = ?", "Hamburg");
+ * try {
+ *     for (Customer customer : customers) {
+ *         ...
+ *     }
+ * } finally {
+ *     customers.close();
+ * }
+ * }
+ * </pre>
+ * A stream can be iterated only once.
+ *
+ * @param <T> the model type
+ */
+public class CursorStream<T extends AbstractModelBase> implements Iterable<T>, Iterator<T>, Closeable {
+
+    private final BaseDao<T> dao;
+    private final Cursor cursor;
+
+    private boolean positioned = false;
+    private boolean iterated = false;
+    private boolean closed = false;
+
+    /**
+     * @param dao    - the dao mapping the rows
+     * @param cursor - the cursor to stream, must be placed before the first row
+     */
+    CursorStream(BaseDao<T> dao, Cursor cursor) {
+        this.dao = dao;
+        this.cursor = cursor;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("A CursorStream can be iterated only once!");
+        }
+        iterated = true;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!positioned) {
+            if (cursor.moveToNext()) {
+                positioned = true;
+            } else {
+                close();
+            }
+        }
+        return positioned;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        positioned = false;
+        return dao.mapRow(cursor);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("A CursorStream is read only!");
+    }
+
+    /**
+     * @return the number of rows of the underlying cursor
+     */
+    public int getCount() {
+        return closed ? 0 : cursor.getCount();
+    }
+
+    /**
+     * closes the underlying cursor. Calling close more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (!cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+}
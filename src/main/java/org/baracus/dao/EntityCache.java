@@ -0,0 +1,40 @@
+package org.baracus.dao;
+
+import org.baracus.orm.AbstractModelBase;
+
+/**
+ * Second level entity cache of a DAO. The keys are the ids (Long) and - if the rowmapper
+ * defines a name field - the names (String) of the entities.
+ * <p/>
+ * Implementations must be thread safe. The DAO synchronizes on the cache when it puts a
+ * loaded entity or clears the cache, so that a stale row read during an invalidation is never
+ * cached.
+ * <p/>
+ * The cache hands out the cached instance itself, so all callers share it. Never modify a cached
+ * entity without saving it, otherwise the unsaved changes are visible to every other reader.
+ *
+ * @param <T> the model type
+ * @see org.baracus.annotations.Cached
+ * @see BoundedEntityCache
+ */
+public interface EntityCache<T extends AbstractModelBase> {
+
+    /**
+     * @param key - the key
+     * @return the cached entity or null
+     */
+    T get(Object key);
+
+    /**
+     * caches the entity
+     *
+     * @param key  - the key
+     * @param item - the entity
+     */
+    void put(Object key, T item);
+
+    /**
+     * removes all entries
+     */
+    void clear();
+}
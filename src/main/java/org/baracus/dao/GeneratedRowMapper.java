@@ -0,0 +1,182 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+import org.baracus.orm.AbstractModelBase;
+import org.baracus.orm.Field;
+import org.baracus.orm.FieldList;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Base class of the RowMappers generated by the baracus-processor out of
+ * {@link org.baracus.annotations.Table} annotated model beans. Do not extend this class
+ * by hand, write a {@link BaseDao.StatementBindingRowMapper} instead.
+ * <p/>
+ * The generated mappers read every column by its field index and bind it at its position
+ * in the precompiled statements. Both are computed once when the mapper class is loaded.
+ *
+ * @param <T> the model type
+ */
+public abstract class GeneratedRowMapper<T extends AbstractModelBase> implements BaseDao.StatementBindingRowMapper<T> {
+
+    private final String table;
+    private final FieldList fieldList;
+    private final Field nameField;
+
+    /**
+     * @param table     - the table name
+     * @param fieldList - the field list of the model bean
+     * @param nameField - the unique name field or null
+     */
+    protected GeneratedRowMapper(String table, FieldList fieldList, Field nameField) {
+        this.table = table;
+        this.fieldList = fieldList;
+        this.nameField = nameField;
+    }
+
+    @Override
+    public String getAffectedTable() {
+        return table;
+    }
+
+    @Override
+    public FieldList getFieldList() {
+        return fieldList;
+    }
+
+    @Override
+    public Field getNameField() {
+        return nameField;
+    }
+
+    /**
+     * computes the 0-based position of a field in the bound column list, which is the order of
+     * the field list without the id field, @see StatementBindingRowMapper.bindValues
+     *
+     * @param fieldList - the field list
+     * @param idField   - the id field
+     * @param field     - the field
+     * @return the position of the field
+     */
+    protected static int bindPosition(FieldList fieldList, Field idField, Field field) {
+        int position = 0;
+        for (Field f : fieldList.getFields()) {
+            if (f.equals(field)) {
+                return position;
+            }
+            if (!f.equals(idField)) {
+                position++;
+            }
+        }
+        throw new IllegalStateException("Field " + field + " is not part of the field list");
+    }
+
+    /**
+     * ensures, that every field of the field list except the id is mapped. Otherwise the unmapped
+     * columns would be overwritten with NULL on every update.
+     *
+     * @param fieldList - the field list
+     * @param idField   - the id field
+     * @param mapped    - the mapped fields
+     */
+    protected static void checkMapped(FieldList fieldList, Field idField, Field... mapped) {
+        List<Field> fields = fieldList.getFields();
+        for (Field f : fields) {
+            if (f.equals(idField)) {
+                continue;
+            }
+            boolean found = false;
+            for (Field m : mapped) {
+                if (f.equals(m)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                throw new IllegalStateException("Field " + f + " is not mapped by a @Column annotation");
+            }
+        }
+    }
+
+    protected static Long getLongObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Long.valueOf(c.getLong(index));
+    }
+
+    protected static Integer getIntObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Integer.valueOf(c.getInt(index));
+    }
+
+    protected static Short getShortObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Short.valueOf(c.getShort(index));
+    }
+
+    protected static Double getDoubleObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Double.valueOf(c.getDouble(index));
+    }
+
+    protected static Float getFloatObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Float.valueOf(c.getFloat(index));
+    }
+
+    protected static boolean getBoolean(Cursor c, int index) {
+        return c.getInt(index) != 0;
+    }
+
+    protected static Boolean getBooleanObject(Cursor c, int index) {
+        return c.isNull(index) ? null : Boolean.valueOf(c.getInt(index) != 0);
+    }
+
+    protected static Date getDate(Cursor c, int index) {
+        return c.isNull(index) ? null : new Date(c.getLong(index));
+    }
+
+    protected static void bindString(SQLiteProgram statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    protected static void bindLong(SQLiteProgram statement, int index, Number value) {
+        if (value != null) {
+            statement.bindLong(index, value.longValue());
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    protected static void bindDouble(SQLiteProgram statement, int index, Number value) {
+        if (value != null) {
+            statement.bindDouble(index, value.doubleValue());
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    protected static void bindBoolean(SQLiteProgram statement, int index, Boolean value) {
+        if (value != null) {
+            statement.bindLong(index, value ? 1 : 0);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    protected static void bindDate(SQLiteProgram statement, int index, Date value) {
+        if (value != null) {
+            statement.bindLong(index, value.getTime());
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    protected static void bindBlob(SQLiteProgram statement, int index, byte[] value) {
+        if (value != null) {
+            statement.bindBlob(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.orm.AbstractModelBase;
+import org.baracus.orm.Field;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keyset pager walking through a table page by page. Other than LIMIT/OFFSET paging, every
+ * page is fetched by seeking behind the last key of the previous page, so fetching page n
+ * costs the same as fetching the first page and a complete walk through a table runs in
+ * constant memory.
+ * <p/>
+ * The rows are ordered by the order field and the id. If the order field is not unique, the id
+ * is used as tie breaker, so no row is skipped or returned twice. Rows carrying a NULL value in
+ * the order field are skipped, because SQLite sorts NULL before any other value and no key can
+ * seek behind it. Page through the id to visit every row. Make sure the order field is indexed, otherwise
+ * SQLite has to sort the table for every page.
+ * <p/>
+ * Example :
+ * <pre>
+ * {@code
+ * Pager<Customer> pager = customerDao.pager(Customer.nameCol, 100);
+ * while (pager.hasNext()) {
+ *     for (Customer customer : pager.next()) {
+ *         ...
+ *     }
+ * }
+ * }
+ * </pre>
+ *
+ * @param <T> the model type
+ */
+public class Pager<T extends AbstractModelBase> {
+
+    private final BaseDao<T> dao;
+    private final Field orderField;
+    private final int pageSize;
+    private final boolean orderedById;
+
+    private String lastKey = null;
+    private Long lastId = null;
+    private boolean exhausted = false;
+
+    /**
+     * @param dao        - the dao to page through
+     * @param orderField - the field to order by
+     * @param pageSize   - the maximum number of items per page
+     */
+    Pager(BaseDao<T> dao, Field orderField, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than zero!");
+        }
+        this.dao = dao;
+        this.orderField = orderField;
+        this.pageSize = pageSize;
+        this.orderedById = orderField.equals(dao.getIdField());
+    }
+
+    /**
+     * @return true, if there may be another page. A page smaller than the page size marks the end.
+     */
+    public boolean hasNext() {
+        return !exhausted;
+    }
+
+    /**
+     * fetches the next page.
+     *
+     * @return the items of the next page, an empty list if there are no more items
+     */
+    public List<T> next() {
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+
+        Cursor c = dao.queryPage(orderField, lastKey, orderedById ? null : lastId, pageSize);
+        BatchFetchScope scope = BatchFetchScope.open();
+        try {
+            List<T> result = new ArrayList<T>(c.getCount());
+            int idIndex = dao.getIdField().fieldIndex;
+            while (c.moveToNext()) {
+                result.add(dao.mapRow(c));
+                if (c.isLast()) {
+                    lastId = c.getLong(idIndex);
+                    lastKey = c.getString(orderField.fieldIndex);
+                }
+            }
+            exhausted = result.size() < pageSize;
+            return result;
+        } finally {
+            scope.close();
+            c.close();
+        }
+    }
+
+    /**
+     * rewinds the pager to the first page
+     */
+    public void reset() {
+        lastKey = null;
+        lastId = null;
+        exhausted = false;
+    }
+}
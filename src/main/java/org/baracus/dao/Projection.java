@@ -0,0 +1,154 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.orm.Field;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Projection query selecting only some columns of a table into a {@link ColumnarResult}.
+ * No entities are created, the values are copied straight from the cursor into primitive
+ * arrays, so even hundreds of thousands of rows can be aggregated without GC churn.
+ * <p/>
+ * Example :
+ * <pre>
+ * {@code
+ * ColumnarResult result = orderDao.projection()
+ *         .longs(Order.createdCol)
+ *         .doubles(Order.amountCol)
+ *         .strings(Order.countryCol)
+ *         .where(Order.amountCol + " > ?", "0")
+ *         .orderBy(Order.createdCol)
+ *         .fetch();
+ *
+ * double[] amounts = result.getDoubles(Order.amountCol);
+ * int[] countries = result.getStrings(Order.countryCol).getCodes();
+ * ...
+ * }
+ * </pre>
+ */
+public class Projection {
+
+    private final BaseDao<?> dao;
+    private final List<Field> fields = new ArrayList<Field>();
+    private final List<ColumnarResult.ColumnType> types = new ArrayList<ColumnarResult.ColumnType>();
+
+    private String selection;
+    private String[] selectionArgs;
+    private String orderBy;
+
+    /**
+     * @param dao - the dao to query
+     */
+    Projection(BaseDao<?> dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * projects the field into a long[] column
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Projection longs(Field field) {
+        return add(field, ColumnarResult.ColumnType.LONG);
+    }
+
+    /**
+     * projects the field into an int[] column
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Projection ints(Field field) {
+        return add(field, ColumnarResult.ColumnType.INT);
+    }
+
+    /**
+     * projects the field into a double[] column
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Projection doubles(Field field) {
+        return add(field, ColumnarResult.ColumnType.DOUBLE);
+    }
+
+    /**
+     * projects the field into a dictionary encoded string column
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Projection strings(Field field) {
+        return add(field, ColumnarResult.ColumnType.STRING);
+    }
+
+    /**
+     * restricts the projected rows
+     *
+     * @param selection     - the where clause
+     * @param selectionArgs - the arguments of the where clause
+     * @return this
+     */
+    public Projection where(String selection, String... selectionArgs) {
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        return this;
+    }
+
+    /**
+     * orders the projected rows ascending by the passed field
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Projection orderBy(Field field) {
+        this.orderBy = field.fieldName;
+        return this;
+    }
+
+    /**
+     * orders the projected rows by the passed clause, e.g. "amount DESC"
+     *
+     * @param orderBy - the order by clause
+     * @return this
+     */
+    public Projection orderBy(String orderBy) {
+        this.orderBy = orderBy;
+        return this;
+    }
+
+    /**
+     * runs the query and reads all rows into columns
+     *
+     * @return the columnar result
+     */
+    public ColumnarResult fetch() {
+        if (fields.isEmpty()) {
+            throw new IllegalStateException("Nothing to project, add at least one field!");
+        }
+        Field[] projected = fields.toArray(new Field[fields.size()]);
+        String[] columns = new String[projected.length];
+        for (int i = 0; i < projected.length; ++i) {
+            columns[i] = projected[i].fieldName;
+        }
+
+        Cursor c = dao.queryColumns(columns, selection, selectionArgs, orderBy);
+        try {
+            return ColumnarResult.read(c, projected, types.toArray(new ColumnarResult.ColumnType[types.size()]));
+        } finally {
+            c.close();
+        }
+    }
+
+    private Projection add(Field field, ColumnarResult.ColumnType type) {
+        if (fields.contains(field)) {
+            throw new IllegalArgumentException("Field " + field + " is already projected");
+        }
+        fields.add(field);
+        types.add(type);
+        return this;
+    }
+}
@@ -0,0 +1,388 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import org.baracus.orm.AbstractModelBase;
+import org.baracus.orm.Field;
+
+import java.util.*;
+
+/**
+ * Type safe query builder based on the Fields of a model bean. All conditions are combined
+ * with AND.
+ * <p/>
+ * Example :
+ * <pre>
+ * {@code
+ * List<Customer> customers = customerDao.select()
+ *         .eq(Customer.cityCol, "Hamburg")
+ *         .between(Customer.ageCol, 18, 65)
+ *         .like(Customer.nameCol, "M%")
+ *         .orderBy(Customer.nameCol, true)
+ *         .limit(100)
+ *         .list();
+ * }
+ * </pre>
+ * <p/>
+ * Every query renders to a canonical SQL text, which only depends on the shape of the query
+ * (the fields, operators and the number of IN values) but not on the values. The SQL of a
+ * shape is built once and cached, so SQLite's prepared statement cache can reuse the compiled
+ * statement for all queries of the same shape. To keep the number of shapes small, IN lists
+ * are padded to the next power of two by repeating the last value.
+ * <p/>
+ * The values are bound with their type (long, double, string, blob) instead of being
+ * converted to strings. Booleans are bound as 1 and 0, Dates as milliseconds.
+ *
+ * @param <T> the model type
+ */
+public class Query<T extends AbstractModelBase> {
+
+    private static final int MAX_SHAPES = 256;
+
+    private static final Map<String, String> shapes = new LinkedHashMap<String, String>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SHAPES;
+        }
+    };
+
+    private static final String EQ = "=";
+    private static final String IS_NULL = "N";
+    private static final String LIKE = "L";
+    private static final String BETWEEN = "B";
+    private static final String IN = "I";
+
+    /**
+     * a single condition
+     */
+    private static final class Predicate {
+        private final Field field;
+        private final String op;
+        private final Object[] values;
+
+        private Predicate(Field field, String op, Object... values) {
+            this.field = field;
+            this.op = op;
+            this.values = values;
+        }
+    }
+
+    private final BaseDao<T> dao;
+    private final List<Predicate> predicates = new ArrayList<Predicate>();
+    private final List<Field> orderFields = new ArrayList<Field>(2);
+    private final List<Boolean> orderDescending = new ArrayList<Boolean>(2);
+    private Integer limit;
+    private boolean distinct = false;
+
+    /**
+     * @param dao - the dao to query
+     */
+    Query(BaseDao<T> dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * field = value. A null value is rendered as IS NULL.
+     *
+     * @param field - the field
+     * @param value - the value
+     * @return this
+     */
+    public Query<T> eq(Field field, Object value) {
+        predicates.add(value != null ? new Predicate(field, EQ, value) : new Predicate(field, IS_NULL));
+        return this;
+    }
+
+    /**
+     * field LIKE pattern
+     *
+     * @param field   - the field
+     * @param pattern - the pattern, use % and _ as wildcards
+     * @return this
+     */
+    public Query<T> like(Field field, String pattern) {
+        predicates.add(new Predicate(field, LIKE, pattern));
+        return this;
+    }
+
+    /**
+     * field BETWEEN from AND to, both bounds inclusive
+     *
+     * @param field - the field
+     * @param from  - the lower bound
+     * @param to    - the upper bound
+     * @return this
+     */
+    public Query<T> between(Field field, Object from, Object to) {
+        predicates.add(new Predicate(field, BETWEEN, from, to));
+        return this;
+    }
+
+    /**
+     * field IN (values)
+     *
+     * @param field  - the field
+     * @param values - the values
+     * @return this
+     */
+    public Query<T> in(Field field, Collection<?> values) {
+        predicates.add(new Predicate(field, IN, values.toArray()));
+        return this;
+    }
+
+    /**
+     * field IN (values)
+     *
+     * @param field  - the field
+     * @param values - the values
+     * @return this
+     */
+    public Query<T> in(Field field, Object... values) {
+        predicates.add(new Predicate(field, IN, values.clone()));
+        return this;
+    }
+
+    /**
+     * adds an ascending order field
+     *
+     * @param field - the field
+     * @return this
+     */
+    public Query<T> orderBy(Field field) {
+        return orderBy(field, false);
+    }
+
+    /**
+     * adds an order field
+     *
+     * @param field      - the field
+     * @param descending - true for descending order
+     * @return this
+     */
+    public Query<T> orderBy(Field field, boolean descending) {
+        orderFields.add(field);
+        orderDescending.add(descending);
+        return this;
+    }
+
+    /**
+     * removes duplicate rows from the result (SELECT DISTINCT)
+     *
+     * @return this
+     */
+    public Query<T> distinct() {
+        this.distinct = true;
+        return this;
+    }
+
+    /**
+     * @param limit - the maximum number of rows
+     * @return this
+     */
+    public Query<T> limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return all matching entities
+     */
+    public List<T> list() {
+        Cursor c = cursor();
+        try {
+            return dao.iterateCursor(c);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the first matching entity or null
+     */
+    public T first() {
+        Integer previousLimit = limit;
+        limit = 1;
+        try {
+            List<T> result = list();
+            return result.isEmpty() ? null : result.get(0);
+        } finally {
+            limit = previousLimit;
+        }
+    }
+
+    /**
+     * @return a stream of all matching entities, @see BaseDao.stream
+     */
+    public CursorStream<T> stream() {
+        return new CursorStream<T>(dao, cursor());
+    }
+
+    /**
+     * @return the canonical SQL of this query
+     */
+    public String toSql() {
+        String shape = shape();
+        synchronized (shapes) {
+            String sql = shapes.get(shape);
+            if (sql == null) {
+                sql = render();
+                shapes.put(shape, sql);
+            }
+            return sql;
+        }
+    }
+
+    /**
+     * runs the query. The cursor must be closed by the caller.
+     *
+     * @return the cursor
+     */
+    Cursor cursor() {
+        BaseDao.RowMapper<T> rowMapper = dao.getRowMapper();
+        return dao.getDb().rawQueryWithFactory(new TypedCursorFactory(arguments()), toSql(), null, rowMapper.getAffectedTable());
+    }
+
+    /**
+     * @return the key of the query shape
+     */
+    private String shape() {
+        StringBuilder sb = new StringBuilder(64).append(dao.getRowMapper().getAffectedTable());
+        if (distinct) {
+            sb.append('!');
+        }
+        for (Predicate p : predicates) {
+            sb.append('|').append(p.field.fieldName).append(p.op);
+            if (IN.equals(p.op)) {
+                sb.append(paddedSize(p.values.length));
+            }
+        }
+        for (int i = 0; i < orderFields.size(); ++i) {
+            sb.append('^').append(orderFields.get(i).fieldName).append(orderDescending.get(i) ? '-' : '+');
+        }
+        if (limit != null) {
+            sb.append('#');
+        }
+        return sb.toString();
+    }
+
+    private String render() {
+        BaseDao.RowMapper<T> rowMapper = dao.getRowMapper();
+        StringBuilder sql = new StringBuilder(128).append(distinct ? "SELECT DISTINCT " : "SELECT ")
+                .append(rowMapper.getFieldList().getFieldNamesAsString())
+                .append(" FROM ").append(rowMapper.getAffectedTable());
+
+        for (int i = 0; i < predicates.size(); ++i) {
+            Predicate p = predicates.get(i);
+            sql.append(i == 0 ? " WHERE " : " AND ").append(p.field.fieldName);
+            if (EQ.equals(p.op)) {
+                sql.append(" = ?");
+            } else if (IS_NULL.equals(p.op)) {
+                sql.append(" IS NULL");
+            } else if (LIKE.equals(p.op)) {
+                sql.append(" LIKE ?");
+            } else if (BETWEEN.equals(p.op)) {
+                sql.append(" BETWEEN ? AND ?");
+            } else {
+                sql.append(" IN (");
+                int size = paddedSize(p.values.length);
+                for (int k = 0; k < size; ++k) {
+                    sql.append(k == 0 ? "?" : ",?");
+                }
+                sql.append(')');
+            }
+        }
+
+        for (int i = 0; i < orderFields.size(); ++i) {
+            sql.append(i == 0 ? " ORDER BY " : ", ")
+                    .append(orderFields.get(i).fieldName)
+                    .append(orderDescending.get(i) ? " DESC" : " ASC");
+        }
+
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return the bind values in parameter order
+     */
+    private Object[] arguments() {
+        List<Object> result = new ArrayList<Object>();
+        for (Predicate p : predicates) {
+            if (IN.equals(p.op)) {
+                int size = paddedSize(p.values.length);
+                for (int k = 0; k < size; ++k) {
+                    result.add(p.values[Math.min(k, p.values.length - 1)]);
+                }
+            } else {
+                Collections.addAll(result, p.values);
+            }
+        }
+        if (limit != null) {
+            result.add(limit);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * @return the next power of two, but not more than the number of host parameters SQLite accepts
+     */
+    static int paddedSize(int size) {
+        if (size <= 1) {
+            return size;
+        }
+        int padded = Integer.highestOneBit(size - 1) << 1;
+        return padded > StatementCache.MAX_VARIABLES ? size : padded;
+    }
+
+    /**
+     * binds a value with its type
+     *
+     * @param program - the statement or query
+     * @param index   - the 1-based parameter index
+     * @param value   - the value
+     */
+    static void bindValue(SQLiteProgram program, int index, Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof String) {
+            program.bindString(index, (String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            program.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Date) {
+            program.bindLong(index, ((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else {
+            program.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Cursor factory binding the typed arguments to the query right before it is executed.
+     */
+    private static final class TypedCursorFactory implements SQLiteDatabase.CursorFactory {
+        private final Object[] args;
+
+        private TypedCursorFactory(Object[] args) {
+            this.args = args;
+        }
+
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            for (int i = 0; i < args.length; ++i) {
+                bindValue(query, i + 1, args[i]);
+            }
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    }
+}
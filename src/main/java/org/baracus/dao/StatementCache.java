@@ -0,0 +1,249 @@
+package org.baracus.dao;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import org.baracus.orm.Field;
+import org.baracus.orm.FieldList;
+import org.baracus.util.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-table cache of precompiled insert, update-by-id and delete-by-id statements.
+ * <p/>
+ * Compiling a statement is the expensive part of a write in SQLite, so the DAO layer
+ * compiles each statement once per table and reuses it for every row. Statements are
+ * bound to the database handle they were compiled on, so the cache is invalidated
+ * when the application context is destroyed.
+ * <p/>
+ * The column order of all statements is the order of the entity's field list, leaving
+ * out the id column. The id is always bound as the last parameter of the update and as the
+ * only parameter of the delete statement.
+ */
+public final class StatementCache {
+
+    private static final Logger logger = new Logger(StatementCache.class);
+
+    private static final Map<String, TableStatements> cache = new HashMap<String, TableStatements>();
+
+    /**
+     * the maximum number of host parameters in a single statement (SQLITE_MAX_VARIABLE_NUMBER)
+     */
+    static final int MAX_VARIABLES = 999;
+
+    /**
+     * the maximum number of rows in a compound select (SQLITE_MAX_COMPOUND_SELECT)
+     */
+    static final int MAX_COMPOUND_ROWS = 500;
+
+    private StatementCache() {
+        // Utility class constructor
+    }
+
+    /**
+     * The compiled statements of one table. Statements are compiled on first use.
+     * A statement instance must not be bound and executed by two threads at once, so
+     * synchronize on the statement while binding and executing it.
+     */
+    static final class TableStatements {
+        private final SQLiteDatabase db;
+        private final String table;
+        private final Field idField;
+        private final List<Field> columns;
+
+        private SQLiteStatement insert;
+        private SQLiteStatement update;
+        private SQLiteStatement delete;
+        private SQLiteStatement bulkInsert;
+
+        private TableStatements(SQLiteDatabase db, String table, Field idField, FieldList fieldList) {
+            this.db = db;
+            this.table = table;
+            this.idField = idField;
+            this.columns = new ArrayList<Field>();
+            for (Field f : fieldList.getFields()) {
+                if (!f.equals(idField)) {
+                    columns.add(f);
+                }
+            }
+        }
+
+        /**
+         * @return the number of bound columns, which is the number of fields without the id column
+         */
+        int getColumnCount() {
+            return columns.size();
+        }
+
+        /**
+         * @return INSERT INTO table (a,b,..) VALUES (?,?,..)
+         */
+        synchronized SQLiteStatement getInsert() {
+            if (insert == null && columns.isEmpty()) {
+                insert = compile("INSERT INTO " + table + " DEFAULT VALUES");
+            } else if (insert == null) {
+                StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+                StringBuilder params = new StringBuilder();
+                for (int i = 0; i < columns.size(); ++i) {
+                    if (i > 0) {
+                        sql.append(',');
+                        params.append(',');
+                    }
+                    sql.append(columns.get(i).fieldName);
+                    params.append('?');
+                }
+                sql.append(") VALUES (").append(params).append(')');
+                insert = compile(sql.toString());
+            }
+            return insert;
+        }
+
+        /**
+         * @return the number of rows fitting into one bulk insert statement
+         */
+        int getBulkInsertRows() {
+            return columns.isEmpty() ? 1 : Math.max(1, Math.min(MAX_COMPOUND_ROWS, MAX_VARIABLES / columns.size()));
+        }
+
+        /**
+         * returns a statement inserting the passed number of rows at once. The rows are written as
+         * a compound select, because multi-row VALUES clauses are not supported by the SQLite versions
+         * of older devices. Only the statement for a full batch (getBulkInsertRows()) is cached, all
+         * other statements must be handed back using release().
+         *
+         * @param rows - the number of rows
+         * @return INSERT INTO table (a,b,..) SELECT ?,?,.. UNION ALL SELECT ?,?,..
+         */
+        synchronized SQLiteStatement getBulkInsert(int rows) {
+            boolean cacheable = rows == getBulkInsertRows();
+            if (cacheable && bulkInsert != null) {
+                return bulkInsert;
+            }
+
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            StringBuilder row = new StringBuilder("SELECT ");
+            for (int i = 0; i < columns.size(); ++i) {
+                if (i > 0) {
+                    sql.append(',');
+                    row.append(',');
+                }
+                sql.append(columns.get(i).fieldName);
+                row.append('?');
+            }
+            sql.append(") ");
+            for (int i = 0; i < rows; ++i) {
+                if (i > 0) {
+                    sql.append(" UNION ALL ");
+                }
+                sql.append(row);
+            }
+
+            SQLiteStatement result = compile(sql.toString());
+            if (cacheable) {
+                bulkInsert = result;
+            }
+            return result;
+        }
+
+        /**
+         * hands back a statement taken from getBulkInsert(). Uncached statements are closed.
+         *
+         * @param statement - the statement
+         */
+        synchronized void release(SQLiteStatement statement) {
+            if (statement != bulkInsert) {
+                closeQuietly(statement);
+            }
+        }
+
+        /**
+         * @return UPDATE table SET a = ?, b = ? .. WHERE id = ?
+         */
+        synchronized SQLiteStatement getUpdate() {
+            if (update == null) {
+                StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+                for (int i = 0; i < columns.size(); ++i) {
+                    if (i > 0) {
+                        sql.append(", ");
+                    }
+                    sql.append(columns.get(i).fieldName).append(" = ?");
+                }
+                sql.append(" WHERE ").append(idField.fieldName).append(" = ?");
+                update = compile(sql.toString());
+            }
+            return update;
+        }
+
+        /**
+         * @return DELETE FROM table WHERE id = ?
+         */
+        synchronized SQLiteStatement getDelete() {
+            if (delete == null) {
+                delete = compile("DELETE FROM " + table + " WHERE " + idField.fieldName + " = ?");
+            }
+            return delete;
+        }
+
+        private SQLiteStatement compile(String sql) {
+            logger.debug("compiling statement $1", sql);
+            return db.compileStatement(sql);
+        }
+
+        private synchronized void close() {
+            closeQuietly(insert);
+            closeQuietly(update);
+            closeQuietly(delete);
+            closeQuietly(bulkInsert);
+            bulkInsert = null;
+            insert = null;
+            update = null;
+            delete = null;
+        }
+
+        private static void closeQuietly(SQLiteStatement statement) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (Exception e) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * returns the statements of the passed table. If the table has not been seen yet or
+     * if the database handle has changed, the statements are (re)created.
+     *
+     * @param db        - the database handle
+     * @param table     - the table name
+     * @param idField   - the id field of the table
+     * @param fieldList - the field list of the entity
+     * @return the statements of the table
+     */
+    static synchronized TableStatements get(SQLiteDatabase db, String table, Field idField, FieldList fieldList) {
+        TableStatements result = cache.get(table);
+        if (result == null || result.db != db) {
+            if (result != null) {
+                result.close();
+            }
+            result = new TableStatements(db, table, idField, fieldList);
+            cache.put(table, result);
+        }
+        return result;
+    }
+
+    /**
+     * closes all cached statements and clears the cache. Called when the application context
+     * is destroyed, because the statements are bound to the closed database handle.
+     */
+    public static synchronized void invalidate() {
+        for (TableStatements statements : cache.values()) {
+            statements.close();
+        }
+        cache.clear();
+    }
+}
@@ -0,0 +1,205 @@
+package org.baracus.dao;
+
+import org.baracus.orm.AbstractModelBase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * First level cache (identity map) for entities loaded by DAOs. While a unit of work is open,
+ * every entity is loaded only once per thread : getById, getUniqueByField and all list queries
+ * return the instance already known to the unit of work instead of mapping a new copy of the
+ * same row. This keeps object graphs free of duplicates, e.g. when many lazy references point
+ * to the same entity.
+ * <p/>
+ * A unit of work is bound to the current thread. Open it explicitly :
+ * <pre>
+ * {@code
+ * UnitOfWork uow = UnitOfWork.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     uow.close();
+ * }
+ * }
+ * </pre>
+ * or call setTransactionScoped(true) once to have every transaction obtained via
+ * BaseDao.getTransaction() run in its own unit of work, which is closed on commit or rollback.
+ * Nested begin() calls on the same thread join the running unit of work.
+ */
+public final class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<UnitOfWork>();
+
+    private static volatile boolean transactionScoped = false;
+
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final Map<Class<?>, Map<Long, AbstractModelBase>> entities = new HashMap<Class<?>, Map<Long, AbstractModelBase>>();
+
+    private int depth = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * opens a unit of work on the current thread or joins the running one.
+     *
+     * @return the unit of work. close it when You are done.
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork uow = current.get();
+        if (uow == null) {
+            uow = new UnitOfWork();
+            current.set(uow);
+        }
+        uow.depth++;
+        return uow;
+    }
+
+    /**
+     * opens the unit of work of a transaction, if transactions are run in a unit of work.
+     * Nested transactions join the running unit of work.
+     *
+     * @return the unit of work or null. close it when the transaction ends.
+     */
+    static UnitOfWork beginTransaction() {
+        return transactionScoped ? begin() : null;
+    }
+
+    /**
+     * @return the unit of work running on the current thread or null
+     */
+    public static UnitOfWork current() {
+        return current.get();
+    }
+
+    /**
+     * @param scoped - if true, every transaction started by a DAO runs in a unit of work
+     */
+    public static void setTransactionScoped(boolean scoped) {
+        transactionScoped = scoped;
+    }
+
+    /**
+     * @return true, if transactions are run in a unit of work
+     */
+    public static boolean isTransactionScoped() {
+        return transactionScoped;
+    }
+
+    /**
+     * leaves the unit of work. When the outermost begin() is closed, all known entities are
+     * dropped and the thread is unbound.
+     */
+    public void close() {
+        if (depth > 0 && --depth == 0) {
+            entities.clear();
+            if (current.get() == this) {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * @param clazz - the managed class
+     * @param id    - the id
+     * @param <T>   - the model type
+     * @return the known instance or null. Counts a hit or a miss.
+     */
+    <T extends AbstractModelBase> T get(Class<T> clazz, Long id) {
+        T result = getIfKnown(clazz, id);
+        if (result == null) {
+            misses++;
+            totalMisses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @param clazz - the managed class
+     * @param id    - the id
+     * @param <T>   - the model type
+     * @return the known instance or null. Counts hits only, the miss is counted when the row is mapped.
+     */
+    <T extends AbstractModelBase> T getIfKnown(Class<T> clazz, Long id) {
+        Map<Long, AbstractModelBase> byId = entities.get(clazz);
+        AbstractModelBase result = byId != null ? byId.get(id) : null;
+        if (result != null) {
+            hits++;
+            totalHits.incrementAndGet();
+        }
+        return clazz.cast(result);
+    }
+
+    /**
+     * registers the instance for the passed class and id. An instance already known
+     * for that id is replaced.
+     *
+     * @param clazz    - the managed class
+     * @param id       - the id
+     * @param instance - the instance
+     */
+    void put(Class<?> clazz, Long id, AbstractModelBase instance) {
+        Map<Long, AbstractModelBase> byId = entities.get(clazz);
+        if (byId == null) {
+            byId = new HashMap<Long, AbstractModelBase>();
+            entities.put(clazz, byId);
+        }
+        byId.put(id, instance);
+    }
+
+    /**
+     * forgets the instance with the passed id
+     *
+     * @param clazz - the managed class
+     * @param id    - the id
+     */
+    void remove(Class<?> clazz, Long id) {
+        Map<Long, AbstractModelBase> byId = entities.get(clazz);
+        if (byId != null) {
+            byId.remove(id);
+        }
+    }
+
+    /**
+     * forgets all instances of the passed class
+     *
+     * @param clazz - the managed class
+     */
+    void evict(Class<?> clazz) {
+        entities.remove(clazz);
+    }
+
+    /**
+     * @return the number of lookups answered by this unit of work
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which had to be loaded from the database
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of hits of all units of work since application start
+     */
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    /**
+     * @return the number of misses of all units of work since application start
+     */
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+}
@@ -0,0 +1,16 @@
+package org.baracus.lifecycle;
+
+/**
+ * Implement this interface, if instances of Your prototype bean shall be pooled.
+ * The bean is reset when it is released to the pool, afterwards it must behave
+ * like a newly created instance.
+ *
+ * @see org.baracus.annotations.Bean#poolSize()
+ */
+public interface Resettable {
+
+    /**
+     * Lifecycle callback called before the bean is returned to its pool
+     */
+    public void reset();
+}
@@ -0,0 +1,69 @@
+package org.baracus.signalling;
+
+import org.baracus.orm.AbstractModelBase;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The coalesced changes of one entity type, delivered to ChangeSetAwareComponents.
+ * An id is reported in one set only : a row inserted and updated within the same batch
+ * is reported as inserted, a row deleted within the batch is only reported as deleted.
+ */
+public final class ChangeSet {
+
+    private final Class<? extends AbstractModelBase> entityClass;
+    private final Set<Long> insertedIds;
+    private final Set<Long> updatedIds;
+    private final Set<Long> deletedIds;
+    private final boolean complete;
+
+    ChangeSet(Class<? extends AbstractModelBase> entityClass, Set<Long> insertedIds, Set<Long> updatedIds, Set<Long> deletedIds, boolean complete) {
+        this.entityClass = entityClass;
+        this.insertedIds = Collections.unmodifiableSet(insertedIds);
+        this.updatedIds = Collections.unmodifiableSet(updatedIds);
+        this.deletedIds = Collections.unmodifiableSet(deletedIds);
+        this.complete = complete;
+    }
+
+    public Class<? extends AbstractModelBase> getEntityClass() {
+        return entityClass;
+    }
+
+    public Set<Long> getInsertedIds() {
+        return insertedIds;
+    }
+
+    public Set<Long> getUpdatedIds() {
+        return updatedIds;
+    }
+
+    public Set<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * @return the ids of all inserted, updated and deleted rows
+     */
+    public Set<Long> getChangedIds() {
+        Set<Long> result = new LinkedHashSet<Long>(insertedIds);
+        result.addAll(updatedIds);
+        result.addAll(deletedIds);
+        return result;
+    }
+
+    /**
+     * @return false, if the table has been changed without telling the ids, e.g. by a plain
+     * emitSetChangeEvent or emitDeleteEvent call. Reload everything in this case.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" + entityClass.getSimpleName() + " inserted=" + insertedIds + " updated=" + updatedIds
+                + " deleted=" + deletedIds + (complete ? "" : " incomplete") + "}";
+    }
+}
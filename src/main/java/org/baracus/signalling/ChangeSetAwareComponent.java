@@ -0,0 +1,19 @@
+package org.baracus.signalling;
+
+import org.baracus.orm.AbstractModelBase;
+
+/**
+ * Implement this interface to receive the changes of an entity type as one batch. Inside a
+ * transaction the changes are collected and delivered once on commit, so a list adapter
+ * is refreshed once per saveAll or delete(List) instead of once per row. Rolled back changes
+ * are never delivered.
+ */
+public interface ChangeSetAwareComponent<T extends AbstractModelBase> {
+
+    /**
+     * change callback function
+     *
+     * @param changes - the changes of the entity type
+     */
+    void onChanges(ChangeSet changes);
+}
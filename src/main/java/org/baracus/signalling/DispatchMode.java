@@ -0,0 +1,26 @@
+package org.baracus.signalling;
+
+/**
+ * Defines on which thread a listener receives its events. Pass it when registering a
+ * listener at the BaracusApplicationContext.
+ */
+public enum DispatchMode {
+
+    /**
+     * the listener is called by the emitting thread before the emit function returns.
+     * This is the default, a slow listener slows down the emitter.
+     */
+    SYNCHRONOUS,
+
+    /**
+     * the listener is called on the background event thread (or the executor set with
+     * BaracusApplicationContext.setEventExecutor) in emission order
+     */
+    BACKGROUND,
+
+    /**
+     * the listener is called on the main (UI) thread in emission order. Use this for
+     * listeners updating views.
+     */
+    MAIN_THREAD
+}
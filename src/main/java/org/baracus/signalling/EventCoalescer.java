@@ -0,0 +1,326 @@
+package org.baracus.signalling;
+
+import org.baracus.orm.AbstractModelBase;
+import org.baracus.util.Logger;
+
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the delete, insert and change events of the DAOs per entity class. Events recorded
+ * while a batch is open on the current thread are held back until the outermost batch is
+ * committed, then every listener is notified once per entity class :
+ * <ul>
+ * <li>delete listeners once, if any row has been deleted</li>
+ * <li>set change listeners once, if any row has been inserted</li>
+ * <li>data change listeners once per changed item, with its latest instance</li>
+ * <li>change set listeners once with all ids, @see ChangeSet</li>
+ * </ul>
+ * If any batch is rolled back, all events of the outermost batch are discarded, because SQLite
+ * rolls back the whole transaction in this case. The DAOs open a batch with every TxHandle.
+ * <p/>
+ * Outside of batches the events are delivered immediately, unless a window is set : then the
+ * events of all threads are collected and delivered together once the window has passed since
+ * the first event. Synchronous listeners are called on the window thread in this case.
+ */
+public final class EventCoalescer {
+
+    private static final Logger logger = new Logger(EventCoalescer.class);
+
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+    private static final int SET_CHANGE = 3;
+
+    private final EventDispatcher dispatcher;
+
+    private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>();
+
+    private volatile long windowMillis = 0;
+
+    // guarded by this
+    private Batch windowBatch;
+    private ScheduledExecutorService windowTimer;
+
+    private final Runnable windowFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * the pending changes of one thread or of the window
+     */
+    private static final class Batch {
+        private int depth = 0;
+        private boolean failed = false;
+        private final Map<Class<?>, Changes> changes = new LinkedHashMap<Class<?>, Changes>();
+
+        private Changes get(Class<? extends AbstractModelBase> clazz) {
+            Changes result = changes.get(clazz);
+            if (result == null) {
+                result = new Changes(clazz);
+                changes.put(clazz, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * the pending changes of one entity class
+     */
+    private static final class Changes {
+        private final Class<? extends AbstractModelBase> entityClass;
+        private final Set<Long> inserted = new LinkedHashSet<Long>();
+        private final Map<Long, AbstractModelBase> updated = new LinkedHashMap<Long, AbstractModelBase>();
+        // updated items without id cannot be merged by id, they are merged by identity
+        private final List<AbstractModelBase> updatedWithoutId = new ArrayList<AbstractModelBase>();
+        private final Set<Long> deleted = new LinkedHashSet<Long>();
+        private boolean setChanged = false;
+        private boolean deletedUnknown = false;
+
+        private Changes(Class<? extends AbstractModelBase> entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        private void record(int type, Long id, AbstractModelBase item) {
+            switch (type) {
+                case INSERT:
+                    if (id != null) {
+                        inserted.add(id);
+                    } else {
+                        setChanged = true;
+                    }
+                    break;
+                case UPDATE:
+                    if (id == null) {
+                        addUpdatedWithoutId(item);
+                    } else if (!inserted.contains(id)) {
+                        updated.put(id, item);
+                    }
+                    break;
+                case DELETE:
+                    if (id != null) {
+                        inserted.remove(id);
+                        updated.remove(id);
+                        deleted.add(id);
+                    } else {
+                        deletedUnknown = true;
+                    }
+                    break;
+                default:
+                    setChanged = true;
+                    break;
+            }
+        }
+
+        private void addUpdatedWithoutId(AbstractModelBase item) {
+            for (AbstractModelBase known : updatedWithoutId) {
+                if (known == item) {
+                    return;
+                }
+            }
+            updatedWithoutId.add(item);
+        }
+    }
+
+    /**
+     * @param dispatcher - the dispatcher delivering the coalesced events
+     */
+    public EventCoalescer(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * opens a batch on the current thread. Batches nest, every begin must be followed by commit or rollback.
+     */
+    public void begin() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            batch = new Batch();
+            batches.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * closes a batch. Closing the outermost batch delivers its events, unless a nested batch was rolled back.
+     */
+    public void commit() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            logger.warn("commit without open event batch ignored");
+            return;
+        }
+        if (--batch.depth == 0) {
+            batches.remove();
+            if (!batch.failed) {
+                deliver(batch);
+            }
+        }
+    }
+
+    /**
+     * closes a batch and discards all events of the outermost batch
+     */
+    public void rollback() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            logger.warn("rollback without open event batch ignored");
+            return;
+        }
+        batch.failed = true;
+        if (--batch.depth == 0) {
+            batches.remove();
+        }
+    }
+
+    /**
+     * @return true, if the current thread has an open batch
+     */
+    public boolean isBatching() {
+        return batches.get() != null;
+    }
+
+    /**
+     * sets the window used to collect events outside of batches
+     *
+     * @param millis - the window in millis, 0 delivers the events immediately
+     */
+    public void setWindow(long millis) {
+        windowMillis = Math.max(0, millis);
+        if (millis <= 0) {
+            flush();
+        }
+    }
+
+    /**
+     * delivers the events collected in the current window now
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = windowBatch;
+            windowBatch = null;
+        }
+        if (batch != null) {
+            deliver(batch);
+        }
+    }
+
+    /**
+     * @param item - the inserted item
+     */
+    public void inserted(AbstractModelBase item) {
+        record(item.getClass(), INSERT, item.getId(), null);
+    }
+
+    /**
+     * @param item - the updated item
+     */
+    public void updated(AbstractModelBase item) {
+        record(item.getClass(), UPDATE, item.getId(), item);
+    }
+
+    /**
+     * @param clazz - the entity class
+     * @param id    - the id of the deleted row, null if unknown
+     */
+    public void deleted(Class<? extends AbstractModelBase> clazz, Long id) {
+        record(clazz, DELETE, id, null);
+    }
+
+    /**
+     * @param clazz - the entity class whose table has changed in an unknown way
+     */
+    public void setChanged(Class<? extends AbstractModelBase> clazz) {
+        record(clazz, SET_CHANGE, null, null);
+    }
+
+    private void record(Class<? extends AbstractModelBase> clazz, int type, Long id, AbstractModelBase item) {
+        Batch batch = batches.get();
+        if (batch != null) {
+            batch.get(clazz).record(type, id, item);
+        } else if (windowMillis > 0) {
+            synchronized (this) {
+                if (windowBatch == null) {
+                    windowBatch = new Batch();
+                    getWindowTimer().schedule(windowFlush, windowMillis, TimeUnit.MILLISECONDS);
+                }
+                windowBatch.get(clazz).record(type, id, item);
+            }
+        } else {
+            dispatch(clazz, type, id, item);
+        }
+    }
+
+    /**
+     * delivers a single event immediately. Nothing is allocated unless a change set listener is registered.
+     */
+    private void dispatch(Class<? extends AbstractModelBase> clazz, int type, Long id, AbstractModelBase item) {
+        switch (type) {
+            case INSERT:
+            case SET_CHANGE:
+                dispatcher.emitSetChange(clazz);
+                break;
+            case UPDATE:
+                dispatcher.emitDataChange(item);
+                break;
+            default:
+                dispatcher.emitDelete(clazz);
+                break;
+        }
+        if (dispatcher.getChangeSetListeners().hasListeners(clazz)) {
+            Set<Long> none = Collections.emptySet();
+            Set<Long> ids = id != null ? Collections.singleton(id) : none;
+            dispatcher.emitChangeSet(new ChangeSet(clazz, type == INSERT ? ids : none, type == UPDATE ? ids : none,
+                    type == DELETE ? ids : none, type != SET_CHANGE && id != null));
+        }
+    }
+
+    private void deliver(Batch batch) {
+        for (Changes changes : batch.changes.values()) {
+            deliver(changes);
+        }
+    }
+
+    private void deliver(Changes changes) {
+        Class<? extends AbstractModelBase> clazz = changes.entityClass;
+        if (!changes.deleted.isEmpty() || changes.deletedUnknown) {
+            dispatcher.emitDelete(clazz);
+        }
+        if (!changes.inserted.isEmpty() || changes.setChanged) {
+            dispatcher.emitSetChange(clazz);
+        }
+        for (AbstractModelBase item : changes.updated.values()) {
+            dispatcher.emitDataChange(item);
+        }
+        for (AbstractModelBase item : changes.updatedWithoutId) {
+            dispatcher.emitDataChange(item);
+        }
+        if (dispatcher.getChangeSetListeners().hasListeners(clazz)) {
+            // updates without id are missing in the ids, so the change set is incomplete then
+            dispatcher.emitChangeSet(new ChangeSet(clazz, changes.inserted, new LinkedHashSet<Long>(changes.updated.keySet()), changes.deleted,
+                    !changes.setChanged && !changes.deletedUnknown && changes.updatedWithoutId.isEmpty()));
+        }
+    }
+
+    private synchronized ScheduledExecutorService getWindowTimer() {
+        if (windowTimer == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "baracus-event-window");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            windowTimer = timer;
+        }
+        return windowTimer;
+    }
+}
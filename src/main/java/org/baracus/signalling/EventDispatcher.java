@@ -0,0 +1,222 @@
+package org.baracus.signalling;
+
+import android.os.Handler;
+import android.os.Looper;
+import org.baracus.orm.AbstractModelBase;
+import org.baracus.util.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers the delete, set change, data change, change set and generic events to the registered listeners.
+ * Every listener is called according to the DispatchMode it was registered with : synchronous
+ * listeners are called by the emitting thread, the others are queued for the background executor
+ * or the main thread. Emitting takes no lock and does not allocate, unless an idle queue must be
+ * rescheduled.
+ * <p/>
+ * A listener throwing an exception is logged and removed, as it has always been. Delete and
+ * set change listeners are held weakly, @see ListenerRegistry.
+ * <p/>
+ * The BaracusApplicationContext owns the dispatcher, use its register and emit functions.
+ */
+public final class EventDispatcher {
+
+    private static final Logger logger = new Logger(EventDispatcher.class);
+
+    static final int DELETE = 0;
+    static final int SET_CHANGE = 1;
+    static final int DATA_CHANGE = 2;
+    static final int GENERIC = 3;
+    static final int CHANGE_SET = 4;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // weak and additive since 1.1.0 (formerly one strong listener per class), see registerDeleteListener
+    private final ListenerRegistry<Class<?>> deleteListeners = new ListenerRegistry<Class<?>>(true);
+    private final ListenerRegistry<Class<?>> setChangeListeners = new ListenerRegistry<Class<?>>(true);
+    private final ListenerRegistry<Class<?>> dataChangeListeners = new ListenerRegistry<Class<?>>();
+    private final ListenerRegistry<Class<?>> genericListeners = new ListenerRegistry<Class<?>>();
+    private final ListenerRegistry<Class<?>> changeSetListeners = new ListenerRegistry<Class<?>>();
+
+    private volatile EventQueue backgroundQueue;
+    private volatile EventQueue mainQueue;
+
+    /**
+     * @return the delete listeners by model class
+     */
+    public ListenerRegistry<Class<?>> getDeleteListeners() {
+        return deleteListeners;
+    }
+
+    /**
+     * @return the set change listeners by model class
+     */
+    public ListenerRegistry<Class<?>> getSetChangeListeners() {
+        return setChangeListeners;
+    }
+
+    /**
+     * @return the data change listeners by model class
+     */
+    public ListenerRegistry<Class<?>> getDataChangeListeners() {
+        return dataChangeListeners;
+    }
+
+    /**
+     * @return the generic listeners by event class
+     */
+    public ListenerRegistry<Class<?>> getGenericListeners() {
+        return genericListeners;
+    }
+
+    /**
+     * @return the change set listeners by model class
+     */
+    public ListenerRegistry<Class<?>> getChangeSetListeners() {
+        return changeSetListeners;
+    }
+
+    /**
+     * replaces the executor delivering the events of BACKGROUND listeners. By default a single
+     * daemon thread is used, which keeps the emission order.
+     *
+     * @param executor - the executor
+     */
+    public void setBackgroundExecutor(Executor executor) {
+        backgroundQueue = new EventQueue(this, executor, null, QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param clazz - the model class whose instances have been deleted
+     */
+    public void emitDelete(Class<? extends AbstractModelBase> clazz) {
+        dispatch(deleteListeners.get(clazz), DELETE, clazz);
+    }
+
+    /**
+     * @param clazz - the model class whose record set has changed
+     */
+    public void emitSetChange(Class<? extends AbstractModelBase> clazz) {
+        dispatch(setChangeListeners.get(clazz), SET_CHANGE, clazz);
+    }
+
+    /**
+     * @param changedItem - the changed item
+     */
+    public void emitDataChange(AbstractModelBase changedItem) {
+        dispatch(dataChangeListeners.get(changedItem.getClass()), DATA_CHANGE, changedItem);
+    }
+
+    /**
+     * @param event - the event
+     */
+    public void emitGeneric(GenericEvent event) {
+        dispatch(genericListeners.get(event.getClass()), GENERIC, event);
+    }
+
+    /**
+     * @param changes - the coalesced changes of an entity class
+     */
+    public void emitChangeSet(ChangeSet changes) {
+        dispatch(changeSetListeners.get(changes.getEntityClass()), CHANGE_SET, changes);
+    }
+
+    private void dispatch(ListenerRegistry.Registration[] registrations, int kind, Object payload) {
+        for (ListenerRegistry.Registration registration : registrations) {
+            switch (registration.mode) {
+                case BACKGROUND:
+                    getBackgroundQueue().enqueue(registration, kind, payload);
+                    break;
+                case MAIN_THREAD:
+                    getMainQueue().enqueue(registration, kind, payload);
+                    break;
+                default:
+                    deliver(registration, kind, payload);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * calls the listener, failing listeners are removed
+     */
+    @SuppressWarnings("unchecked")
+    void deliver(ListenerRegistry.Registration registration, int kind, Object payload) {
+        Object listener = registration.getListener();
+        if (listener == null) {
+            registration.registry.remove(registration); // collected
+            return;
+        }
+        try {
+            switch (kind) {
+                case DELETE:
+                    ((DeleteAwareComponent<?>) listener).onDelete();
+                    break;
+                case SET_CHANGE:
+                    ((DataSetChangeAwareComponent<?>) listener).onChange((Class<? extends AbstractModelBase>) payload);
+                    break;
+                case DATA_CHANGE:
+                    ((DataChangeAwareComponent<AbstractModelBase>) listener).onChange((AbstractModelBase) payload);
+                    break;
+                case CHANGE_SET:
+                    ((ChangeSetAwareComponent<?>) listener).onChanges((ChangeSet) payload);
+                    break;
+                default:
+                    ((GenericEventAwareComponent<GenericEvent>) listener).handleEvent((GenericEvent) payload);
+                    break;
+            }
+        } catch (Exception e) {
+            logger.error("Caught exception while emitting event, removing listener " + listener.getClass().getName(), e);
+            registration.registry.remove(registration);
+        }
+    }
+
+    private EventQueue getBackgroundQueue() {
+        EventQueue queue = backgroundQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = backgroundQueue;
+                if (queue == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new EventThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    queue = new EventQueue(this, executor, null, QUEUE_CAPACITY);
+                    backgroundQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    private EventQueue getMainQueue() {
+        EventQueue queue = mainQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = mainQueue;
+                if (queue == null) {
+                    Looper looper = Looper.getMainLooper();
+                    final Handler handler = new Handler(looper);
+                    queue = new EventQueue(this, new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            handler.post(command);
+                        }
+                    }, looper.getThread(), QUEUE_CAPACITY);
+                    mainQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    private static final class EventThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "baracus-events-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.baracus.signalling;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of pending deliveries, drained by a single task on an executor. The queue is a
+ * preallocated ring buffer with a sequence number per slot : producers claim a slot with a CAS
+ * and publish it by advancing its sequence, so enqueuing neither locks nor allocates. The drain
+ * task is submitted only when the queue turns from idle to busy.
+ * <p/>
+ * If the queue is full, producers wait for the consumer. Producers running on the consumer
+ * thread deliver inline instead, because waiting for themselves would never end.
+ */
+final class EventQueue implements Runnable {
+
+    private final EventDispatcher dispatcher;
+    private final Executor executor;
+    private final Thread consumerThread;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final ListenerRegistry.Registration[] registrations;
+    private final int[] kinds;
+    private final Object[] payloads;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // only touched by the drain task
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread drainThread;
+
+    /**
+     * @param dispatcher     - the dispatcher delivering the events
+     * @param executor       - the executor running the drain task
+     * @param consumerThread - the thread the executor runs on, if it is a single known thread like the main thread
+     * @param capacity       - the capacity, a power of two
+     */
+    EventQueue(EventDispatcher dispatcher, Executor executor, Thread consumerThread, int capacity) {
+        this.dispatcher = dispatcher;
+        this.executor = executor;
+        this.consumerThread = consumerThread;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.registrations = new ListenerRegistry.Registration[capacity];
+        this.kinds = new int[capacity];
+        this.payloads = new Object[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * queues a delivery
+     *
+     * @param registration - the receiving listener
+     * @param kind         - the event kind
+     * @param payload      - the event payload
+     */
+    void enqueue(ListenerRegistry.Registration registration, int kind, Object payload) {
+        while (!offer(registration, kind, payload)) {
+            Thread current = Thread.currentThread();
+            if (current == drainThread || current == consumerThread) {
+                dispatcher.deliver(registration, kind, payload);
+                return;
+            }
+            schedule();
+            Thread.yield();
+        }
+        schedule();
+    }
+
+    private boolean offer(ListenerRegistry.Registration registration, int kind, Object payload) {
+        for (; ; ) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long distance = sequences.get(index) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    registrations[index] = registration;
+                    kinds[index] = kind;
+                    payloads[index] = payload;
+                    sequences.set(index, position + 1); // publish
+                    return true;
+                }
+            } else if (distance < 0) {
+                return false; // full
+            }
+            // another producer claimed the slot, retry
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * the drain task, delivers at most one queue length of events and reschedules itself
+     * if there are more, so a busy queue cannot starve the main thread
+     */
+    @Override
+    public void run() {
+        drainThread = Thread.currentThread();
+        try {
+            for (int budget = mask + 1; budget > 0; --budget) {
+                int index = (int) head & mask;
+                if (sequences.get(index) != head + 1) {
+                    break;
+                }
+                ListenerRegistry.Registration registration = registrations[index];
+                int kind = kinds[index];
+                Object payload = payloads[index];
+                registrations[index] = null;
+                payloads[index] = null;
+                sequences.set(index, head + mask + 1); // release the slot
+                ++head;
+                dispatcher.deliver(registration, kind, payload);
+            }
+        } finally {
+            drainThread = null;
+            scheduled.set(false);
+            if (!isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
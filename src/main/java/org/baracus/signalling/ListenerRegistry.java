@@ -0,0 +1,217 @@
+package org.baracus.signalling;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lock free registry of event listeners by key, e.g. by model class or event class.
+ * The listeners of a key are kept in an immutable array which is replaced on every
+ * modification, so emitting an event only reads the current array and neither locks
+ * nor allocates. Modifications are rare and retried until they win.
+ * <p/>
+ * A weak registry only keeps weak references to its listeners, so a registered activity or
+ * fragment can be collected without unregistering. Collected listeners are skipped on
+ * delivery and purged with the next modification of their key.
+ *
+ * @param <K> the key type
+ */
+public final class ListenerRegistry<K> {
+
+    private static final Registration[] EMPTY = new Registration[0];
+
+    private final ConcurrentMap<K, Registration[]> listeners = new ConcurrentHashMap<K, Registration[]>();
+    private final boolean weak;
+
+    /**
+     * A listener registered for a key together with its dispatch mode
+     */
+    static final class Registration {
+        final ListenerRegistry<?> registry;
+        final Object key;
+        final DispatchMode mode;
+        private final Object listener;
+        private final WeakReference<Object> reference;
+
+        Registration(ListenerRegistry<?> registry, Object key, Object listener, DispatchMode mode, boolean weak) {
+            this.registry = registry;
+            this.key = key;
+            this.mode = mode;
+            this.listener = weak ? null : listener;
+            this.reference = weak ? new WeakReference<Object>(listener) : null;
+        }
+
+        /**
+         * @return the listener, null if it has been collected
+         */
+        Object getListener() {
+            return reference != null ? reference.get() : listener;
+        }
+    }
+
+    /**
+     * creates a registry holding its listeners strongly
+     */
+    public ListenerRegistry() {
+        this(false);
+    }
+
+    /**
+     * @param weak - true, if the listeners shall be held by weak references
+     */
+    public ListenerRegistry(boolean weak) {
+        this.weak = weak;
+    }
+
+    /**
+     * adds a listener. A listener already registered for the key keeps its first registration.
+     *
+     * @param key      - the key
+     * @param listener - the listener
+     * @param mode     - the dispatch mode
+     */
+    public void add(K key, Object listener, DispatchMode mode) {
+        Registration registration = new Registration(this, key, listener, mode, weak);
+        for (; ; ) {
+            Registration[] current = listeners.get(key);
+            if (current == null) {
+                if (listeners.putIfAbsent(key, new Registration[]{registration}) == null) {
+                    return;
+                }
+            } else {
+                if (indexOf(current, listener) >= 0) {
+                    return;
+                }
+                List<Registration> copy = new ArrayList<Registration>(current.length + 1);
+                for (Registration existing : current) {
+                    if (existing.getListener() != null) {
+                        copy.add(existing);
+                    }
+                }
+                copy.add(registration);
+                if (listeners.replace(key, current, copy.toArray(new Registration[copy.size()]))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * replaces all listeners of the key by the passed one
+     *
+     * @param key      - the key
+     * @param listener - the listener
+     * @param mode     - the dispatch mode
+     */
+    public void set(K key, Object listener, DispatchMode mode) {
+        listeners.put(key, new Registration[]{new Registration(this, key, listener, mode, weak)});
+    }
+
+    /**
+     * @param key      - the key
+     * @param listener - the listener
+     * @return true, if the listener was registered for the key
+     */
+    public boolean remove(K key, Object listener) {
+        for (; ; ) {
+            Registration[] current = listeners.get(key);
+            int index = current != null ? indexOf(current, listener) : -1;
+            if (index < 0) {
+                return false;
+            }
+            if (replace(key, current, index)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * removes the listener from all keys
+     *
+     * @param listener - the listener
+     * @return true, if the listener was registered for any key
+     */
+    public boolean remove(Object listener) {
+        boolean result = false;
+        for (K key : listeners.keySet()) {
+            result |= remove(key, listener);
+        }
+        return result;
+    }
+
+    /**
+     * removes all listeners of the key
+     *
+     * @param key - the key
+     */
+    public void clear(K key) {
+        listeners.remove(key);
+    }
+
+    /**
+     * removes all listeners
+     */
+    public void clear() {
+        listeners.clear();
+    }
+
+    /**
+     * @param key - the key
+     * @return true, if there is at least one listener for the key
+     */
+    public boolean hasListeners(K key) {
+        return listeners.containsKey(key);
+    }
+
+    /**
+     * @param key - the key
+     * @return the current registrations of the key, never null. The array must not be modified.
+     */
+    Registration[] get(Object key) {
+        Registration[] result = listeners.get(key);
+        return result != null ? result : EMPTY;
+    }
+
+    /**
+     * removes a single registration, e.g. of a failing listener
+     *
+     * @param registration - the registration
+     */
+    @SuppressWarnings("unchecked")
+    void remove(Registration registration) {
+        K key = (K) registration.key;
+        for (; ; ) {
+            Registration[] current = listeners.get(key);
+            int index = -1;
+            for (int i = 0; current != null && i < current.length; ++i) {
+                if (current[i] == registration) {
+                    index = i;
+                }
+            }
+            if (index < 0 || replace(key, current, index)) {
+                return;
+            }
+        }
+    }
+
+    private boolean replace(K key, Registration[] current, int index) {
+        if (current.length == 1) {
+            return listeners.remove(key, current);
+        }
+        Registration[] copy = new Registration[current.length - 1];
+        System.arraycopy(current, 0, copy, 0, index);
+        System.arraycopy(current, index + 1, copy, index, current.length - index - 1);
+        return listeners.replace(key, current, copy);
+    }
+
+    private static int indexOf(Registration[] registrations, Object listener) {
+        for (int i = 0; i < registrations.length; ++i) {
+            if (registrations[i].getListener() == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,453 @@
+package org.baracus.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log target writing asynchronously to another log target. Log calls only put the message into
+ * a bounded, preallocated ring buffer, a single daemon thread passes the entries to the delegate
+ * in order. So a DAO logging on the UI thread no longer waits for android.util.Log.
+ * <p/>
+ * Structured log events are copied into a LogEvent preallocated per slot and passed on to a
+ * StructuredLogTarget delegate, other delegates get the event as text.
+ * <p/>
+ * If the buffer is full, the OverflowPolicy decides : DROP discards the entry, BLOCK waits for a
+ * free slot, SAMPLE keeps every n-th entry and all errors by waiting and discards the rest.
+ * <p/>
+ * Usage :
+ * <p/>
+ * {@code
+ * Logger.setLogTarget(new AsyncLogTarget(new Logger.AndroidLogger(), 1024, AsyncLogTarget.OverflowPolicy.DROP));
+ * }
+ * <p/>
+ * BaracusApplicationContext.destroy flushes the log target, call Logger.flush() to do this earlier.
+ * close() drains the buffer and stops the log thread, entries logged afterwards are written by
+ * the logging thread itself.
+ */
+public class AsyncLogTarget implements Logger.StructuredLogTarget, Flushable, Closeable {
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK,
+        SAMPLE
+    }
+
+    private static final int TRACE = 0;
+    private static final int DEBUG = 1;
+    private static final int INFO = 2;
+    private static final int WARN = 3;
+    private static final int ERROR = 4;
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 2000;
+
+    private final Logger.LogTarget delegate;
+    private final OverflowPolicy policy;
+    private final int sampleRate;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] levels;
+    private final String[] tags;
+    private final String[] messages;
+    private final Throwable[] throwables;
+    private final LogEvent[] events;
+    private final boolean[] structured;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0; // only written by the consumer
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    private final Thread consumer;
+    private volatile boolean waiting = false;
+
+    private volatile boolean closed = false;
+    // set by the consumer when it exits, guarded by stopLock
+    private boolean stopped = false;
+    private final Object stopLock = new Object();
+
+    /**
+     * @param delegate - the log target to write to
+     * @param capacity - the number of buffered entries, rounded up to a power of two
+     * @param policy   - the overflow policy
+     */
+    public AsyncLogTarget(Logger.LogTarget delegate, int capacity, OverflowPolicy policy) {
+        this(delegate, capacity, policy, 10);
+    }
+
+    /**
+     * @param delegate   - the log target to write to
+     * @param capacity   - the number of buffered entries, rounded up to a power of two
+     * @param policy     - the overflow policy
+     * @param sampleRate - SAMPLE keeps every sampleRate-th entry while the buffer is full
+     */
+    public AsyncLogTarget(Logger.LogTarget delegate, int capacity, OverflowPolicy policy, int sampleRate) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.delegate = delegate;
+        this.policy = policy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.levels = new int[size];
+        this.tags = new String[size];
+        this.messages = new String[size];
+        this.throwables = new Throwable[size];
+        this.events = new LogEvent[size];
+        this.structured = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+            events[i] = new LogEvent(true);
+        }
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "baracus-log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * @return the number of entries discarded because the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of entries currently waiting in the buffer
+     */
+    public long getQueuedCount() {
+        return tail.get() - head;
+    }
+
+    /**
+     * @return the number of entries written to the delegate so far
+     */
+    public long getDeliveredCount() {
+        return head;
+    }
+
+    /**
+     * @return the number of log calls finding the buffer full
+     */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * waits until all entries logged before have been written to the delegate, at most two seconds
+     */
+    @Override
+    public void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+        while (head < target && Thread.currentThread() != consumer && System.nanoTime() < deadline) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * writes all buffered entries, stops the log thread and waits for it, at most two seconds
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(consumer);
+        if (Thread.currentThread() != consumer) {
+            try {
+                consumer.join(FLUSH_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void enqueue(int level, String tag, String msg, Throwable t) {
+        enqueue(level, tag, msg, t, null);
+    }
+
+    /**
+     * @param event - the structured event to copy or null for a plain entry
+     */
+    private void enqueue(int level, String tag, String msg, Throwable t, LogEvent event) {
+        if (offer(level, tag, msg, t, event)) {
+            wakeUp();
+            if (closed) {
+                drainIfStopped();
+            }
+            return;
+        }
+        long overflow = overflows.incrementAndGet();
+        if (Thread.currentThread() == consumer) {
+            // the delegate logs itself, waiting for the consumer would never end
+            if (event != null) {
+                write(level, tag, event);
+            } else {
+                write(level, tag, msg, t);
+            }
+            return;
+        }
+        if (policy == OverflowPolicy.DROP
+                || policy == OverflowPolicy.SAMPLE && level != ERROR && overflow % sampleRate != 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        while (!offer(level, tag, msg, t, event)) {
+            wakeUp();
+            if (closed) {
+                drainIfStopped();
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        wakeUp();
+        if (closed) {
+            drainIfStopped();
+        }
+    }
+
+    /**
+     * @return true, if the log thread has stopped after close
+     */
+    boolean isStopped() {
+        synchronized (stopLock) {
+            return stopped;
+        }
+    }
+
+    /**
+     * writes the entries offered after the log thread has stopped on the calling thread
+     */
+    private void drainIfStopped() {
+        synchronized (stopLock) {
+            if (stopped) {
+                while (poll()) {
+                    // write all published entries
+                }
+            }
+        }
+    }
+
+    private boolean offer(int level, String tag, String msg, Throwable t, LogEvent event) {
+        for (; ; ) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long distance = sequences.get(index) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[index] = level;
+                    tags[index] = tag;
+                    messages[index] = msg;
+                    throwables[index] = t;
+                    structured[index] = event != null;
+                    if (event != null) {
+                        events[index].copyFrom(event);
+                    }
+                    sequences.set(index, position + 1); // publish
+                    return true;
+                }
+            } else if (distance < 0) {
+                return false; // full
+            }
+            // another producer claimed the slot, retry
+        }
+    }
+
+    private void wakeUp() {
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        for (; ; ) {
+            if (poll()) {
+                continue;
+            }
+            if (closed) {
+                synchronized (stopLock) {
+                    // a claimed but unpublished slot is waited for, later offers drain themselves
+                    if (tail.get() == head) {
+                        stopped = true;
+                        return;
+                    }
+                }
+                Thread.yield();
+                continue;
+            }
+            int index = (int) head & mask;
+            waiting = true;
+            if (sequences.get(index) != head + 1 && !closed) {
+                LockSupport.park(this);
+            }
+            waiting = false;
+        }
+    }
+
+    /**
+     * writes the next entry to the delegate. Called by one thread at a time : the consumer, or
+     * after it has stopped, a drainer holding the stop lock.
+     *
+     * @return false, if the next entry is not published yet
+     */
+    private boolean poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return false;
+        }
+        int level = levels[index];
+        String tag = tags[index];
+        String msg = messages[index];
+        Throwable t = throwables[index];
+        boolean isStructured = structured[index];
+        tags[index] = null;
+        messages[index] = null;
+        throwables[index] = null;
+        if (!isStructured) {
+            sequences.set(index, position + mask + 1); // release the slot
+        }
+        try {
+            if (isStructured) {
+                // the event of the slot is reused, so the slot is released after writing
+                LogEvent event = events[index];
+                try {
+                    write(level, tag, event);
+                } finally {
+                    event.clear();
+                    sequences.set(index, position + mask + 1);
+                }
+            } else {
+                write(level, tag, msg, t);
+            }
+        } catch (RuntimeException e) {
+            // a failing delegate must not stop the log thread
+        }
+        head = position + 1;
+        return true;
+    }
+
+    private void write(int level, String tag, LogEvent event) {
+        if (delegate instanceof Logger.StructuredLogTarget) {
+            ((Logger.StructuredLogTarget) delegate).log(tag, event);
+        } else {
+            StringBuilder builder = new StringBuilder(128);
+            builder.append(event.getLoggerId()).append(' ');
+            event.appendTo(builder);
+            write(level, tag, builder.toString(), event.getThrowable());
+        }
+    }
+
+    private void write(int level, String tag, String msg, Throwable t) {
+        switch (level) {
+            case TRACE:
+                if (t != null) {
+                    delegate.trace(tag, msg, t);
+                } else {
+                    delegate.trace(tag, msg);
+                }
+                break;
+            case DEBUG:
+                if (t != null) {
+                    delegate.debug(tag, msg, t);
+                } else {
+                    delegate.debug(tag, msg);
+                }
+                break;
+            case INFO:
+                if (t != null) {
+                    delegate.info(tag, msg, t);
+                } else {
+                    delegate.info(tag, msg);
+                }
+                break;
+            case WARN:
+                if (t != null) {
+                    delegate.warn(tag, msg, t);
+                } else {
+                    delegate.warn(tag, msg);
+                }
+                break;
+            default:
+                if (t != null) {
+                    delegate.error(tag, msg, t);
+                } else {
+                    delegate.error(tag, msg);
+                }
+                break;
+        }
+    }
+
+    public void debug(String tag, String msg, Throwable t) {
+        enqueue(DEBUG, tag, msg, t);
+    }
+
+    public void debug(String tag, String msg) {
+        enqueue(DEBUG, tag, msg, null);
+    }
+
+    public void info(String tag, String msg, Throwable t) {
+        enqueue(INFO, tag, msg, t);
+    }
+
+    public void info(String tag, String msg) {
+        enqueue(INFO, tag, msg, null);
+    }
+
+    public void warn(String tag, String msg, Throwable t) {
+        enqueue(WARN, tag, msg, t);
+    }
+
+    public void warn(String tag, String msg) {
+        enqueue(WARN, tag, msg, null);
+    }
+
+    public void error(String tag, String msg, Throwable t) {
+        enqueue(ERROR, tag, msg, t);
+    }
+
+    public void error(String tag, String msg) {
+        enqueue(ERROR, tag, msg, null);
+    }
+
+    public void trace(String tag, String msg, Throwable t) {
+        enqueue(TRACE, tag, msg, t);
+    }
+
+    public void trace(String tag, String msg) {
+        enqueue(TRACE, tag, msg, null);
+    }
+
+    @Override
+    public void log(String tag, LogEvent event) {
+        enqueue(toLevel(event.getLevel()), tag, null, null, event);
+    }
+
+    private static int toLevel(Logger.Level level) {
+        switch (level) {
+            case TRACE:
+                return TRACE;
+            case DEBUG:
+                return DEBUG;
+            case INFO:
+                return INFO;
+            case WARN:
+                return WARN;
+            default:
+                return ERROR;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.baracus.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a log event into a compact, length prefixed binary record (big endian) :
+ * <pre>
+ * int     length of the record without this field
+ * byte    format version (1)
+ * long    timestamp in millis
+ * byte    level ordinal (ERROR=0 ... TRACE=4)
+ * string  tag
+ * string  logger id
+ * string  message
+ * short   number of fields, followed by the fields :
+ *         string key, byte type (J long, D double, Z boolean, S string), the value (8, 8, 1 bytes or string)
+ * string  stack trace
+ * </pre>
+ * A string is an unsigned short byte length followed by the UTF-8 bytes, the length 0xFFFF denotes null.
+ * Strings longer than 65534 bytes are truncated.
+ */
+public class BinaryLogEventEncoder implements LogEventEncoder {
+
+    public static final byte VERSION = 1;
+
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    @Override
+    public void encode(String tag, LogEvent event, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(0); // patched below
+        buffer.put(VERSION);
+        buffer.putLong(event.getTimestamp());
+        buffer.put((byte) event.getLevel().ordinal());
+        putString(buffer, tag);
+        putString(buffer, event.getLoggerId());
+        putString(buffer, event.getMessage());
+        int count = event.getFieldCount();
+        buffer.putShort((short) count);
+        for (int i = 0; i < count; ++i) {
+            putString(buffer, event.getKey(i));
+            byte type = event.getType(i);
+            buffer.put(type);
+            switch (type) {
+                case LogEvent.TYPE_LONG:
+                    buffer.putLong(event.getLong(i));
+                    break;
+                case LogEvent.TYPE_DOUBLE:
+                    buffer.putDouble(event.getDouble(i));
+                    break;
+                case LogEvent.TYPE_BOOLEAN:
+                    buffer.put((byte) (event.getBoolean(i) ? 1 : 0));
+                    break;
+                default:
+                    putString(buffer, event.getString(i));
+                    break;
+            }
+        }
+        if (event.getThrowable() != null) {
+            StringWriter trace = new StringWriter();
+            event.getThrowable().printStackTrace(new PrintWriter(trace));
+            putString(buffer, trace.toString());
+        } else {
+            putString(buffer, null);
+        }
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_LENGTH);
+            return;
+        }
+        int lengthPosition = buffer.position();
+        buffer.putShort((short) 0); // patched below
+        int start = buffer.position();
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            int before = buffer.position();
+            i = Utf8.put(buffer, value, i);
+            if (buffer.position() - start >= NULL_LENGTH) {
+                buffer.position(before); // truncate at a character boundary
+                break;
+            }
+        }
+        buffer.putShort(lengthPosition, (short) (buffer.position() - start));
+    }
+}
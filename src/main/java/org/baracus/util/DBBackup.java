@@ -161,6 +161,29 @@ public class DBBackup {
     }
 
 
+    /**
+     * copies the most recent log segments of a RollingFileLogTarget into a directory
+     * on the external storage, so they can be pulled from the device without logcat.
+     *
+     * @param logTarget   - the log target
+     * @param maxSegments - the maximum number of segments to export
+     * @return the result carrying the number of bytes and the name of the export directory
+     */
+    public static BackupResult exportLogs(RollingFileLogTarget logTarget, int maxSegments) {
+        final String exportPath = DateUtil.toReverseDate(new Date()) + "_logs";
+        try {
+            File sd = Environment.getExternalStorageDirectory();
+            if (sd.canWrite()) {
+                long size = logTarget.exportTo(new File(sd, exportPath), maxSegments);
+                return new BackupResult(size, exportPath);
+            } else {
+                return new BackupResult(0, exportPath, "SD path " + sd + " is write protected!");
+            }
+        } catch (IOException e) {
+            return new BackupResult(0, exportPath, e.getMessage());
+        }
+    }
+
     public static String[] getAvailableFiles() {
         File sd = Environment.getExternalStorageDirectory();
         return sd.list(new FilenameFilter() {
@@ -0,0 +1,122 @@
+package org.baracus.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a log event as one line of JSON :
+ * <p/>
+ * {@code
+ * {"ts":1446450000000,"level":"DEBUG","tag":"APP","logger":"BaseDao","msg":"saved","table":"customer","rows":12}
+ * }
+ * <p/>
+ * Strings are written as UTF-8 character by character, numbers digit by digit, so encoding does
+ * not allocate, except for double values and stack traces.
+ */
+public class JsonLinesEncoder implements LogEventEncoder {
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] LONG_MIN = "-9223372036854775808".getBytes();
+
+    @Override
+    public void encode(String tag, LogEvent event, ByteBuffer buffer) {
+        putAscii(buffer, "{\"ts\":");
+        putLong(buffer, event.getTimestamp());
+        putAscii(buffer, ",\"level\":\"");
+        putAscii(buffer, event.getLevel().name());
+        putAscii(buffer, "\",\"tag\":");
+        putString(buffer, tag);
+        putAscii(buffer, ",\"logger\":");
+        putString(buffer, event.getLoggerId());
+        if (event.getMessage() != null) {
+            putAscii(buffer, ",\"msg\":");
+            putString(buffer, event.getMessage());
+        }
+        for (int i = 0; i < event.getFieldCount(); ++i) {
+            buffer.put((byte) ',');
+            putString(buffer, event.getKey(i));
+            buffer.put((byte) ':');
+            switch (event.getType(i)) {
+                case LogEvent.TYPE_LONG:
+                    putLong(buffer, event.getLong(i));
+                    break;
+                case LogEvent.TYPE_DOUBLE:
+                    double value = event.getDouble(i);
+                    if (Double.isNaN(value) || Double.isInfinite(value)) {
+                        putString(buffer, String.valueOf(value)); // not a JSON number
+                    } else {
+                        putAscii(buffer, String.valueOf(value));
+                    }
+                    break;
+                case LogEvent.TYPE_BOOLEAN:
+                    putAscii(buffer, event.getBoolean(i) ? "true" : "false");
+                    break;
+                default:
+                    putString(buffer, event.getString(i));
+                    break;
+            }
+        }
+        if (event.getThrowable() != null) {
+            StringWriter trace = new StringWriter();
+            event.getThrowable().printStackTrace(new PrintWriter(trace));
+            putAscii(buffer, ",\"error\":");
+            putString(buffer, trace.toString());
+        }
+        putAscii(buffer, "}\n");
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(LONG_MIN);
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * writes a quoted and escaped JSON string, null as null
+     */
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            putAscii(buffer, "null");
+            return;
+        }
+        buffer.put((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c == '\n') {
+                buffer.put((byte) '\\').put((byte) 'n');
+            } else if (c == '\r') {
+                buffer.put((byte) '\\').put((byte) 'r');
+            } else if (c == '\t') {
+                buffer.put((byte) '\\').put((byte) 't');
+            } else if (c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >> 4]).put(HEX[c & 0xf]);
+            } else {
+                i = Utf8.put(buffer, value, i);
+            }
+        }
+        buffer.put((byte) '"');
+    }
+}
@@ -0,0 +1,306 @@
+package org.baracus.util;
+
+/**
+ * A structured log event : a message plus typed key value fields. Obtain it from Logger.atDebug() etc,
+ * add the fields and call log :
+ * <p/>
+ * {@code
+ * logger.atDebug().with("table", table).with("rows", rows).with("millis", millis).log("saved");
+ * }
+ * <p/>
+ * Each thread reuses one event object and primitive fields are stored in primitive arrays, so logging
+ * an event neither boxes nor allocates once the arrays have grown. If the level is disabled, a shared
+ * event ignoring all calls is returned. Never keep a reference to an event after calling log, a
+ * StructuredLogTarget must encode the event before returning.
+ */
+public final class LogEvent {
+
+    public static final byte TYPE_LONG = 'J';
+    public static final byte TYPE_DOUBLE = 'D';
+    public static final byte TYPE_BOOLEAN = 'Z';
+    public static final byte TYPE_STRING = 'S';
+
+    static final LogEvent DISABLED = new LogEvent(false);
+
+    private final boolean enabled;
+
+    private Logger logger;
+    private String loggerId;
+    private Logger.Level level;
+    private long timestamp;
+    private String message;
+    private Throwable throwable;
+    private boolean inUse = false;
+
+    private int count = 0;
+    private String[] keys = new String[8];
+    private byte[] types = new byte[8];
+    private long[] longs = new long[8];
+    private double[] doubles = new double[8];
+    private String[] strings = new String[8];
+
+    LogEvent(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * prepares the event for a new log call
+     */
+    LogEvent start(Logger logger, Logger.Level level) {
+        this.logger = logger;
+        this.loggerId = logger.getLoggerId();
+        this.level = level;
+        this.timestamp = System.currentTimeMillis();
+        this.message = null;
+        this.throwable = null;
+        this.count = 0;
+        this.inUse = true;
+        return this;
+    }
+
+    /**
+     * prepares the event for a plain log record, for structured log targets encoding all records
+     */
+    LogEvent startPlain(Logger.Level level, String message, Throwable throwable) {
+        this.logger = null;
+        this.loggerId = "";
+        this.level = level;
+        this.timestamp = System.currentTimeMillis();
+        this.message = message;
+        this.throwable = throwable;
+        this.count = 0;
+        return this;
+    }
+
+    /**
+     * copies the passed event into this one, used to hand an event over to another thread
+     *
+     * @param source - the event to copy
+     * @return this
+     */
+    LogEvent copyFrom(LogEvent source) {
+        this.logger = null;
+        this.loggerId = source.loggerId;
+        this.level = source.level;
+        this.timestamp = source.timestamp;
+        this.message = source.message;
+        this.throwable = source.throwable;
+        this.count = 0;
+        for (int i = 0; i < source.count; ++i) {
+            int index = add(source.keys[i], source.types[i]);
+            longs[index] = source.longs[i];
+            doubles[index] = source.doubles[i];
+            strings[index] = source.strings[i];
+        }
+        return this;
+    }
+
+    /**
+     * drops the references to the logged values of a copied event
+     */
+    void clear() {
+        for (int i = 0; i < count; ++i) {
+            strings[i] = null;
+        }
+        this.count = 0;
+        this.message = null;
+        this.throwable = null;
+    }
+
+    boolean isInUse() {
+        return inUse;
+    }
+
+    public LogEvent with(String key, long value) {
+        if (enabled) {
+            longs[add(key, TYPE_LONG)] = value;
+        }
+        return this;
+    }
+
+    public LogEvent with(String key, double value) {
+        if (enabled) {
+            doubles[add(key, TYPE_DOUBLE)] = value;
+        }
+        return this;
+    }
+
+    public LogEvent with(String key, boolean value) {
+        if (enabled) {
+            longs[add(key, TYPE_BOOLEAN)] = value ? 1 : 0;
+        }
+        return this;
+    }
+
+    public LogEvent with(String key, String value) {
+        if (enabled) {
+            strings[add(key, TYPE_STRING)] = value;
+        }
+        return this;
+    }
+
+    /**
+     * adds an object field, stored by its string value
+     */
+    public LogEvent with(String key, Object value) {
+        if (enabled) {
+            strings[add(key, TYPE_STRING)] = String.valueOf(value);
+        }
+        return this;
+    }
+
+    /**
+     * @param throwable - the exception to log with the event
+     */
+    public LogEvent withError(Throwable throwable) {
+        if (enabled) {
+            this.throwable = throwable;
+        }
+        return this;
+    }
+
+    /**
+     * logs the event without message
+     */
+    public void log() {
+        log(null);
+    }
+
+    /**
+     * logs the event
+     *
+     * @param message - the message
+     */
+    public void log(String message) {
+        if (!enabled) {
+            return;
+        }
+        this.message = message;
+        try {
+            logger.emit(this);
+        } finally {
+            inUse = false;
+            for (int i = 0; i < count; ++i) {
+                strings[i] = null; // do not retain the logged values
+            }
+            this.throwable = null;
+        }
+    }
+
+    private int add(String key, byte type) {
+        if (count == keys.length) {
+            int size = count * 2;
+            keys = copyOf(keys, size);
+            strings = copyOf(strings, size);
+            byte[] newTypes = new byte[size];
+            System.arraycopy(types, 0, newTypes, 0, count);
+            types = newTypes;
+            long[] newLongs = new long[size];
+            System.arraycopy(longs, 0, newLongs, 0, count);
+            longs = newLongs;
+            double[] newDoubles = new double[size];
+            System.arraycopy(doubles, 0, newDoubles, 0, count);
+            doubles = newDoubles;
+        }
+        keys[count] = key;
+        types[count] = type;
+        return count++;
+    }
+
+    private static String[] copyOf(String[] source, int size) {
+        String[] result = new String[size];
+        System.arraycopy(source, 0, result, 0, source.length);
+        return result;
+    }
+
+    public Logger.Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the simple name of the logging class, empty for plain log records
+     */
+    public String getLoggerId() {
+        return loggerId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the message, may be null
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the exception, may be null
+     */
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    public int getFieldCount() {
+        return count;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return one of TYPE_LONG, TYPE_DOUBLE, TYPE_BOOLEAN or TYPE_STRING
+     */
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public long getLong(int index) {
+        return longs[index];
+    }
+
+    public double getDouble(int index) {
+        return doubles[index];
+    }
+
+    public boolean getBoolean(int index) {
+        return longs[index] != 0;
+    }
+
+    public String getString(int index) {
+        return strings[index];
+    }
+
+    /**
+     * appends the message and the fields as "message key=value key=value", used for plain log targets
+     *
+     * @param builder - the builder to append to
+     */
+    public void appendTo(StringBuilder builder) {
+        if (message != null) {
+            builder.append(message);
+        }
+        for (int i = 0; i < count; ++i) {
+            if (i > 0 || message != null) {
+                builder.append(' ');
+            }
+            builder.append(keys[i]).append('=');
+            switch (types[i]) {
+                case TYPE_LONG:
+                    builder.append(longs[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    builder.append(doubles[i]);
+                    break;
+                case TYPE_BOOLEAN:
+                    builder.append(longs[i] != 0);
+                    break;
+                default:
+                    builder.append(strings[i]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.baracus.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes structured log events straight into a byte buffer, e.g. into the mapped segment of a
+ * RollingFileLogTarget. Implementations should avoid allocating per event.
+ */
+public interface LogEventEncoder {
+
+    /**
+     * encodes the event at the current position of the buffer and advances it
+     *
+     * @param tag    - the log tag
+     * @param event  - the event
+     * @param buffer - the target buffer
+     * @throws java.nio.BufferOverflowException - if the event does not fit into the remaining buffer,
+     *                                          the buffer position is undefined then
+     */
+    void encode(String tag, LogEvent event, ByteBuffer buffer);
+}
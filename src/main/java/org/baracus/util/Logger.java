@@ -2,6 +2,9 @@ package org.baracus.util;
 
 import android.util.Log;
 
+import java.io.Flushable;
+import java.io.IOException;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mnt
@@ -20,9 +23,39 @@ import android.util.Log;
  *
  * }
  *
+ * The effective level of a logger is resolved once and cached until the logging configuration
+ * changes. Messages are formatted only if the level is enabled, so disabled TRACE and DEBUG
+ * calls cost a field compare. In hot paths use the fixed arity trace and debug functions, they
+ * do not allocate the varargs array.
+ *
+ * For machine readable logs use the structured api, @see LogEvent :
+ *
+ * {@code
+ *  logger.atDebug().with("table", table).with("rows", rows).log("saved");
+ * }
+ *
  */
 public class Logger {
 
+    private static final int MAX_BUILDER_CAPACITY = 4096;
+
+    private static final ThreadLocal<LogEvent> events = new ThreadLocal<LogEvent>() {
+        @Override
+        protected LogEvent initialValue() {
+            return new LogEvent(true);
+        }
+    };
+
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    // incremented whenever the logging configuration changes, invalidates the cached levels
+    private static volatile int generation = 1;
+
     private static String TAG = "PLEASE SET TAG";
 
     private final String loggerId;
@@ -35,10 +68,13 @@ public class Logger {
         TRACE,
     }
 
-    private static LoggingConfiguration loggingConfiguration = new LoggingConfiguration();
+    private static volatile LoggingConfiguration loggingConfiguration = new LoggingConfiguration();
 
     private final Class<?> targetClass;
 
+    // the generation shifted left by 3 bits plus the ordinal of the effective level
+    private int cachedLevel = 0;
+
     private static LogTarget logTarget = new AndroidLogger();
 
     public static void enableTestLogger() {
@@ -67,6 +103,18 @@ public class Logger {
         public void trace(String tag, String msg);
     }
 
+    /**
+     * A log target receiving structured log events as they are, e.g. to encode them with a LogEventEncoder.
+     * Plain log targets receive structured events as "message key=value ..." text.
+     */
+    public static interface StructuredLogTarget extends LogTarget {
+        /**
+         * @param tag   - the tag
+         * @param event - the event, only valid until the function returns
+         */
+        public void log(String tag, LogEvent event);
+    }
+
     public static class AndroidLogger implements LogTarget {
         public void trace(String tag, String msg) {
             Log.v(tag, msg);
@@ -169,14 +217,75 @@ public class Logger {
         Logger.logTarget = logTarget;
     }
 
+    /**
+     * writes all buffered log entries, if the log target buffers them (e.g. the AsyncLogTarget)
+     */
+    public static void flush() {
+        LogTarget target = logTarget;
+        if (target instanceof Flushable) {
+            try {
+                ((Flushable) target).flush();
+            } catch (IOException e) {
+                target.error(TAG, "flushing the log target failed", e);
+            }
+        }
+    }
+
     final String processMessageArgs(final String message, final Object... args) {
-        String result = message;
-        for (int i = 0; i < args.length; ++i) {
-            result = result.replace("$" + (i + 1), String.valueOf(args[i]));
+        StringBuilder builder = new StringBuilder(message.length() + 16 * args.length);
+        appendMessage(builder, message, args);
+        return builder.toString();
+    }
+
+    /**
+     * replaces the $1 ... $n placeholders in a single pass. A placeholder takes as many digits
+     * as form a valid argument number, so "$10" with one argument becomes the argument plus "0".
+     * Placeholders without argument are kept.
+     */
+    private static void appendMessage(StringBuilder builder, final String message, final Object[] args) {
+        if (message == null) {
+            builder.append("null");
+            return;
+        }
+        int length = message.length();
+        int start = 0;
+        int dollar = args.length > 0 ? message.indexOf('$') : -1;
+        while (dollar >= 0) {
+            int number = 0;
+            int end = dollar + 1;
+            while (end < length) {
+                int digit = message.charAt(end) - '0';
+                if (digit < 0 || digit > 9 || number * 10 + digit > args.length || number == 0 && digit == 0) {
+                    break;
+                }
+                number = number * 10 + digit;
+                ++end;
+            }
+            if (number > 0) {
+                builder.append(message, start, dollar).append(args[number - 1]);
+                start = end;
+            }
+            dollar = message.indexOf('$', end > dollar + 1 ? end : dollar + 1);
+        }
+        builder.append(message, start, length);
+    }
+
+    private String format(final String message, final Object[] args) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        builder.append(loggerId).append(' ');
+        appendMessage(builder, message, args);
+        String result = builder.toString();
+        if (builder.capacity() > MAX_BUILDER_CAPACITY) {
+            builders.remove(); // do not keep huge buffers per thread
         }
         return result;
     }
 
+    private String format(final String message) {
+        return loggerId + " " + message;
+    }
+
     /**
      * Constructor. Pass class to log
      *
@@ -185,7 +294,9 @@ public class Logger {
     public Logger(Class<?> classToLog) {
         this.loggerId = classToLog.getSimpleName();
         this.targetClass = classToLog;
-        log(Level.DEBUG, loggerId + " was registered");
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(loggerId + " was registered", Level.DEBUG, null);
+        }
     }
 
     /**
@@ -196,6 +307,14 @@ public class Logger {
      */
     public static void setLoggingConfiguration(LoggingConfiguration loggingConfiguration) {
         Logger.loggingConfiguration = loggingConfiguration;
+        invalidateLevels();
+    }
+
+    /**
+     * drops the cached levels of all loggers, called whenever the logging configuration changes
+     */
+    static void invalidateLevels() {
+        generation++;
     }
 
     /**
@@ -207,99 +326,234 @@ public class Logger {
      * @param args
      */
     public void debug(final String message, final Object... args) {
-        if (!isLoggable(Level.DEBUG)) {
-            return;
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message, args), Level.DEBUG, null);
         }
-        log(Level.DEBUG, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void error(final String message, final Object... args) {
-        if (!isLoggable(Level.ERROR)) {
-            return;
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message, args), Level.ERROR, null);
         }
-        log(Level.ERROR, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void fatal(final String message, final Object... args) {
-        if (!isLoggable(Level.ERROR)) {
-            return;
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message, args), Level.ERROR, null);
         }
-        log(Level.ERROR, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void info(final String message, final Object... args) {
-        if (!isLoggable(Level.INFO)) {
-            return;
+        if (isLoggable(Level.INFO)) {
+            logMessage(format(message, args), Level.INFO, null);
         }
-        log(Level.INFO, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void trace(final String message, final Object... args) {
-        if (!isLoggable(Level.TRACE)) {
-            return;
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message, args), Level.TRACE, null);
         }
-        log(Level.TRACE, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void warn(final String message, final Object... args) {
-        if (!isLoggable(Level.WARN)) {
-            return;
+        if (isLoggable(Level.WARN)) {
+            logMessage(format(message, args), Level.WARN, null);
         }
-        log(Level.WARN, loggerId + " " + processMessageArgs(message, args));
     }
 
     public void debug(final String message) {
-        log(Level.DEBUG, loggerId + " " + message);
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message), Level.DEBUG, null);
+        }
     }
 
     public void error(final String message) {
-        log(Level.ERROR, loggerId + " " + message);
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message), Level.ERROR, null);
+        }
     }
 
     public void fatal(final String message) {
-        log(Level.ERROR, loggerId + " " + message);
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message), Level.ERROR, null);
+        }
     }
 
     public void info(final String message) {
-        log(Level.INFO, loggerId + " " + message);
+        if (isLoggable(Level.INFO)) {
+            logMessage(format(message), Level.INFO, null);
+        }
     }
 
     public void trace(final String message) {
-        log(Level.TRACE, loggerId + " " + message);
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message), Level.TRACE, null);
+        }
     }
 
     public void warn(final String message) {
-        log(Level.WARN, loggerId + " " + message);
+        if (isLoggable(Level.WARN)) {
+            logMessage(format(message), Level.WARN, null);
+        }
+    }
+
+
+    public void trace(final String message, final Object arg1) {
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message, new Object[]{arg1}), Level.TRACE, null);
+        }
     }
 
+    public void trace(final String message, final Object arg1, final Object arg2) {
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message, new Object[]{arg1, arg2}), Level.TRACE, null);
+        }
+    }
+
+    public void trace(final String message, final Object arg1, final Object arg2, final Object arg3) {
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message, new Object[]{arg1, arg2, arg3}), Level.TRACE, null);
+        }
+    }
+
+    public void debug(final String message, final Object arg1) {
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message, new Object[]{arg1}), Level.DEBUG, null);
+        }
+    }
+
+    public void debug(final String message, final Object arg1, final Object arg2) {
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message, new Object[]{arg1, arg2}), Level.DEBUG, null);
+        }
+    }
+
+    public void debug(final String message, final Object arg1, final Object arg2, final Object arg3) {
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message, new Object[]{arg1, arg2, arg3}), Level.DEBUG, null);
+        }
+    }
+
+    public LogEvent atTrace() {
+        return at(Level.TRACE);
+    }
+
+    public LogEvent atDebug() {
+        return at(Level.DEBUG);
+    }
+
+    public LogEvent atInfo() {
+        return at(Level.INFO);
+    }
+
+    public LogEvent atWarn() {
+        return at(Level.WARN);
+    }
+
+    public LogEvent atError() {
+        return at(Level.ERROR);
+    }
+
+    /**
+     * @return the thread's reusable event, a new one if a field value logs itself while the event is built
+     */
+    private LogEvent at(Level level) {
+        if (!isLoggable(level)) {
+            return LogEvent.DISABLED;
+        }
+        LogEvent event = events.get();
+        if (event.isInUse()) {
+            event = new LogEvent(true);
+        }
+        return event.start(this, level);
+    }
+
+    /**
+     * passes a structured event to the log target
+     */
+    void emit(LogEvent event) {
+        LogTarget target = logTarget;
+        if (target instanceof StructuredLogTarget) {
+            ((StructuredLogTarget) target).log(TAG, event);
+        } else {
+            StringBuilder builder = builders.get();
+            builder.setLength(0);
+            builder.append(loggerId).append(' ');
+            event.appendTo(builder);
+            String message = builder.toString();
+            if (builder.capacity() > MAX_BUILDER_CAPACITY) {
+                builders.remove();
+            }
+            logMessage(message, event.getLevel(), event.getThrowable());
+        }
+    }
+
+    String getLoggerId() {
+        return loggerId;
+    }
+
+    /**
+     * @return true, if trace messages of this logger are logged. Use it to guard expensive log arguments.
+     */
+    public boolean isTraceEnabled() {
+        return isLoggable(Level.TRACE);
+    }
+
+    /**
+     * @return true, if debug messages of this logger are logged. Use it to guard expensive log arguments.
+     */
+    public boolean isDebugEnabled() {
+        return isLoggable(Level.DEBUG);
+    }
 
     public void warn(final String message, Throwable e) {
-        log(Level.WARN, loggerId + " " + message, e);
+        if (isLoggable(Level.WARN)) {
+            logMessage(format(message), Level.WARN, e);
+        }
     }
 
     public void trace(final String message, Throwable e) {
-        log(Level.TRACE, loggerId + " " + message, e);
+        if (isLoggable(Level.TRACE)) {
+            logMessage(format(message), Level.TRACE, e);
+        }
     }
 
     public void info(final String message, Throwable e) {
-        log(Level.INFO, loggerId + " " + message, e);
+        if (isLoggable(Level.INFO)) {
+            logMessage(format(message), Level.INFO, e);
+        }
     }
 
     public void fatal(final String message, Throwable e) {
-        log(Level.ERROR, loggerId + " " + message, e);
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message), Level.ERROR, e);
+        }
     }
 
     public void error(final String message, Throwable e) {
-        log(Level.ERROR, loggerId + " " + message, e);
+        if (isLoggable(Level.ERROR)) {
+            logMessage(format(message), Level.ERROR, e);
+        }
     }
 
     public void debug(final String message, Throwable e) {
-        log(Level.DEBUG, loggerId + " " + message, e);
+        if (isLoggable(Level.DEBUG)) {
+            logMessage(format(message), Level.DEBUG, e);
+        }
     }
 
 
     private boolean isLoggable(Level l) {
-        return loggingConfiguration.isLoggable(this.targetClass.getPackage(), l);
+        int current = generation;
+        int cached = cachedLevel;
+        if (cached >>> 3 != current) {
+            // levels are ordered from ERROR to TRACE, racing threads resolve the same value
+            Package pack = targetClass.getPackage();
+            Level level = loggingConfiguration.getLogLevel(pack != null ? pack.getName() : "");
+            cached = current << 3 | level.ordinal();
+            cachedLevel = cached;
+        }
+        return l.ordinal() <= (cached & 7);
     }
 
 
@@ -346,18 +600,6 @@ public class Logger {
         }
     }
 
-    private void log(Level level, String message, Throwable e) {
-        if (isLoggable(level)) {
-            logMessage(message, level, e);
-        }
-    }
-
-    private void log(Level level, String message) {
-        if (isLoggable(level)) {
-            logMessage(message, level, null);
-        }
-    }
-
     public static void setTag(String TAG) {
         Logger.TAG = TAG;
     }
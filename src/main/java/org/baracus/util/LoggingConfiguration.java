@@ -1,22 +1,62 @@
 package org.baracus.util;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Logging configuration to define a package-hierarchical Logging
  *
+ * The configured levels are kept in an immutable trie of package name segments. Every modification
+ * copies the nodes on the path of the modified package and replaces the root, so lookups neither lock
+ * nor see a half modified configuration. A package inherits the level of its most specific configured
+ * parent package, "org.baracus" applies to "org.baracus.dao" but not to "org.baracusx".
+ *
  * Created by marcus on 02.11.2015.
  */
 public class LoggingConfiguration {
 
     public static final String DEFAULT = "<default>";
-    private final HashMap<String, Logger.Level> configuredMap = new HashMap<String, Logger.Level>(); // the package names configured by packages, classes and strings and their log levels
-    private final HashMap<String, Logger.Level> packageMap = new HashMap<String, Logger.Level>();    // the real package names determined by rolling up the inheritance tree. this is determined once and then reused ever and ever
+
+    /**
+     * A node of the package trie. The level is null, if the package has not been configured.
+     */
+    private static final class Node {
+        private final Logger.Level level;
+        private final Map<String, Node> children;
+
+        private Node(Logger.Level level, Map<String, Node> children) {
+            this.level = level;
+            this.children = children;
+        }
+
+        /**
+         * @return a copy of this node with the level set for the package starting at the passed offset
+         */
+        private Node with(String packageName, int offset, Logger.Level newLevel) {
+            if (offset >= packageName.length()) {
+                return new Node(newLevel, children);
+            }
+            int dot = packageName.indexOf('.', offset);
+            int end = dot >= 0 ? dot : packageName.length();
+            String segment = packageName.substring(offset, end);
+            Node child = children.get(segment);
+            if (child == null) {
+                child = EMPTY;
+            }
+            Map<String, Node> copy = new HashMap<String, Node>(children);
+            copy.put(segment, child.with(packageName, end + 1, newLevel));
+            return new Node(level, Collections.unmodifiableMap(copy));
+        }
+    }
+
+    private static final Node EMPTY = new Node(null, Collections.<String, Node>emptyMap());
+
+    private volatile Node root = new Node(Logger.Level.ERROR, EMPTY.children); // Default is only to log errors
 
 
     public LoggingConfiguration() {
-        configuredMap.put(DEFAULT, Logger.Level.ERROR);
-    } // Default is only to log errors
+    }
 
     /**
      * @param pack - the package Name
@@ -24,47 +64,34 @@ public class LoggingConfiguration {
      * @return true, if the package can produce a log on the passed level
      */
     public boolean isLoggable(Package pack, Logger.Level level) {
-        if (packageMap.containsKey(pack.getName())) {
-            return isLoggable(packageMap.get(pack.getName()), level);
-        } else {
-            determinePackageFromConfig(pack);
-            return isLoggable(packageMap.get(pack.getName()), level);
-        }
+        return isLoggable(getLogLevel(pack.getName()), level);
     }
 
     /**
-     * walk through all configured packages and find
-     *    a) an exact match in order to return
-     *    b) the closest package in relation to the passed package (criteria : the package prefixing the package with the most package
-     *    separators wins)
-     *
-     * in both cases - best match or direct match, the passed package will be associated with the determined log level.
-     *
-     * @param pack - the package
+     * walks down the trie along the segments of the package name and returns the level of the
+     * deepest configured package on the way, the default level if there is none.
      *
+     * @param packageName - the package name
+     * @return the effective log level of the package
      */
-    private void determinePackageFromConfig(Package pack) {
-        String bestMatch = null;
-        Logger.Level bestMatchLevel = null;
-        int bestMatchPrecision = 0;
-        for (String packageName:configuredMap.keySet()){
-            if (packageName.equals(pack.getName())){
-                packageMap.put(pack.getName(), configuredMap.get(packageName));
-                return;
-            } else if (pack.getName().startsWith(packageName)) {
-                int precision = packageName.split(".").length;
-                if (precision >= bestMatchPrecision) {
-                    bestMatch = packageName;
-                    bestMatchLevel = configuredMap.get(packageName);
-                }
+    public Logger.Level getLogLevel(String packageName) {
+        Node node = root;
+        Logger.Level result = node.level;
+        int offset = 0;
+        int length = packageName.length();
+        while (offset < length) {
+            int dot = packageName.indexOf('.', offset);
+            int end = dot >= 0 ? dot : length;
+            node = node.children.get(packageName.substring(offset, end));
+            if (node == null) {
+                break;
             }
+            if (node.level != null) {
+                result = node.level;
+            }
+            offset = end + 1;
         }
-
-        if (bestMatch != null) {
-            packageMap.put(pack.getName(), bestMatchLevel);
-        } else {
-            packageMap.put(pack.getName(), configuredMap.get(DEFAULT));
-        }
+        return result;
     }
 
     /**
@@ -95,7 +122,7 @@ public class LoggingConfiguration {
      * @param level - the level to be set
      */
     public void setLogLevel(Package p, Logger.Level level) {
-        configuredMap.put(p.getName(), level);
+        putLevel(p.getName(), level);
     }
 
     /**
@@ -104,7 +131,7 @@ public class LoggingConfiguration {
      * @param level - the level to be set
      */
     public void setLogLevel(Class <?> p, Logger.Level level) {
-        configuredMap.put(p.getPackage().getName(), level);
+        putLevel(p.getPackage().getName(), level);
     }
 
     /**
@@ -114,7 +141,7 @@ public class LoggingConfiguration {
      * @param level - the level to be set
      */
     public void setLogLevel(String packageName, Logger.Level level) {
-        configuredMap.put(packageName, level);
+        putLevel(packageName, level);
     }
 
     /**
@@ -123,15 +150,23 @@ public class LoggingConfiguration {
      * @param level
      */
     public void setDefaultLogLevel(Logger.Level level){
-        configuredMap.put(DEFAULT, level);
+        putLevel(DEFAULT, level);
+    }
+
+    private synchronized void putLevel(String packageName, Logger.Level level) {
+        if (DEFAULT.equals(packageName)) {
+            root = new Node(level, root.children);
+        } else {
+            root = root.with(packageName, 0, level);
+        }
+        reset();
     }
 
     /**
-     * Whenever you modify the Configuration during runtime, you should reset it. This will delete
-     * the cached per-package logging level by clearing the package map
+     * Makes all loggers resolve their level again. Setting a log level does this automatically.
      */
     public void reset() {
-        packageMap.clear();
+        Logger.invalidateLevels();
     }
 
 }
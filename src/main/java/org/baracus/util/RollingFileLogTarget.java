@@ -0,0 +1,559 @@
+package org.baracus.util;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log target writing compact text records into memory mapped segment files, so the log survives
+ * the process and can be pulled from the device without logcat.
+ * <p/>
+ * The active segment is a file of fixed size mapped into memory, a record is a plain memory copy.
+ * A segment is closed when it is full or older than the maximum age. Closed segments are truncated
+ * to their content and gzipped by a background thread. The oldest segments are deleted as soon as
+ * all segments together exceed the disk budget. Segments left open by a killed process are closed
+ * the same way when the target is created. The active segment is locked, so the active segments of
+ * other live targets, in this or another process, are never taken for orphans.
+ * <p/>
+ * Records have the format "yyyy-MM-dd HH:mm:ss.SSS L TAG message", followed by the stack trace if any.
+ * Writing is synchronized, wrap the target into an AsyncLogTarget to keep the callers from waiting :
+ * <p/>
+ * {@code
+ * RollingFileLogTarget file = new RollingFileLogTarget(new File(context.getFilesDir(), "logs"), 256 * 1024, 24 * 3600 * 1000L, 4 * 1024 * 1024);
+ * Logger.setLogTarget(new AsyncLogTarget(file, 1024, AsyncLogTarget.OverflowPolicy.DROP));
+ * }
+ * <p/>
+ * Structured log events are written as text as well, unless an encoder is set. An encoder writes
+ * all records, structured or plain, straight into the mapped segment, e.g. as JSON lines.
+ * <p/>
+ * Use DBBackup.exportLogs to copy the recent segments to the external storage.
+ */
+public class RollingFileLogTarget implements Logger.StructuredLogTarget, Flushable, Closeable {
+
+    static final String PREFIX = "log-";
+    static final String ACTIVE_SUFFIX = ".seg";
+    static final String CLOSED_SUFFIX = ".log";
+    static final String COMPRESSED_SUFFIX = ".log.gz";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] NEWLINE = {'\n'};
+    private static final char[] LEVEL_LETTERS = {'E', 'W', 'I', 'D', 'V'}; // by Logger.Level ordinal
+
+    // the active segments of all targets of this process. Closing any channel of a file releases the
+    // locks the process holds on it, so these files must not even be opened to probe their lock
+    private static final Set<String> liveSegments = Collections.synchronizedSet(new HashSet<String>());
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSegmentAge;
+    private final long diskBudget;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS ", Locale.US);
+    private final ExecutorService roller;
+
+    // guarded by this
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private File segmentName;
+    private long segmentStart = 0;
+    private boolean closed = false;
+    private LogEventEncoder encoder;
+    private final LogEvent plainEvent = new LogEvent(true);
+
+    /**
+     * @param directory     - the directory to keep the segments in, created if missing
+     * @param segmentSize   - the size of a segment in bytes
+     * @param maxSegmentAge - the age in millis after which a segment is closed, 0 to roll by size only
+     * @param diskBudget    - the maximum number of bytes of all segments including the active one
+     */
+    public RollingFileLogTarget(File directory, int segmentSize, long maxSegmentAge, long diskBudget) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024 bytes");
+        }
+        if (diskBudget < segmentSize) {
+            throw new IllegalArgumentException("diskBudget must be at least one segment");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegmentAge = maxSegmentAge;
+        this.diskBudget = diskBudget;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "baracus-log-roller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.roller = executor;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("cannot create log directory " + directory);
+        }
+        // segments of a killed process
+        for (final File orphan : listSegments(ACTIVE_SUFFIX)) {
+            roller.execute(new Runnable() {
+                @Override
+                public void run() {
+                    recover(orphan);
+                }
+            });
+        }
+        roller.execute(new Runnable() {
+            @Override
+            public void run() {
+                enforceBudget();
+            }
+        });
+    }
+
+    /**
+     * @return the directory holding the segments
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param encoder - the encoder for all records, null to write text records
+     */
+    public synchronized void setEncoder(LogEventEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    @Override
+    public synchronized void log(String tag, LogEvent event) {
+        if (closed) {
+            return;
+        }
+        if (encoder != null) {
+            encode(tag, event);
+        } else {
+            StringBuilder builder = new StringBuilder(128);
+            builder.append(event.getLoggerId()).append(' ');
+            event.appendTo(builder);
+            write(event.getLevel(), tag, builder.toString(), event.getThrowable());
+        }
+    }
+
+    private void encode(String tag, LogEvent event) {
+        long now = event.getTimestamp();
+        try {
+            if (segment != null && maxSegmentAge > 0 && now - segmentStart > maxSegmentAge) {
+                roll();
+            }
+            for (int attempt = 0; attempt < 2; ++attempt) {
+                if (segment == null) {
+                    open(now);
+                }
+                int position = segment.position();
+                try {
+                    encoder.encode(tag, event, segment);
+                    return;
+                } catch (BufferOverflowException e) {
+                    // wipe the partial record, then retry in a new segment
+                    segment.position(position);
+                    while (segment.hasRemaining()) {
+                        segment.put((byte) 0);
+                    }
+                    segment.position(position);
+                    if (position == 0) {
+                        return; // larger than a segment, lost
+                    }
+                    roll();
+                }
+            }
+        } catch (IOException e) {
+            // a log target must not break the application, the record is lost. open cleans up
+            // after itself and roll does not fail, so no segment is left open
+        }
+    }
+
+    private synchronized void write(Logger.Level level, String tag, String msg, Throwable t) {
+        if (closed) {
+            return;
+        }
+        if (encoder != null) {
+            encode(tag, plainEvent.startPlain(level, msg, t));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        StringBuilder builder = new StringBuilder(64 + (msg != null ? msg.length() : 4));
+        builder.append(dateFormat.format(new Date(now)));
+        builder.append(LEVEL_LETTERS[level.ordinal()]).append(' ').append(tag).append(' ').append(msg);
+        if (t != null) {
+            StringWriter trace = new StringWriter();
+            t.printStackTrace(new PrintWriter(trace));
+            builder.append('\n').append(trace.toString().trim());
+        }
+        byte[] record = builder.toString().getBytes(UTF8);
+        int length = Math.min(record.length, segmentSize - 1);
+        try {
+            if (segment != null && (segment.remaining() < length + 1 || maxSegmentAge > 0 && now - segmentStart > maxSegmentAge)) {
+                roll();
+            }
+            if (segment == null) {
+                open(now);
+            }
+            segment.put(record, 0, length);
+            segment.put(NEWLINE);
+        } catch (IOException e) {
+            // a log target must not break the application, the record is lost. open cleans up
+            // after itself and roll does not fail, so no segment is left open
+        }
+    }
+
+    private void open(long now) throws IOException {
+        long start = Math.max(now, segmentStart + 1); // unique file names
+        File file = new File(directory, PREFIX + start + ACTIVE_SUFFIX);
+        liveSegments.add(file.getAbsolutePath());
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // held until the segment is closed, marks the segment as live for other processes
+            if (raf.getChannel().tryLock() == null) {
+                throw new IOException(file + " is locked");
+            }
+            raf.setLength(segmentSize);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            closeQuietly(raf);
+            liveSegments.remove(file.getAbsolutePath());
+            file.delete();
+            throw e;
+        }
+        segmentFile = raf;
+        segmentName = file;
+        segmentStart = start;
+    }
+
+    /**
+     * closes the active segment and hands it to the roller. Never fails, a segment which can not be
+     * closed cleanly is compressed with the content written so far.
+     */
+    private void roll() {
+        final File file = segmentName;
+        final int length = segment.position();
+        RandomAccessFile raf = segmentFile;
+        segment.force();
+        segment = null;
+        segmentFile = null;
+        segmentName = null;
+        closeQuietly(raf);
+        liveSegments.remove(file.getAbsolutePath());
+        roller.execute(new Runnable() {
+            @Override
+            public void run() {
+                compress(file, length);
+                enforceBudget();
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // the descriptor is released anyway
+        }
+    }
+
+    /**
+     * truncates a closed segment to its content and gzips it
+     */
+    private void compress(File file, long length) {
+        String name = file.getName();
+        String base = name.substring(0, name.length() - ACTIVE_SUFFIX.length());
+        File closedFile = new File(directory, base + CLOSED_SUFFIX);
+        File compressedFile = new File(directory, base + COMPRESSED_SUFFIX);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+            if (!file.renameTo(closedFile)) {
+                return;
+            }
+            InputStream in = new FileInputStream(closedFile);
+            OutputStream out = null;
+            try {
+                out = new GZIPOutputStream(new FileOutputStream(compressedFile));
+                byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+                if (out != null) {
+                    out.close();
+                }
+            }
+            closedFile.delete();
+        } catch (IOException e) {
+            // keep the uncompressed segment, it is counted by the budget anyway
+            compressedFile.delete();
+        }
+    }
+
+    /**
+     * closes a segment left open by a killed process. Segments still locked by a live target are
+     * left alone, truncating a file another target has mapped would crash it on its next write.
+     */
+    private void recover(File orphan) {
+        if (liveSegments.contains(orphan.getAbsolutePath())) {
+            return;
+        }
+        long length;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(orphan, "rw");
+            try {
+                FileLock lock;
+                try {
+                    lock = raf.getChannel().tryLock();
+                } catch (OverlappingFileLockException e) {
+                    lock = null;
+                }
+                if (lock == null) {
+                    return; // the active segment of another process
+                }
+                length = trimmedLength(raf);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return;
+        }
+        compress(orphan, length);
+    }
+
+    /**
+     * @return the length of an orphaned segment without the zero padding of the mapping
+     */
+    private static long trimmedLength(RandomAccessFile raf) throws IOException {
+        byte[] buffer = new byte[4096];
+        long position = raf.length();
+        while (position > 0) {
+            int chunk = (int) Math.min(buffer.length, position);
+            raf.seek(position - chunk);
+            raf.readFully(buffer, 0, chunk);
+            for (int i = chunk - 1; i >= 0; --i) {
+                if (buffer[i] != 0) {
+                    return position - chunk + i + 1;
+                }
+            }
+            position -= chunk;
+        }
+        return 0;
+    }
+
+    /**
+     * deletes the oldest closed segments until all segments fit into the disk budget
+     */
+    private void enforceBudget() {
+        List<File> closedSegments = listSegments(CLOSED_SUFFIX, COMPRESSED_SUFFIX);
+        long total = segmentSize; // the active segment
+        for (File file : closedSegments) {
+            total += file.length();
+        }
+        for (Iterator<File> it = closedSegments.iterator(); total > diskBudget && it.hasNext(); ) {
+            File oldest = it.next();
+            long length = oldest.length();
+            if (oldest.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * @return the segments with one of the passed suffixes, oldest first
+     */
+    List<File> listSegments(final String... suffixes) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                if (!name.startsWith(PREFIX) || file.isDirectory()) {
+                    return false;
+                }
+                for (String suffix : suffixes) {
+                    if (name.endsWith(suffix)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        List<File> result = files != null ? new ArrayList<File>(Arrays.asList(files)) : new ArrayList<File>();
+        Collections.sort(result, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long left = startOf(lhs);
+                long right = startOf(rhs);
+                return left < right ? -1 : left == right ? 0 : 1;
+            }
+        });
+        return result;
+    }
+
+    private static long startOf(File file) {
+        String name = file.getName();
+        int end = name.indexOf('.', PREFIX.length());
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), end));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * copies the most recent segments into the target directory. The active segment is copied
+     * with its current content, closed segments are copied as they are (gzipped, once compressed).
+     *
+     * @param target      - the target directory, created if missing
+     * @param maxSegments - the maximum number of segments to copy, including the active one
+     * @return the number of bytes copied
+     * @throws IOException - if copying fails
+     */
+    public long exportTo(File target, int maxSegments) throws IOException {
+        if (!target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("cannot create " + target);
+        }
+        long size = 0;
+        byte[] active = null;
+        String activeName = null;
+        synchronized (this) {
+            if (segment != null) {
+                segment.force();
+                int length = segment.position();
+                active = new byte[length];
+                MappedByteBuffer copy = (MappedByteBuffer) segment.duplicate();
+                copy.position(0);
+                copy.get(active, 0, length);
+                String name = segmentName.getName();
+                activeName = name.substring(0, name.length() - ACTIVE_SUFFIX.length()) + CLOSED_SUFFIX;
+            }
+        }
+        List<File> segments = listSegments(CLOSED_SUFFIX, COMPRESSED_SUFFIX);
+        int closedSegments = Math.max(0, active != null ? maxSegments - 1 : maxSegments);
+        int first = Math.max(0, segments.size() - closedSegments);
+        for (File file : segments.subList(first, segments.size())) {
+            size += copy(file, new File(target, file.getName()));
+        }
+        if (active != null && maxSegments > 0) {
+            OutputStream out = new FileOutputStream(new File(target, activeName));
+            try {
+                out.write(active);
+            } finally {
+                out.close();
+            }
+            size += active.length;
+        }
+        return size;
+    }
+
+    private static long copy(File source, File target) throws IOException {
+        FileChannel src = null;
+        FileChannel dst = null;
+        try {
+            src = new FileInputStream(source).getChannel();
+            dst = new FileOutputStream(target).getChannel();
+            long size = src.size();
+            dst.transferFrom(src, 0, size);
+            return size;
+        } catch (FileNotFoundException e) {
+            return 0; // deleted by the budget meanwhile
+        } finally {
+            if (src != null) {
+                src.close();
+            }
+            if (dst != null) {
+                dst.close();
+            }
+        }
+    }
+
+    /**
+     * writes the active segment to the disk
+     */
+    @Override
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * closes the active segment, later records are ignored
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (segment != null) {
+                roll();
+            }
+            roller.shutdown();
+        }
+    }
+
+    /**
+     * waits for the background compression, for tests
+     */
+    boolean awaitRoller(long millis) throws InterruptedException {
+        return roller.awaitTermination(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void debug(String tag, String msg, Throwable t) {
+        write(Logger.Level.DEBUG, tag, msg, t);
+    }
+
+    public void debug(String tag, String msg) {
+        write(Logger.Level.DEBUG, tag, msg, null);
+    }
+
+    public void info(String tag, String msg, Throwable t) {
+        write(Logger.Level.INFO, tag, msg, t);
+    }
+
+    public void info(String tag, String msg) {
+        write(Logger.Level.INFO, tag, msg, null);
+    }
+
+    public void warn(String tag, String msg, Throwable t) {
+        write(Logger.Level.WARN, tag, msg, t);
+    }
+
+    public void warn(String tag, String msg) {
+        write(Logger.Level.WARN, tag, msg, null);
+    }
+
+    public void error(String tag, String msg, Throwable t) {
+        write(Logger.Level.ERROR, tag, msg, t);
+    }
+
+    public void error(String tag, String msg) {
+        write(Logger.Level.ERROR, tag, msg, null);
+    }
+
+    public void trace(String tag, String msg, Throwable t) {
+        write(Logger.Level.TRACE, tag, msg, t);
+    }
+
+    public void trace(String tag, String msg) {
+        write(Logger.Level.TRACE, tag, msg, null);
+    }
+}
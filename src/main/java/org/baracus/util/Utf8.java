@@ -0,0 +1,46 @@
+package org.baracus.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoding straight into byte buffers, without the temporary arrays of String.getBytes
+ */
+final class Utf8 {
+
+    private Utf8() {
+        // Utility class constructor
+    }
+
+    /**
+     * writes the character at the index, a surrogate pair as one code point
+     *
+     * @return the index of the last character consumed
+     */
+    static int put(ByteBuffer buffer, String value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++index));
+            buffer.put((byte) (0xf0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3f))
+                    .put((byte) (0x80 | codePoint >> 6 & 0x3f)).put((byte) (0x80 | codePoint & 0x3f));
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            buffer.put((byte) '?'); // unpaired surrogate
+        } else {
+            buffer.put((byte) (0xe0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3f)).put((byte) (0x80 | c & 0x3f));
+        }
+        return index;
+    }
+
+    /**
+     * writes the whole string
+     */
+    static void put(ByteBuffer buffer, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            i = put(buffer, value, i);
+        }
+    }
+}
@@ -0,0 +1,643 @@
+package org.baracus.context;
+
+import org.baracus.annotations.Bean;
+import org.baracus.lifecycle.Destroyable;
+import org.baracus.lifecycle.Initializeable;
+import org.baracus.lifecycle.Resettable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the constructor injection, the scopes and the thread safety of the bean container
+ */
+public class BeanContainerTest {
+
+    public static class Repository {
+    }
+
+    public static class Service {
+        private final Repository repository;
+
+        public Service() {
+            this(null);
+        }
+
+        public Service(Repository repository) {
+            this.repository = repository;
+        }
+    }
+
+    public static class Controller {
+        private final Service service;
+        private final Repository repository;
+
+        public Controller(Service service, Repository repository) {
+            this.service = service;
+            this.repository = repository;
+        }
+    }
+
+    public static class Unregistered {
+    }
+
+    /**
+     * injection target, stands in for an activity in the re-injection
+     */
+    public static class Consumer {
+        private Repository repository;
+        private Service service;
+        private Unregistered unregistered;
+    }
+
+    public static class Greedy {
+        private final Repository repository;
+
+        public Greedy(Repository repository) {
+            this.repository = repository;
+        }
+
+        public Greedy(Repository repository, Unregistered unregistered) {
+            throw new IllegalStateException("Unregistered is no bean");
+        }
+    }
+
+    public static class Ambiguous {
+        private final Object bean;
+
+        public Ambiguous(Service service) {
+            this.bean = service;
+        }
+
+        public Ambiguous(Repository repository) {
+            this.bean = repository;
+        }
+    }
+
+    public static class Chicken {
+        public Chicken(Egg egg) {
+        }
+    }
+
+    public static class Egg {
+        public Egg(Chicken chicken) {
+        }
+    }
+
+    public static class Generated {
+        private final Repository repository;
+        private final boolean byFactory;
+
+        public Generated(Repository repository, boolean byFactory) {
+            this.repository = repository;
+            this.byFactory = byFactory;
+        }
+    }
+
+    @Bean(scope = Bean.Scope.PROTOTYPE)
+    public static class Worker {
+        private final Repository repository;
+
+        public Worker(Repository repository) {
+            this.repository = repository;
+        }
+    }
+
+    @Bean(scope = Bean.Scope.PROTOTYPE, poolSize = 1)
+    public static class PooledWorker implements Resettable, Destroyable {
+        private int uses;
+        private boolean destroyed;
+
+        @Override
+        public void reset() {
+            uses = 0;
+        }
+
+        @Override
+        public void onDestroy() {
+            destroyed = true;
+        }
+    }
+
+    @Bean(scope = Bean.Scope.THREAD)
+    public static class ThreadState implements Destroyable {
+        private volatile boolean destroyed;
+
+        @Override
+        public void onDestroy() {
+            destroyed = true;
+        }
+    }
+
+    @Bean(scope = Bean.Scope.ACTIVITY)
+    public static class ActivityState implements Destroyable {
+        private boolean destroyed;
+
+        @Override
+        public void onDestroy() {
+            destroyed = true;
+        }
+    }
+
+    /**
+     * stands in for an activity, the android.jar activity can not be created outside a device
+     */
+    public static class Screen implements ActivityScopeOwner {
+        private ActivityState state;
+
+        @Override
+        public Object getScopeOwner() {
+            return this;
+        }
+    }
+
+    @Bean(lazy = true)
+    public static class LazyRepository implements Initializeable, Destroyable {
+        private int postConstructs;
+        private boolean destroyed;
+
+        @Override
+        public void postConstruct() {
+            postConstructs++;
+        }
+
+        @Override
+        public void onDestroy() {
+            destroyed = true;
+        }
+    }
+
+    /**
+     * eager bean with an injection point taking a lazy bean
+     */
+    public static class LazyClient {
+        private LazyRepository repository;
+    }
+
+    /**
+     * eager bean requesting a lazy bean in its own post construction
+     */
+    public static class Starter implements Initializeable {
+        // no injection point, the bean must not be created by the injection
+        private Object repository;
+
+        @Override
+        public void postConstruct() {
+            repository = (LazyRepository) current.getInstance(LazyRepository.class, null);
+        }
+    }
+
+    public interface Store {
+    }
+
+    @Bean(lazy = true)
+    public static class LazyStore implements Store, Initializeable, Destroyable {
+        private int postConstructs;
+        private int destroys;
+
+        @Override
+        public void postConstruct() {
+            postConstructs++;
+        }
+
+        @Override
+        public void onDestroy() {
+            destroys++;
+        }
+    }
+
+    private final BeanContainer container = new BeanContainer();
+
+    // the container of the running test, for beans calling back into it
+    private static BeanContainer current;
+
+    @Before
+    public void setUp() {
+        current = container;
+    }
+
+    @After
+    public void tearDown() {
+        container.shutdownContext();
+        container.clearRegistrations();
+    }
+
+    private void start() {
+        container.createInstances();
+        container.performInjections();
+        container.performPostConstuct();
+    }
+
+    @Test
+    public void testConstructorInjection() {
+        // registered before their dependencies on purpose
+        container.registerBeanClass(Controller.class);
+        container.registerBeanClass(Service.class);
+        container.registerBeanClass(Repository.class);
+        container.createInstances();
+
+        Controller controller = (Controller) BeanContainer.beanMap.get(Controller.class.getName());
+        Repository repository = (Repository) BeanContainer.beanMap.get(Repository.class.getName());
+        assertNotNull(repository);
+        assertSame(repository, controller.repository);
+        assertSame(BeanContainer.beanMap.get(Service.class.getName()), controller.service);
+        assertSame(repository, controller.service.repository);
+    }
+
+    @Test
+    public void testGreediestResolvableConstructor() {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(Greedy.class);
+        container.createInstances();
+
+        Greedy greedy = (Greedy) BeanContainer.beanMap.get(Greedy.class.getName());
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), greedy.repository);
+    }
+
+    @Test
+    public void testConstructorTieIsBrokenByTypeNames() {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(Service.class);
+        container.registerBeanClass(Ambiguous.class);
+        container.createInstances();
+
+        // BeanContainerTest$Repository sorts before BeanContainerTest$Service
+        Ambiguous ambiguous = (Ambiguous) BeanContainer.beanMap.get(Ambiguous.class.getName());
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), ambiguous.bean);
+    }
+
+    @Test
+    public void testGeneratedFactory() {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(Generated.class);
+        container.createInstances();
+
+        Generated generated = (Generated) BeanContainer.beanMap.get(Generated.class.getName());
+        assertTrue(generated.byFactory);
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), generated.repository);
+    }
+
+    @Test
+    public void testParallelConstructorInjection() {
+        BeanContainer.setStartupThreads(4);
+        try {
+            container.registerBeanClass(Controller.class);
+            container.registerBeanClass(Service.class);
+            container.registerBeanClass(Repository.class);
+            container.createInstances();
+
+            Controller controller = (Controller) BeanContainer.beanMap.get(Controller.class.getName());
+            assertSame(BeanContainer.beanMap.get(Service.class.getName()), controller.service);
+            assertSame(BeanContainer.beanMap.get(Repository.class.getName()), controller.repository);
+        } finally {
+            BeanContainer.setStartupThreads(1);
+        }
+    }
+
+    @Test
+    public void testConstructorCycle() {
+        container.registerBeanClass(Chicken.class);
+        container.registerBeanClass(Egg.class);
+        try {
+            container.createInstances();
+            fail("cycle not detected");
+        } catch (Exceptions.IntantiationException e) {
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof Exceptions.CyclicDependencyException)) {
+                cause = cause.getCause();
+            }
+            assertNotNull(cause);
+        }
+    }
+
+    @Test
+    public void testPrototype() {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(Worker.class);
+        container.createInstances();
+        container.performInjections();
+
+        assertNull(BeanContainer.beanMap.get(Worker.class.getName()));
+        Worker first = (Worker) container.getInstance(Worker.class, null);
+        Worker second = (Worker) container.getInstance(Worker.class, null);
+        assertNotSame(first, second);
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), first.repository);
+        assertSame(first.repository, second.repository);
+    }
+
+    @Test
+    public void testPool() {
+        container.registerBeanClass(PooledWorker.class);
+        container.createInstances();
+
+        PooledWorker first = (PooledWorker) container.getInstance(PooledWorker.class, null);
+        PooledWorker second = (PooledWorker) container.getInstance(PooledWorker.class, null);
+        first.uses = 3;
+        container.releaseBean(first);
+        container.releaseBean(second); // pool is full
+
+        assertTrue(second.destroyed);
+        PooledWorker reused = (PooledWorker) container.getInstance(PooledWorker.class, null);
+        assertSame(first, reused);
+        assertEquals(0, reused.uses);
+        assertNotSame(first, container.getInstance(PooledWorker.class, null));
+    }
+
+    @Test
+    public void testThreadScope() throws InterruptedException {
+        container.registerBeanClass(ThreadState.class);
+        container.createInstances();
+
+        final Object mine = container.getInstance(ThreadState.class, null);
+        assertSame(mine, container.getInstance(ThreadState.class, null));
+
+        final Object[] other = new Object[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = container.getInstance(ThreadState.class, null);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(mine, other[0]);
+
+        BeanContainer.releaseThreadBeans();
+        assertNotSame(mine, container.getInstance(ThreadState.class, null));
+    }
+
+    @Test
+    public void testShutdownDestroysThreadBeansOfAllThreads() throws InterruptedException {
+        container.registerBeanClass(ThreadState.class);
+        container.createInstances();
+
+        ThreadState mine = (ThreadState) container.getInstance(ThreadState.class, null);
+        final ThreadState[] other = new ThreadState[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = (ThreadState) container.getInstance(ThreadState.class, null);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        container.shutdownContext();
+        assertTrue(mine.destroyed);
+        assertTrue(other[0].destroyed);
+    }
+
+    @Test
+    public void testActivityScope() {
+        container.registerBeanClass(ActivityState.class);
+        container.createInstances();
+
+        Screen first = new Screen();
+        Screen second = new Screen();
+        container.performInjection(first);
+        container.performInjection(second);
+        assertNotNull(first.state);
+        assertNotSame(first.state, second.state);
+
+        BeanContainer.setCurrentActivity(first);
+        assertSame(first.state, container.getInstance(ActivityState.class, null));
+
+        BeanContainer.destroyActivityBeans(first);
+        assertTrue(first.state.destroyed);
+        assertFalse(second.state.destroyed);
+    }
+
+    @Test
+    public void testLazyBeanCreatedOnFirstUse() {
+        container.registerBeanClass(LazyRepository.class);
+        start();
+        assertNull(BeanContainer.beanMap.get(LazyRepository.class.getName()));
+
+        // what BeanContainer.getBean does for a registered bean which is not created yet
+        LazyRepository repository = (LazyRepository) container.getInstance(LazyRepository.class, null);
+        assertNotNull(repository);
+        assertSame(repository, BeanContainer.beanMap.get(LazyRepository.class.getName()));
+        assertSame(repository, container.getInstance(LazyRepository.class, null));
+        assertEquals(1, repository.postConstructs);
+    }
+
+    @Test
+    public void testLazyBeanCreatedForInjectionPoint() {
+        container.registerBeanClass(LazyRepository.class);
+        container.registerBeanClass(LazyClient.class);
+        start();
+
+        LazyClient client = (LazyClient) BeanContainer.beanMap.get(LazyClient.class.getName());
+        assertNotNull(client.repository);
+        assertSame(client.repository, BeanContainer.beanMap.get(LazyRepository.class.getName()));
+        assertEquals(1, client.repository.postConstructs);
+    }
+
+    @Test
+    public void testLazyBeanCreatedInPostConstruct() {
+        container.registerBeanClass(LazyRepository.class);
+        container.registerBeanClass(Starter.class);
+        start();
+
+        Starter starter = (Starter) BeanContainer.beanMap.get(Starter.class.getName());
+        assertEquals(1, ((LazyRepository) starter.repository).postConstructs);
+    }
+
+    @Test
+    public void testLazyBeanCreatedInParallelPostConstruct() {
+        BeanContainer.setStartupThreads(4);
+        try {
+            container.registerBeanClass(LazyRepository.class);
+            container.registerBeanClass(Starter.class);
+            container.registerBeanClass(Repository.class);
+            container.registerBeanClass(Service.class);
+            start();
+
+            Starter starter = (Starter) BeanContainer.beanMap.get(Starter.class.getName());
+            assertEquals(1, ((LazyRepository) starter.repository).postConstructs);
+        } finally {
+            BeanContainer.setStartupThreads(1);
+        }
+    }
+
+    @Test
+    public void testLazyInterfaceBinding() {
+        container.registerBeanClass(Store.class, LazyStore.class);
+        start();
+        assertNull(BeanContainer.beanMap.get(LazyStore.class.getName()));
+
+        LazyStore store = (LazyStore) container.getInstance(Store.class, null);
+        assertSame(store, container.getInstance(LazyStore.class, null));
+        assertEquals(1, store.postConstructs);
+
+        container.shutdownContext();
+        assertEquals(1, store.destroys);
+    }
+
+    @Test
+    public void testLazyInterfaceBindingOfCreatedImplementation() {
+        container.registerBeanClass(Store.class, LazyStore.class);
+        start();
+
+        LazyStore store = (LazyStore) container.getInstance(LazyStore.class, null);
+        assertSame(store, container.getInstance(Store.class, null));
+        assertEquals(1, store.postConstructs);
+    }
+
+    @Test
+    public void testLazyBeanDestruction() {
+        container.registerBeanClass(LazyRepository.class);
+        container.registerBeanClass(LazyClient.class);
+        start();
+        LazyRepository repository = ((LazyClient) BeanContainer.beanMap.get(LazyClient.class.getName())).repository;
+
+        container.shutdownContext();
+        assertTrue(repository.destroyed);
+        assertNull(BeanContainer.beanMap.get(LazyRepository.class.getName()));
+    }
+
+    @Test
+    public void testInjectionPlan() {
+        container.registerBeanClass(Repository.class);
+        container.createInstances();
+
+        Consumer consumer = new Consumer();
+        container.performInjection(consumer);
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), consumer.repository);
+        assertNull(consumer.service);
+
+        BeanContainer.InjectionPoint[] plan = container.getInjectionPlan(Consumer.class);
+        assertEquals(1, plan.length);
+        assertSame(plan, container.getInjectionPlan(Consumer.class));
+
+        // replacing the instance of a registered class keeps the plan
+        container.holdBean(Repository.class, new Repository());
+        assertSame(plan, container.getInjectionPlan(Consumer.class));
+
+        // a new bean class drops it
+        container.registerBeanClass(Service.class);
+        container.createInstances();
+        assertNotSame(plan, container.getInjectionPlan(Consumer.class));
+        assertEquals(2, container.getInjectionPlan(Consumer.class).length);
+
+        container.performInjection(consumer);
+        assertSame(BeanContainer.beanMap.get(Repository.class.getName()), consumer.repository);
+        assertSame(BeanContainer.beanMap.get(Service.class.getName()), consumer.service);
+        assertNull(consumer.unregistered);
+    }
+
+    @Test
+    public void testReinjectionOfActivities() {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(ActivityState.class);
+        container.createInstances();
+
+        Consumer consumer = new Consumer();
+        Screen screen = new Screen();
+        BeanContainer.activeActivitiesMap.put(Consumer.class, consumer);
+        BeanContainer.activeActivitiesMap.put(Screen.class, screen);
+        try {
+            container.treatKnownUiComponents();
+            ActivityState state = screen.state;
+            assertNotNull(state);
+
+            Repository replacement = new Repository();
+            container.holdBean(Repository.class, replacement);
+            container.treatKnownUiComponents();
+            assertSame(replacement, consumer.repository);
+            assertSame(state, screen.state);    // each activity keeps its own scope
+        } finally {
+            BeanContainer.activeActivitiesMap.remove(Consumer.class);
+            BeanContainer.activeActivitiesMap.remove(Screen.class);
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsWhileReplacingBeans() throws InterruptedException {
+        container.registerBeanClass(Repository.class);
+        container.registerBeanClass(Service.class);
+        container.createInstances();
+        final Object repository = BeanContainer.getBean(Repository.class);
+        assertNotNull(repository);
+
+        final int readers = 4;
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(readers + 1);
+
+        for (int i = 0; i < readers; ++i) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            if (BeanContainer.getBean(Repository.class) != repository) {
+                                throw new AssertionError("stable bean not visible");
+                            }
+                            for (Object bean : BeanContainer.beanMap.values()) {
+                                if (bean != null && bean != repository && !(bean instanceof Service)) {
+                                    throw new AssertionError("unexpected bean " + bean);
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        // the writer replaces a bean like replaceManagedActivityImplementation does
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 20000; ++i) {
+                        container.removeBean(Service.class);
+                        container.holdBean(Service.class, new Service(null));
+                        // what addActiveActivity does, with a plain object instead of an activity
+                        BeanContainer.activeActivitiesMap.put(Screen.class, new Screen());
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    running.set(false);
+                    done.countDown();
+                }
+            }
+        }).start();
+
+        done.await();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(BeanContainer.getBean(Service.class) instanceof Service);
+    }
+}
+
+/**
+ * stands in for the factory the BeanFactoryProcessor generates for BeanContainerTest.Generated
+ */
+final class BeanContainerTest_GeneratedBeanFactory implements BeanFactory<BeanContainerTest.Generated> {
+
+    private static final Class<?>[] DEPENDENCIES = {BeanContainerTest.Repository.class};
+
+    @Override
+    public Class<?>[] getDependencies() {
+        return DEPENDENCIES;
+    }
+
+    @Override
+    public BeanContainerTest.Generated create(Object[] dependencies) {
+        return new BeanContainerTest.Generated((BeanContainerTest.Repository) dependencies[0], true);
+    }
+}
@@ -0,0 +1,84 @@
+package org.baracus.context;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the dependency aware StartupScheduler
+ */
+public class StartupSchedulerTest {
+
+    private static Map<String, List<String>> deps(String... pairs) {
+        Map<String, List<String>> result = new IdentityHashMap<String, List<String>>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            List<String> list = result.get(pairs[i]);
+            if (list == null) {
+                list = new ArrayList<String>();
+                result.put(pairs[i], list);
+            }
+            list.add(pairs[i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testDependencyOrder() {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        List<String> items = Arrays.asList("a", "b", "c", "d", "e");
+        // a <- b <- d, a <- c <- d, e independent
+        new StartupScheduler<String>(4).runAll(items, deps("b", "a", "c", "a", "d", "b", "d", "c"), new StartupScheduler.Task<String>() {
+            @Override
+            public void run(String item) {
+                finished.add(item);
+            }
+        });
+
+        assertEquals(5, finished.size());
+        assertTrue(finished.indexOf("a") < finished.indexOf("b"));
+        assertTrue(finished.indexOf("a") < finished.indexOf("c"));
+        assertTrue(finished.indexOf("b") < finished.indexOf("d"));
+        assertTrue(finished.indexOf("c") < finished.indexOf("d"));
+    }
+
+    @Test
+    public void testCyclesRunSequentiallyAtTheEnd() {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        List<String> items = Arrays.asList("a", "b", "c", "d");
+        // b <-> c is a cycle, d depends on the cycle
+        new StartupScheduler<String>(2).runAll(items, deps("b", "c", "c", "b", "d", "c"), new StartupScheduler.Task<String>() {
+            @Override
+            public void run(String item) {
+                finished.add(item);
+                threads.add(Thread.currentThread().getName());
+            }
+        });
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), finished);
+        String caller = Thread.currentThread().getName();
+        assertEquals(Arrays.asList(caller, caller, caller), threads.subList(1, 4));
+    }
+
+    @Test
+    public void testFirstFailureIsRethrown() {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            new StartupScheduler<String>(3).runAll(Arrays.asList("a", "b", "c"), deps(), new StartupScheduler.Task<String>() {
+                @Override
+                public void run(String item) {
+                    if (!"a".equals(item)) {
+                        throw new IllegalStateException(item);
+                    }
+                    finished.add(item);
+                }
+            });
+            fail("expected a failure");
+        } catch (IllegalStateException e) {
+            assertEquals("b", e.getMessage());
+        }
+        assertEquals(Arrays.asList("a"), finished);
+    }
+}
@@ -0,0 +1,71 @@
+package org.baracus.context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the StartupTracer
+ */
+public class StartupTracerTest {
+
+    @Before
+    public void setUp() {
+        StartupTracer.setEnabled(true);
+        StartupTracer.reset();
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    @Test
+    public void testRecordAndQuery() {
+        long context = StartupTracer.begin();
+        long start = StartupTracer.begin();
+        spin(2000000);
+        StartupTracer.end(StartupTracer.Phase.INSTANTIATION, "SlowBean", start);
+        start = StartupTracer.begin();
+        StartupTracer.end(StartupTracer.Phase.INSTANTIATION, "FastBean", start);
+        start = StartupTracer.begin();
+        StartupTracer.end(StartupTracer.Phase.POST_CONSTRUCT, "FastBean", start);
+        StartupTracer.end(StartupTracer.Phase.CONTEXT, "initApplicationContext", context);
+
+        assertEquals(4, StartupTracer.getSpans().size());
+        assertEquals(2, StartupTracer.getSpans(StartupTracer.Phase.INSTANTIATION).size());
+        assertTrue(StartupTracer.getTotalNanos(StartupTracer.Phase.INSTANTIATION) >= 2000000);
+
+        List<StartupTracer.Span> slowest = StartupTracer.getSlowest(1);
+        assertEquals(1, slowest.size());
+        assertEquals("SlowBean", slowest.get(0).getName());
+    }
+
+    @Test
+    public void testDisabled() {
+        StartupTracer.setEnabled(false);
+        long start = StartupTracer.begin();
+        StartupTracer.end(StartupTracer.Phase.INJECTION, "Bean", start);
+        StartupTracer.setEnabled(true);
+        assertTrue(StartupTracer.getSpans().isEmpty());
+    }
+
+    @Test
+    public void testChromeTrace() throws Exception {
+        long start = StartupTracer.begin();
+        StartupTracer.end(StartupTracer.Phase.INJECTION, "org.acme.\"Quoted\"Bean", start);
+
+        StringWriter out = new StringWriter();
+        StartupTracer.writeChromeTrace(out);
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.contains("\"name\":\"org.acme.\\\"Quoted\\\"Bean\",\"cat\":\"INJECTION\",\"ph\":\"X\""));
+        assertTrue(json.trim().endsWith("\"displayTimeUnit\":\"ms\"}"));
+    }
+}
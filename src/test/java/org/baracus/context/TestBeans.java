@@ -0,0 +1,29 @@
+package org.baracus.context;
+
+/**
+ * Test fixture : places bean instances into the bean registry, so BaracusApplicationContext.getBean
+ * finds them without a started context. Call clear after the test.
+ */
+public final class TestBeans {
+
+    private static final BeanContainer container = new BeanContainer();
+
+    private TestBeans() {
+    }
+
+    /**
+     * @param clazz - the bean class
+     * @param bean  - the bean returned by getBean(clazz)
+     */
+    public static void hold(Class<?> clazz, Object bean) {
+        container.holdBean(clazz, bean);
+    }
+
+    /**
+     * drops all beans and registrations
+     */
+    public static void clear() {
+        container.shutdownContext();
+        container.clearRegistrations();
+    }
+}
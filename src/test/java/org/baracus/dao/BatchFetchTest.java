@@ -0,0 +1,216 @@
+package org.baracus.dao;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import org.baracus.context.TestBeans;
+import org.baracus.orm.Field;
+import org.baracus.orm.FieldList;
+import org.baracus.orm.LazyCollection;
+import org.baracus.orm.ModelBase;
+import org.baracus.orm.Reference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.baracus.orm.ModelBase.idCol;
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the batch fetching of lazy references and collections
+ */
+public class BatchFetchTest {
+
+    /**
+     * an item referencing its parent item
+     */
+    public static class Item extends ModelBase {
+        static final Field parentIdCol = new Field("parent_id", 1);
+        static final Field nameCol = new Field("name", 2);
+        static final FieldList fieldList = new FieldList(Item.class.getSimpleName());
+
+        static {
+            fieldList.add(ModelBase.fieldList);
+            fieldList.add(parentIdCol);
+            fieldList.add(nameCol);
+        }
+
+        Long parentId;
+        String name;
+
+        public Item() {
+            super("item");
+        }
+    }
+
+    /**
+     * answers the IN queries from in-memory rows {id, parent id, name} and records their sizes
+     */
+    public static class InMemoryDao extends BaseDao<Item> {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        final List<Integer> queries = new ArrayList<Integer>();
+
+        private final RowMapper<Item> rowMapper = new RowMapper<Item>() {
+            @Override
+            public Item from(Cursor c) {
+                Item result = new Item();
+                result.setId(c.getLong(idCol.fieldIndex));
+                result.parentId = c.getLong(Item.parentIdCol.fieldIndex);
+                result.name = c.getString(Item.nameCol.fieldIndex);
+                result.setTransient(false);
+                return result;
+            }
+
+            @Override
+            public String getAffectedTable() {
+                return "item";
+            }
+
+            @Override
+            public FieldList getFieldList() {
+                return Item.fieldList;
+            }
+
+            @Override
+            public Field getNameField() {
+                return Item.nameCol;
+            }
+
+            @Override
+            public ContentValues getContentValues(Item item) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        public InMemoryDao() {
+            super(Item.class);
+        }
+
+        @Override
+        public RowMapper<Item> getRowMapper() {
+            return rowMapper;
+        }
+
+        @Override
+        Cursor queryIn(Field field, List<Long> values) {
+            queries.add(values.size());
+            List<Object[]> result = new ArrayList<Object[]>();
+            for (Object[] row : rows) {
+                if (values.contains(row[field.fieldIndex])) {
+                    result.add(row.clone());
+                }
+            }
+            return RowCursor.over(result);
+        }
+    }
+
+    private final InMemoryDao dao = new InMemoryDao();
+
+    @Before
+    public void setUp() {
+        for (long id = 1; id <= 2000; ++id) {
+            dao.rows.add(new Object[]{id, id / 2, "item" + id});
+        }
+        TestBeans.hold(InMemoryDao.class, dao);
+    }
+
+    @After
+    public void tearDown() {
+        TestBeans.clear();
+        dao.setBatchFetchSize(1);
+    }
+
+    private static List<Reference<Item>> references(long... ids) {
+        List<Reference<Item>> result = new ArrayList<Reference<Item>>();
+        BatchFetchScope scope = BatchFetchScope.open();
+        try {
+            for (long id : ids) {
+                result.add(BaseDao.createLazyReference(InMemoryDao.class, id));
+            }
+        } finally {
+            scope.close();
+        }
+        return result;
+    }
+
+    @Test
+    public void testOneQueryPerGroup() {
+        dao.setBatchFetchSize(100);
+        List<Reference<Item>> references = references(1, 2, 3, 2, 4);
+        for (Reference<Item> reference : references) {
+            assertEquals(reference.getObjectRefId(), reference.getObject().getId());
+        }
+        assertEquals(1, dao.queries.size());
+        assertEquals(4, dao.queries.get(0).intValue());
+        // both references to 2 got the same instance
+        assertSame(references.get(1).getObject(), references.get(3).getObject());
+    }
+
+    @Test
+    public void testBatchSizeLimitsTheGroup() {
+        dao.setBatchFetchSize(2);
+        for (Reference<Item> reference : references(1, 2, 3, 4, 5)) {
+            assertNotNull(reference.getObject());
+        }
+        assertEquals(3, dao.queries.size());
+        assertEquals(2, dao.queries.get(0).intValue());
+        assertEquals(1, dao.queries.get(2).intValue());
+    }
+
+    @Test
+    public void testResolvedEntriesAreDropped() {
+        dao.setBatchFetchSize(100);
+        BatchFetchScope scope = BatchFetchScope.open();
+        try {
+            Reference<Item> first = BaseDao.createLazyReference(InMemoryDao.class, 1L);
+            assertEquals("item1", first.getObject().name);
+            dao.rows.get(0)[2] = "changed";
+
+            // a reference created after the first one has been resolved reads the current row
+            Reference<Item> second = BaseDao.createLazyReference(InMemoryDao.class, 1L);
+            assertEquals("changed", second.getObject().name);
+            assertEquals(2, dao.queries.size());
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testOneQueryPerCollectionGroup() {
+        dao.setBatchFetchSize(100);
+        List<LazyCollection<Item>> collections = new ArrayList<LazyCollection<Item>>();
+        BatchFetchScope scope = BatchFetchScope.open();
+        try {
+            for (long id = 1; id <= 10; ++id) {
+                collections.add(BaseDao.createLazyCollection(InMemoryDao.class, Item.parentIdCol, id));
+            }
+        } finally {
+            scope.close();
+        }
+        for (LazyCollection<Item> collection : collections) {
+            assertEquals(2, collection.size());     // the children 2 * id and 2 * id + 1
+        }
+        assertEquals(1, dao.queries.size());
+        assertEquals(10, dao.queries.get(0).intValue());
+    }
+
+    @Test
+    public void testInQueriesAreChunked() {
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 1; id <= 2000; ++id) {
+            ids.add(id);
+        }
+        assertEquals(2000, dao.getByIds(ids).size());
+        assertEquals(3, dao.queries.size());
+        assertEquals(StatementCache.MAX_VARIABLES, dao.queries.get(0).intValue());
+        assertEquals(StatementCache.MAX_VARIABLES, dao.queries.get(1).intValue());
+        assertEquals(2000 - 2 * StatementCache.MAX_VARIABLES, dao.queries.get(2).intValue());
+
+        dao.queries.clear();
+        assertEquals(1000, dao.getByForeignKeys(Item.parentIdCol, ids).size());
+        assertEquals(3, dao.queries.size());
+        assertEquals(StatementCache.MAX_VARIABLES, dao.queries.get(0).intValue());
+    }
+}
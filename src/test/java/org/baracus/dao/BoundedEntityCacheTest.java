@@ -0,0 +1,78 @@
+package org.baracus.dao;
+
+import org.baracus.annotations.Cached;
+import org.baracus.model.ConfigurationParameter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the BoundedEntityCache
+ */
+public class BoundedEntityCacheTest {
+
+    private static ConfigurationParameter probe(long id) {
+        ConfigurationParameter result = new ConfigurationParameter();
+        result.setId(id);
+        result.setConfigParameter("param" + id);
+        return result;
+    }
+
+    @Test
+    public void testLruEviction() {
+        BoundedEntityCache<ConfigurationParameter> candidate = new BoundedEntityCache<ConfigurationParameter>(Cached.Eviction.LRU, 2, 0);
+        ConfigurationParameter one = probe(1);
+        candidate.put(1L, one);
+        candidate.put(2L, probe(2));
+        assertSame(one, candidate.get(1L));     // 2 is the least recently used one now
+        candidate.put(3L, probe(3));
+        assertEquals(2, candidate.size());
+        assertNull(candidate.get(2L));
+        assertSame(one, candidate.get(1L));
+        assertNotNull(candidate.get(3L));
+    }
+
+    @Test
+    public void testLfuEviction() {
+        BoundedEntityCache<ConfigurationParameter> candidate = new BoundedEntityCache<ConfigurationParameter>(Cached.Eviction.LFU, 2, 0);
+        candidate.put(1L, probe(1));
+        candidate.put(2L, probe(2));
+        candidate.get(1L);
+        candidate.get(1L);
+        candidate.get(2L);
+        candidate.put(3L, probe(3));
+        assertNotNull(candidate.get(1L));
+        assertNull(candidate.get(2L));
+        assertNotNull(candidate.get(3L));
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        BoundedEntityCache<ConfigurationParameter> candidate = new BoundedEntityCache<ConfigurationParameter>(Cached.Eviction.LRU, 100, 0, 250, new BoundedEntityCache.Weigher<ConfigurationParameter>() {
+            @Override
+            public long weigh(ConfigurationParameter item) {
+                return 100;
+            }
+        });
+        candidate.put(1L, probe(1));
+        candidate.put(2L, probe(2));
+        candidate.put(3L, probe(3));
+        assertEquals(2, candidate.size());
+        assertEquals(200, candidate.getWeight());
+        assertNull(candidate.get(1L));
+    }
+
+    @Test
+    public void testTtlAndClear() throws Exception {
+        BoundedEntityCache<ConfigurationParameter> candidate = new BoundedEntityCache<ConfigurationParameter>(Cached.Eviction.LRU, 10, 20);
+        candidate.put("param1", probe(1));
+        assertNotNull(candidate.get("param1"));
+        Thread.sleep(40);
+        assertNull(candidate.get("param1"));
+
+        candidate.put(1L, probe(1));
+        candidate.clear();
+        assertEquals(0, candidate.size());
+        assertNull(candidate.get(1L));
+    }
+}
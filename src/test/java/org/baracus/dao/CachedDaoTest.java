@@ -0,0 +1,67 @@
+package org.baracus.dao;
+
+import org.baracus.model.ConfigurationParameter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the second level cache of a DAO
+ */
+public class CachedDaoTest {
+
+    private static MemoryConfigurationDao dao() {
+        MemoryConfigurationDao result = new MemoryConfigurationDao();
+        result.insert(1, "color", "red");
+        return result;
+    }
+
+    @Test
+    public void testHitsAreAnsweredFromTheCache() {
+        MemoryConfigurationDao dao = dao();
+        ConfigurationParameter first = dao.getById(1L);
+        assertSame(first, dao.getById(1L));
+        ConfigurationParameter byName = dao.getByName("color");
+        assertSame(byName, dao.getByName("color"));
+        assertEquals(2, dao.reads);     // one by id, one by name
+
+        BaseDao.invalidateEntityCache(ConfigurationParameter.class);
+        assertNotSame(first, dao.getById(1L));
+        assertEquals(3, dao.reads);
+    }
+
+    @Test
+    public void testStaleRowIsNotCachedById() {
+        final MemoryConfigurationDao dao = dao();
+        dao.duringRead = new Runnable() {
+            @Override
+            public void run() {
+                // a writer saves and invalidates while the row is read
+                dao.update(1, "blue");
+                BaseDao.invalidateEntityCache(ConfigurationParameter.class);
+            }
+        };
+        assertEquals("red", dao.getById(1L).getConfigParameterValue());
+        assertEquals("blue", dao.getById(1L).getConfigParameterValue());
+        assertEquals(2, dao.reads);
+        assertEquals("blue", dao.getById(1L).getConfigParameterValue());
+        assertEquals(2, dao.reads);
+    }
+
+    @Test
+    public void testStaleRowIsNotCachedByName() {
+        final MemoryConfigurationDao dao = dao();
+        dao.duringRead = new Runnable() {
+            @Override
+            public void run() {
+                dao.update(1, "blue");
+                BaseDao.invalidateEntityCache(ConfigurationParameter.class);
+            }
+        };
+        assertEquals("red", dao.getByName("color").getConfigParameterValue());
+        assertEquals("blue", dao.getByName("color").getConfigParameterValue());
+        assertEquals(2, dao.reads);
+        assertEquals("blue", dao.getByName("color").getConfigParameterValue());
+        assertEquals(2, dao.reads);
+    }
+}
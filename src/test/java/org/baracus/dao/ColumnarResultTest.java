@@ -0,0 +1,67 @@
+package org.baracus.dao;
+
+import org.baracus.orm.Field;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for reading projections into a ColumnarResult
+ */
+public class ColumnarResultTest {
+
+    private static final Field createdCol = new Field("created", 1);
+    private static final Field amountCol = new Field("amount", 2);
+    private static final Field countryCol = new Field("country", 3);
+    private static final Field quantityCol = new Field("quantity", 4);
+
+    private static final ColumnarResult.ColumnType[] TYPES = {
+            ColumnarResult.ColumnType.LONG,
+            ColumnarResult.ColumnType.DOUBLE,
+            ColumnarResult.ColumnType.STRING,
+            ColumnarResult.ColumnType.INT};
+
+    private static final Field[] FIELDS = {createdCol, amountCol, countryCol, quantityCol};
+
+    @Test
+    public void testColumns() {
+        ColumnarResult result = ColumnarResult.read(RowCursor.over(new Object[][]{
+                {1000L, 9.5, "DE", 1},
+                {2000L, 0.5, "FR", 2},
+                {3000L, 1.0, "DE", 3}
+        }), FIELDS, TYPES);
+
+        assertEquals(3, result.size());
+        assertArrayEquals(new long[]{1000L, 2000L, 3000L}, result.getLongs(createdCol));
+        assertEquals(11.0, result.getDoubles(amountCol)[0] + result.getDoubles(amountCol)[1] + result.getDoubles(amountCol)[2], 0.0001);
+        assertArrayEquals(new int[]{1, 2, 3}, result.getInts(quantityCol));
+
+        ColumnarResult.DictionaryColumn countries = result.getStrings(countryCol);
+        assertArrayEquals(new String[]{"DE", "FR"}, countries.getDictionary());
+        assertArrayEquals(new int[]{0, 1, 0}, countries.getCodes());
+        assertEquals("FR", countries.get(1));
+    }
+
+    @Test
+    public void testNulls() {
+        ColumnarResult result = ColumnarResult.read(RowCursor.over(new Object[][]{
+                {null, 1.0, null, 7},
+                {5L, null, "DE", 8}
+        }), FIELDS, TYPES);
+
+        assertTrue(result.isNull(createdCol, 0));
+        assertFalse(result.isNull(createdCol, 1));
+        assertTrue(result.isNull(amountCol, 1));
+        assertFalse(result.isNull(quantityCol, 0));
+        assertEquals(0L, result.getLongs(createdCol)[0]);
+        assertEquals(-1, result.getStrings(countryCol).getCodes()[0]);
+        assertNull(result.getStrings(countryCol).get(0));
+        assertEquals(1, result.getStrings(countryCol).getDictionary().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() {
+        ColumnarResult result = ColumnarResult.read(RowCursor.over(new Object[][]{{1L, 1.0, "DE", 1}}), FIELDS, TYPES);
+        result.getInts(createdCol);
+    }
+}
@@ -0,0 +1,71 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.annotations.Cached;
+import org.baracus.model.ConfigurationParameter;
+import org.baracus.orm.Field;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.baracus.model.ConfigurationParameter.configParamCol;
+import static org.baracus.orm.LegacyModelBase.idCol;
+
+/**
+ * Test fixture : a configuration DAO answering getUniqueByField from in-memory rows. The rows
+ * are mapped through mapRow, so a running unit of work is honored.
+ */
+class MemoryConfigurationDao extends ConfigurationDao {
+
+    final List<Object[]> rows = new ArrayList<Object[]>();
+
+    /**
+     * the number of rows read by getUniqueByField
+     */
+    int reads = 0;
+
+    /**
+     * run once after the next row has been read, but before it is mapped
+     */
+    Runnable duringRead;
+
+    MemoryConfigurationDao() {
+        // @Cached is not inherited
+        setEntityCache(new BoundedEntityCache<ConfigurationParameter>(ConfigurationDao.class.getAnnotation(Cached.class)));
+    }
+
+    void insert(long id, String key, String value) {
+        rows.add(new Object[]{id, key, value});
+    }
+
+    void update(long id, String value) {
+        for (Object[] row : rows) {
+            if (row[idCol.fieldIndex].equals(id)) {
+                row[2] = value;
+            }
+        }
+    }
+
+    @Override
+    public ConfigurationParameter getUniqueByField(Field field, String value) {
+        Object[] match = null;
+        for (Object[] row : rows) {
+            if (field == idCol && String.valueOf(row[idCol.fieldIndex]).equals(value)
+                    || field == configParamCol && value.equals(row[configParamCol.fieldIndex])) {
+                match = row.clone();
+            }
+        }
+        reads++;
+        Runnable action = duringRead;
+        duringRead = null;
+        if (action != null) {
+            action.run();
+        }
+        if (match == null) {
+            return null;
+        }
+        Cursor c = RowCursor.over(match);
+        c.moveToNext();
+        return mapRow(c);
+    }
+}
@@ -0,0 +1,122 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+import org.baracus.model.ConfigurationParameter;
+import org.baracus.orm.Field;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.baracus.model.ConfigurationParameter.configParamCol;
+import static org.baracus.model.ConfigurationParameter.configParamValueCol;
+import static org.baracus.orm.LegacyModelBase.idCol;
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the keyset pager
+ */
+public class PagerTest {
+
+    /**
+     * dao evaluating the page selection the way SQLite does : NULL sorts first and never
+     * matches a comparison
+     */
+    static class TableDao extends ConfigurationDao {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        int queries = 0;
+
+        void insert(long id, String key) {
+            Object[] row = new Object[Math.max(idCol.fieldIndex, Math.max(configParamCol.fieldIndex, configParamValueCol.fieldIndex)) + 1];
+            row[idCol.fieldIndex] = id;
+            row[configParamCol.fieldIndex] = key;
+            rows.add(row);
+        }
+
+        @Override
+        Cursor queryPage(Field orderField, String afterKey, Long afterId, int limit) {
+            if (++queries > 100) {
+                throw new IllegalStateException("The pager does not terminate");
+            }
+            final int keyIndex = orderField.fieldIndex;
+            String selection = pageSelection(orderField.fieldName, idCol.fieldName, false, afterKey != null, afterId != null);
+            boolean notNull = selection != null && selection.contains(" IS NOT NULL");
+
+            List<Object[]> sorted = new ArrayList<Object[]>(rows);
+            Collections.sort(sorted, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] left, Object[] right) {
+                    String leftKey = (String) left[keyIndex];
+                    String rightKey = (String) right[keyIndex];
+                    int result = leftKey == null ? (rightKey == null ? 0 : -1) : (rightKey == null ? 1 : leftKey.compareTo(rightKey));
+                    return result != 0 ? result : ((Long) left[idCol.fieldIndex]).compareTo((Long) right[idCol.fieldIndex]);
+                }
+            });
+
+            List<Object[]> page = new ArrayList<Object[]>();
+            for (Object[] row : sorted) {
+                String key = (String) row[keyIndex];
+                long id = (Long) row[idCol.fieldIndex];
+                boolean matches;
+                if (afterKey != null) {
+                    matches = key != null && (key.compareTo(afterKey) > 0 || afterId != null && key.equals(afterKey) && id > afterId);
+                } else {
+                    matches = !notNull || key != null;
+                }
+                if (matches && page.size() < limit) {
+                    page.add(row);
+                }
+            }
+            return RowCursor.over(page);
+        }
+    }
+
+    @Test
+    public void testSelection() {
+        assertNull(BaseDao.pageSelection("id", "id", true, false, false));
+        assertEquals("id > ?", BaseDao.pageSelection("id", "id", true, true, false));
+        assertEquals("name IS NOT NULL", BaseDao.pageSelection("name", "id", false, false, false));
+        assertEquals("(name > ?) OR (name = ? AND id > ?)", BaseDao.pageSelection("name", "id", false, true, true));
+    }
+
+    @Test
+    public void testSkipsNullKeys() {
+        TableDao dao = new TableDao();
+        dao.insert(1, null);
+        dao.insert(2, "b");
+        dao.insert(3, null);
+        dao.insert(4, "a");
+        dao.insert(5, "b");
+        dao.insert(6, null);
+
+        Pager<ConfigurationParameter> pager = dao.pager(configParamCol, 2);
+        List<Long> ids = new ArrayList<Long>();
+        while (pager.hasNext()) {
+            for (ConfigurationParameter item : pager.next()) {
+                assertNotNull(item.getConfigParameter());
+                ids.add(item.getId());
+            }
+        }
+        assertEquals(3, ids.size());
+        assertEquals(Long.valueOf(4), ids.get(0));
+        assertEquals(Long.valueOf(2), ids.get(1));
+        assertEquals(Long.valueOf(5), ids.get(2));
+    }
+
+    @Test
+    public void testFullPageOfNullKeysTerminates() {
+        TableDao dao = new TableDao();
+        for (long id = 1; id <= 4; ++id) {
+            dao.insert(id, null);
+        }
+
+        Pager<ConfigurationParameter> pager = dao.pager(configParamCol, 2);
+        int items = 0;
+        while (pager.hasNext()) {
+            items += pager.next().size();
+        }
+        assertEquals(0, items);
+    }
+}
@@ -0,0 +1,58 @@
+package org.baracus.dao;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.baracus.model.ConfigurationParameter.configParamCol;
+import static org.baracus.model.ConfigurationParameter.configParamValueCol;
+import static org.baracus.orm.LegacyModelBase.idCol;
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the canonical SQL rendering of the Query builder
+ */
+public class QueryTest {
+
+    private final ConfigurationDao dao = new ConfigurationDao();
+
+    @Test
+    public void testRendering() {
+        String sql = dao.select()
+                .eq(configParamCol, "a")
+                .eq(configParamValueCol, null)
+                .between(idCol, 1, 10)
+                .orderBy(configParamCol, true)
+                .limit(5)
+                .toSql();
+        assertEquals("SELECT id,config_parameter,config_parameter_value FROM configuration"
+                + " WHERE config_parameter = ? AND config_parameter_value IS NULL AND id BETWEEN ? AND ?"
+                + " ORDER BY config_parameter DESC LIMIT ?", sql);
+    }
+
+    @Test
+    public void testSameShapeSameSql() {
+        String first = dao.select().like(configParamCol, "a%").in(idCol, 1L, 2L, 3L).toSql();
+        String second = dao.select().like(configParamCol, "b%").in(idCol, Arrays.asList(7L, 8L, 9L, 10L)).toSql();
+        assertSame(first, second);
+        assertTrue(first.endsWith("id IN (?,?,?,?)"));
+    }
+
+    @Test
+    public void testDistinct() {
+        String sql = dao.select().distinct().eq(configParamCol, "a").toSql();
+        assertEquals("SELECT DISTINCT id,config_parameter,config_parameter_value FROM configuration"
+                + " WHERE config_parameter = ?", sql);
+        assertFalse(sql.equals(dao.select().eq(configParamCol, "a").toSql()));
+    }
+
+    @Test
+    public void testPadding() {
+        assertEquals(0, Query.paddedSize(0));
+        assertEquals(1, Query.paddedSize(1));
+        assertEquals(2, Query.paddedSize(2));
+        assertEquals(4, Query.paddedSize(3));
+        assertEquals(512, Query.paddedSize(300));
+        assertEquals(900, Query.paddedSize(900));
+    }
+}
@@ -0,0 +1,110 @@
+package org.baracus.dao;
+
+import android.database.Cursor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test fixture : a cursor over in-memory rows. A row is an array of column values indexed by
+ * the column index, null is NULL. Numeric getters return 0 for NULL like SQLite does.
+ * <p/>
+ * Only the navigation and getter calls made by the framework are supported, all other calls
+ * throw an UnsupportedOperationException.
+ */
+public final class RowCursor implements InvocationHandler {
+
+    private final List<Object[]> rows;
+    private int position = -1;
+    private boolean closed = false;
+
+    private RowCursor(List<Object[]> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * @param rows - the rows
+     * @return a cursor placed before the first row
+     */
+    public static Cursor over(List<Object[]> rows) {
+        return (Cursor) Proxy.newProxyInstance(Cursor.class.getClassLoader(), new Class[]{Cursor.class}, new RowCursor(rows));
+    }
+
+    /**
+     * @param rows - the rows
+     * @return a cursor placed before the first row
+     */
+    public static Cursor over(Object[]... rows) {
+        return over(Arrays.asList(rows));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getCount".equals(name)) {
+            return rows.size();
+        } else if ("getPosition".equals(name)) {
+            return position;
+        } else if ("moveToNext".equals(name)) {
+            return moveTo(position + 1);
+        } else if ("moveToFirst".equals(name)) {
+            return moveTo(0);
+        } else if ("moveToPosition".equals(name)) {
+            return moveTo((Integer) args[0]);
+        } else if ("isBeforeFirst".equals(name)) {
+            return rows.isEmpty() || position < 0;
+        } else if ("isAfterLast".equals(name)) {
+            return rows.isEmpty() || position >= rows.size();
+        } else if ("isFirst".equals(name)) {
+            return !rows.isEmpty() && position == 0;
+        } else if ("isLast".equals(name)) {
+            return !rows.isEmpty() && position == rows.size() - 1;
+        } else if ("isNull".equals(name)) {
+            return value(args) == null;
+        } else if ("getLong".equals(name)) {
+            return number(args).longValue();
+        } else if ("getInt".equals(name)) {
+            return number(args).intValue();
+        } else if ("getShort".equals(name)) {
+            return number(args).shortValue();
+        } else if ("getDouble".equals(name)) {
+            return number(args).doubleValue();
+        } else if ("getFloat".equals(name)) {
+            return number(args).floatValue();
+        } else if ("getString".equals(name)) {
+            Object value = value(args);
+            return value != null ? String.valueOf(value) : null;
+        } else if ("getBlob".equals(name)) {
+            return value(args);
+        } else if ("close".equals(name)) {
+            closed = true;
+            return null;
+        } else if ("isClosed".equals(name)) {
+            return closed;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    private boolean moveTo(int newPosition) {
+        position = Math.max(-1, Math.min(newPosition, rows.size()));
+        return position >= 0 && position < rows.size();
+    }
+
+    private Object value(Object[] args) {
+        if (closed) {
+            throw new IllegalStateException("The cursor is closed");
+        }
+        if (position < 0 || position >= rows.size()) {
+            throw new IllegalStateException("The cursor is not placed on a row : " + position);
+        }
+        return rows.get(position)[(Integer) args[0]];
+    }
+
+    private Number number(Object[] args) {
+        Object value = value(args);
+        return value != null ? (Number) value : Integer.valueOf(0);
+    }
+}
@@ -0,0 +1,158 @@
+package org.baracus.dao;
+
+import org.baracus.model.ConfigurationParameter;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the UnitOfWork and its interplay with the second level cache
+ */
+public class UnitOfWorkTest {
+
+    @After
+    public void tearDown() {
+        UnitOfWork.setTransactionScoped(false);
+        while (UnitOfWork.current() != null) {
+            UnitOfWork.current().close();
+        }
+    }
+
+    private static ConfigurationParameter probe(long id) {
+        ConfigurationParameter result = new ConfigurationParameter();
+        result.setId(id);
+        return result;
+    }
+
+    private static MemoryConfigurationDao dao() {
+        MemoryConfigurationDao result = new MemoryConfigurationDao();
+        result.insert(1, "color", "red");
+        result.insert(2, "size", "XL");
+        return result;
+    }
+
+    @Test
+    public void testNesting() {
+        assertNull(UnitOfWork.current());
+        UnitOfWork outer = UnitOfWork.begin();
+        UnitOfWork inner = UnitOfWork.begin();
+        assertSame(outer, inner);
+
+        ConfigurationParameter one = probe(1);
+        outer.put(ConfigurationParameter.class, 1L, one);
+        inner.close();
+        assertSame(outer, UnitOfWork.current());
+        assertSame(one, outer.getIfKnown(ConfigurationParameter.class, 1L));
+
+        outer.close();
+        assertNull(UnitOfWork.current());
+        assertNull(outer.getIfKnown(ConfigurationParameter.class, 1L));
+    }
+
+    @Test
+    public void testCounters() {
+        long totalHits = UnitOfWork.getTotalHits();
+        long totalMisses = UnitOfWork.getTotalMisses();
+        UnitOfWork uow = UnitOfWork.begin();
+        try {
+            assertNull(uow.get(ConfigurationParameter.class, 1L));
+            uow.put(ConfigurationParameter.class, 1L, probe(1));
+            assertNotNull(uow.get(ConfigurationParameter.class, 1L));
+            assertNotNull(uow.getIfKnown(ConfigurationParameter.class, 1L));
+            assertNull(uow.getIfKnown(ConfigurationParameter.class, 2L));
+
+            assertEquals(2, uow.getHits());
+            assertEquals(1, uow.getMisses());
+            assertEquals(totalHits + 2, UnitOfWork.getTotalHits());
+            assertEquals(totalMisses + 1, UnitOfWork.getTotalMisses());
+        } finally {
+            uow.close();
+        }
+    }
+
+    @Test
+    public void testRemoveAndEvict() {
+        UnitOfWork uow = UnitOfWork.begin();
+        try {
+            uow.put(ConfigurationParameter.class, 1L, probe(1));
+            uow.put(ConfigurationParameter.class, 2L, probe(2));
+            uow.remove(ConfigurationParameter.class, 1L);
+            assertNull(uow.getIfKnown(ConfigurationParameter.class, 1L));
+            assertNotNull(uow.getIfKnown(ConfigurationParameter.class, 2L));
+            uow.evict(ConfigurationParameter.class);
+            assertNull(uow.getIfKnown(ConfigurationParameter.class, 2L));
+        } finally {
+            uow.close();
+        }
+    }
+
+    @Test
+    public void testTransactionScoped() {
+        assertNull(UnitOfWork.beginTransaction());
+        assertNull(UnitOfWork.current());
+
+        UnitOfWork.setTransactionScoped(true);
+        assertTrue(UnitOfWork.isTransactionScoped());
+        UnitOfWork outer = UnitOfWork.beginTransaction();
+        assertNotNull(outer);
+        UnitOfWork nested = UnitOfWork.beginTransaction();
+        assertSame(outer, nested);
+        nested.close();
+        assertSame(outer, UnitOfWork.current());
+        outer.close();
+        assertNull(UnitOfWork.current());
+    }
+
+    @Test
+    public void testIdentityWithCacheHits() {
+        MemoryConfigurationDao dao = dao();
+        ConfigurationParameter cached = dao.getById(1L);   // fills the second level cache
+
+        UnitOfWork uow = UnitOfWork.begin();
+        try {
+            ConfigurationParameter first = dao.getById(1L);
+            assertSame(cached, first);
+            assertSame(first, dao.getById(1L));
+            assertEquals(1, dao.reads);
+            assertSame(first, dao.getByName("color"));      // read by name, mapped to the known instance
+            assertEquals(2, dao.reads);
+        } finally {
+            uow.close();
+        }
+    }
+
+    @Test
+    public void testGetByNameJoinsTheUnitOfWork() {
+        MemoryConfigurationDao dao = dao();
+        ConfigurationParameter cachedByName = dao.getByName("size");
+
+        UnitOfWork uow = UnitOfWork.begin();
+        try {
+            ConfigurationParameter byId = dao.getById(2L);
+            assertNotSame(cachedByName, byId);
+            assertSame(byId, dao.getByName("size"));    // the cache hit is replaced by the known instance
+        } finally {
+            uow.close();
+        }
+    }
+
+    @Test
+    public void testUnitOfWorkInstancesAreNotCached() {
+        MemoryConfigurationDao dao = dao();
+        ConfigurationParameter inside;
+        UnitOfWork uow = UnitOfWork.begin();
+        try {
+            inside = dao.getById(1L);
+            inside.setConfigParameterValue("unsaved");
+            assertSame(inside, dao.getByName("color"));
+        } finally {
+            uow.close();
+        }
+
+        ConfigurationParameter outside = dao.getById(1L);
+        assertNotSame(inside, outside);
+        assertEquals("red", outside.getConfigParameterValue());
+        assertEquals("red", dao.getByName("color").getConfigParameterValue());
+    }
+}
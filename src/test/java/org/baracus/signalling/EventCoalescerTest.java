@@ -0,0 +1,197 @@
+package org.baracus.signalling;
+
+import org.baracus.model.ConfigurationParameter;
+import org.baracus.orm.AbstractModelBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the coalescing of change events per batch
+ */
+public class EventCoalescerTest {
+
+    static final class Recorder implements ChangeSetAwareComponent<ConfigurationParameter>,
+            DataSetChangeAwareComponent<ConfigurationParameter>, DeleteAwareComponent<ConfigurationParameter>,
+            DataChangeAwareComponent<ConfigurationParameter> {
+        final List<ChangeSet> changeSets = Collections.synchronizedList(new ArrayList<ChangeSet>());
+        final List<ConfigurationParameter> changedItems = new ArrayList<ConfigurationParameter>();
+        int setChanges = 0;
+        int deletes = 0;
+        CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void onChanges(ChangeSet changes) {
+            changeSets.add(changes);
+            latch.countDown();
+        }
+
+        @Override
+        public void onChange(Class<? extends AbstractModelBase> clazz) {
+            setChanges++;
+        }
+
+        @Override
+        public void onDelete() {
+            deletes++;
+        }
+
+        @Override
+        public void onChange(ConfigurationParameter changedInstance) {
+            changedItems.add(changedInstance);
+        }
+    }
+
+    private final EventDispatcher dispatcher = new EventDispatcher();
+    private final EventCoalescer coalescer = new EventCoalescer(dispatcher);
+    private final Recorder recorder = new Recorder();
+
+    @Before
+    public void setUp() {
+        dispatcher.getChangeSetListeners().add(ConfigurationParameter.class, recorder, DispatchMode.SYNCHRONOUS);
+        dispatcher.getSetChangeListeners().add(ConfigurationParameter.class, recorder, DispatchMode.SYNCHRONOUS);
+        dispatcher.getDeleteListeners().add(ConfigurationParameter.class, recorder, DispatchMode.SYNCHRONOUS);
+        dispatcher.getDataChangeListeners().add(ConfigurationParameter.class, recorder, DispatchMode.SYNCHRONOUS);
+    }
+
+    private static ConfigurationParameter item(long id) {
+        ConfigurationParameter result = new ConfigurationParameter();
+        result.setId(id);
+        return result;
+    }
+
+    @Test
+    public void testBatchIsDeliveredOnce() {
+        coalescer.begin();
+        for (long id = 1; id <= 100; ++id) {
+            coalescer.inserted(item(id));
+        }
+        coalescer.updated(item(1));
+        coalescer.updated(item(200));
+        coalescer.deleted(ConfigurationParameter.class, 2L);
+        coalescer.deleted(ConfigurationParameter.class, 300L);
+        assertTrue(recorder.changeSets.isEmpty());
+        coalescer.commit();
+
+        assertFalse(coalescer.isBatching());
+        assertEquals(1, recorder.changeSets.size());
+        assertEquals(1, recorder.setChanges);
+        assertEquals(1, recorder.deletes);
+        ChangeSet changes = recorder.changeSets.get(0);
+        assertTrue(changes.isComplete());
+        assertEquals(99, changes.getInsertedIds().size());
+        assertFalse(changes.getInsertedIds().contains(2L));
+        assertEquals(Collections.singleton(200L), changes.getUpdatedIds());
+        assertEquals(new HashSet<Long>(Arrays.asList(2L, 300L)), changes.getDeletedIds());
+        assertEquals(102, changes.getChangedIds().size());
+    }
+
+    @Test
+    public void testUpdatesWithoutIdAreMergedByIdentity() {
+        ConfigurationParameter first = new ConfigurationParameter();
+        ConfigurationParameter second = new ConfigurationParameter();
+        coalescer.begin();
+        coalescer.updated(first);
+        coalescer.updated(second);
+        coalescer.updated(first);
+        coalescer.updated(item(1));
+        coalescer.commit();
+
+        assertEquals(3, recorder.changedItems.size());
+        assertSame(first, recorder.changedItems.get(1));
+        assertSame(second, recorder.changedItems.get(2));
+        ChangeSet changes = recorder.changeSets.get(0);
+        assertEquals(Collections.singleton(1L), changes.getUpdatedIds());
+        assertFalse(changes.isComplete());
+    }
+
+    @Test
+    public void testRollbackDiscardsOutermostBatch() {
+        coalescer.begin();
+        coalescer.inserted(item(1));
+        coalescer.begin();
+        coalescer.inserted(item(2));
+        coalescer.rollback();
+        coalescer.commit();
+
+        assertFalse(coalescer.isBatching());
+        assertTrue(recorder.changeSets.isEmpty());
+        assertEquals(0, recorder.setChanges);
+    }
+
+    @Test
+    public void testNestedBatchDeliversOnOutermostCommit() {
+        coalescer.begin();
+        coalescer.begin();
+        coalescer.inserted(item(1));
+        coalescer.commit();
+        assertTrue(recorder.changeSets.isEmpty());
+        coalescer.setChanged(ConfigurationParameter.class);
+        coalescer.commit();
+
+        assertEquals(1, recorder.changeSets.size());
+        assertFalse(recorder.changeSets.get(0).isComplete());
+        assertEquals(1, recorder.setChanges);
+    }
+
+    @Test
+    public void testUnbatchedEventsAreDeliveredImmediately() {
+        coalescer.inserted(item(1));
+        coalescer.inserted(item(2));
+
+        assertEquals(2, recorder.changeSets.size());
+        assertEquals(2, recorder.setChanges);
+        assertEquals(Collections.singleton(2L), recorder.changeSets.get(1).getInsertedIds());
+        assertTrue(recorder.changeSets.get(1).isComplete());
+
+        ConfigurationParameter changed = item(3);
+        coalescer.updated(changed);
+        coalescer.deleted(ConfigurationParameter.class, 4L);
+        coalescer.deleted(ConfigurationParameter.class, null);
+        coalescer.setChanged(ConfigurationParameter.class);
+
+        assertEquals(Collections.singletonList(changed), recorder.changedItems);
+        assertEquals(2, recorder.deletes);
+        assertEquals(3, recorder.setChanges);
+        assertEquals(6, recorder.changeSets.size());
+        ChangeSet update = recorder.changeSets.get(2);
+        assertEquals(Collections.singleton(3L), update.getUpdatedIds());
+        assertTrue(update.getInsertedIds().isEmpty() && update.getDeletedIds().isEmpty() && update.isComplete());
+        assertEquals(Collections.singleton(4L), recorder.changeSets.get(3).getDeletedIds());
+        assertTrue(recorder.changeSets.get(3).isComplete());
+        assertFalse(recorder.changeSets.get(4).isComplete());
+        assertTrue(recorder.changeSets.get(5).getChangedIds().isEmpty());
+        assertFalse(recorder.changeSets.get(5).isComplete());
+    }
+
+    @Test
+    public void testUnbatchedEventsWithoutChangeSetListener() {
+        dispatcher.getChangeSetListeners().remove(ConfigurationParameter.class, recorder);
+        coalescer.inserted(item(1));
+        coalescer.deleted(ConfigurationParameter.class, 1L);
+
+        assertEquals(1, recorder.setChanges);
+        assertEquals(1, recorder.deletes);
+        assertTrue(recorder.changeSets.isEmpty());
+    }
+
+    @Test
+    public void testWindowCollectsEvents() throws InterruptedException {
+        coalescer.setWindow(50);
+        coalescer.inserted(item(1));
+        coalescer.deleted(ConfigurationParameter.class, 1L);
+        coalescer.inserted(item(2));
+
+        assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.changeSets.size());
+        ChangeSet changes = recorder.changeSets.get(0);
+        assertEquals(Collections.singleton(2L), changes.getInsertedIds());
+        assertEquals(Collections.singleton(1L), changes.getDeletedIds());
+        coalescer.setWindow(0);
+    }
+}
@@ -0,0 +1,164 @@
+package org.baracus.signalling;
+
+import org.baracus.model.ConfigurationParameter;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit Test for the event dispatcher and its listener registries
+ */
+public class EventDispatcherTest {
+
+    static final class Tick implements GenericEvent {
+        final int number;
+
+        Tick(int number) {
+            this.number = number;
+        }
+    }
+
+    static final class Recorder implements GenericEventAwareComponent<Tick> {
+        final List<Integer> numbers = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        @Override
+        public void handleEvent(Tick event) {
+            numbers.add(event.number);
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    private final EventDispatcher dispatcher = new EventDispatcher();
+
+    @Test
+    public void testSynchronous() {
+        Recorder recorder = new Recorder();
+        dispatcher.getGenericListeners().add(Tick.class, recorder, DispatchMode.SYNCHRONOUS);
+        dispatcher.getGenericListeners().add(Tick.class, recorder, DispatchMode.SYNCHRONOUS); // ignored
+
+        dispatcher.emitGeneric(new Tick(1));
+
+        assertEquals(Collections.singletonList(1), recorder.numbers);
+        assertSame(Thread.currentThread(), recorder.threads.get(0));
+    }
+
+    @Test
+    public void testBackgroundKeepsOrderAcrossFullQueue() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        dispatcher.setBackgroundExecutor(executor);
+        Recorder recorder = new Recorder();
+        dispatcher.getGenericListeners().add(Tick.class, recorder, DispatchMode.BACKGROUND);
+
+        // more events than the queue holds
+        int count = 5000;
+        for (int i = 0; i < count; ++i) {
+            dispatcher.emitGeneric(new Tick(i));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recorder.numbers.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertEquals(count, recorder.numbers.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i, recorder.numbers.get(i).intValue());
+        }
+        assertNotSame(Thread.currentThread(), recorder.threads.get(0));
+    }
+
+    @Test
+    public void testFailingListenerIsRemoved() {
+        final int[] calls = new int[1];
+        DeleteAwareComponent<ConfigurationParameter> failing = new DeleteAwareComponent<ConfigurationParameter>() {
+            @Override
+            public void onDelete() {
+                calls[0]++;
+                throw new IllegalStateException("expected");
+            }
+        };
+        dispatcher.getDeleteListeners().set(ConfigurationParameter.class, failing, DispatchMode.SYNCHRONOUS);
+
+        dispatcher.emitDelete(ConfigurationParameter.class);
+        dispatcher.emitDelete(ConfigurationParameter.class);
+
+        assertEquals(1, calls[0]);
+        assertFalse(dispatcher.getDeleteListeners().hasListeners(ConfigurationParameter.class));
+    }
+
+    @Test
+    public void testRegistry() {
+        ListenerRegistry<String> registry = new ListenerRegistry<String>();
+        Object a = new Object();
+        Object b = new Object();
+        registry.add("x", a, DispatchMode.SYNCHRONOUS);
+        registry.add("x", b, DispatchMode.BACKGROUND);
+        registry.add("y", a, DispatchMode.SYNCHRONOUS);
+        assertEquals(2, registry.get("x").length);
+
+        assertTrue(registry.remove(a));
+        assertEquals(1, registry.get("x").length);
+        assertSame(b, registry.get("x")[0].getListener());
+        assertFalse(registry.hasListeners("y"));
+
+        registry.set("x", a, DispatchMode.MAIN_THREAD);
+        assertEquals(1, registry.get("x").length);
+        assertSame(a, registry.get("x")[0].getListener());
+        assertFalse(registry.remove("x", b));
+    }
+
+    static final class CountingDeleteListener implements DeleteAwareComponent<ConfigurationParameter> {
+        int calls = 0;
+
+        @Override
+        public void onDelete() {
+            calls++;
+        }
+    }
+
+    @Test
+    public void testMultipleDeleteListeners() {
+        CountingDeleteListener first = new CountingDeleteListener();
+        CountingDeleteListener second = new CountingDeleteListener();
+        dispatcher.getDeleteListeners().add(ConfigurationParameter.class, first, DispatchMode.SYNCHRONOUS);
+        dispatcher.getDeleteListeners().add(ConfigurationParameter.class, second, DispatchMode.SYNCHRONOUS);
+
+        dispatcher.emitDelete(ConfigurationParameter.class);
+        dispatcher.getDeleteListeners().remove(ConfigurationParameter.class, first);
+        dispatcher.emitDelete(ConfigurationParameter.class);
+
+        assertEquals(1, first.calls);
+        assertEquals(2, second.calls);
+    }
+
+    @Test
+    public void testWeakListenerIsPurged() throws InterruptedException {
+        CountingDeleteListener listener = new CountingDeleteListener();
+        WeakReference<Object> reference = new WeakReference<Object>(listener);
+        dispatcher.getDeleteListeners().add(ConfigurationParameter.class, listener, DispatchMode.SYNCHRONOUS);
+        dispatcher.emitDelete(ConfigurationParameter.class);
+        assertEquals(1, listener.calls);
+
+        listener = null;
+        for (int i = 0; i < 50 && reference.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // the VM does not promise to collect, skip instead of passing without a check
+        assumeTrue(reference.get() == null);
+
+        dispatcher.emitDelete(ConfigurationParameter.class);
+        assertFalse(dispatcher.getDeleteListeners().hasListeners(ConfigurationParameter.class));
+    }
+}
@@ -0,0 +1,175 @@
+package org.baracus.util;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the asynchronous log target and its overflow policies
+ */
+public class AsyncLogTargetTest {
+
+    static class RecordingTarget extends Logger.SysOutLogger {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch gate;
+
+        RecordingTarget(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void dump(String tag, String msg, Throwable t) {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(msg);
+        }
+    }
+
+    @Test
+    public void testKeepsOrderAndFlushes() {
+        RecordingTarget delegate = new RecordingTarget(new CountDownLatch(0));
+        AsyncLogTarget candidate = new AsyncLogTarget(delegate, 8, AsyncLogTarget.OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 100; ++i) {
+            candidate.debug("TAG", String.valueOf(i));
+        }
+        candidate.flush();
+
+        assertEquals(100, delegate.messages.size());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(String.valueOf(i), delegate.messages.get(i));
+        }
+        assertEquals(0, candidate.getDroppedCount());
+        assertEquals(0, candidate.getQueuedCount());
+        assertEquals(100, candidate.getDeliveredCount());
+    }
+
+    @Test
+    public void testCloseDrainsAndStops() {
+        RecordingTarget delegate = new RecordingTarget(new CountDownLatch(0));
+        AsyncLogTarget candidate = new AsyncLogTarget(delegate, 8, AsyncLogTarget.OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 100; ++i) {
+            candidate.info("TAG", String.valueOf(i));
+        }
+        candidate.close();
+
+        assertTrue(candidate.isStopped());
+        assertEquals(100, delegate.messages.size());
+        assertEquals("99", delegate.messages.get(99));
+
+        // written by the caller once the log thread is gone
+        candidate.warn("TAG", "late");
+        assertEquals(101, delegate.messages.size());
+        assertEquals("late", delegate.messages.get(100));
+        candidate.close();
+    }
+
+    @Test
+    public void testStructuredEventsAsText() {
+        RecordingTarget delegate = new RecordingTarget(new CountDownLatch(0));
+        AsyncLogTarget candidate = new AsyncLogTarget(delegate, 4, AsyncLogTarget.OverflowPolicy.BLOCK);
+
+        LogEvent event = new LogEvent(true);
+        for (int i = 0; i < 10; ++i) {
+            candidate.log("TAG", event.startPlain(Logger.Level.INFO, "saved", null).with("rows", i));
+        }
+        candidate.close();
+
+        assertEquals(10, delegate.messages.size());
+        assertEquals(" saved rows=9", delegate.messages.get(9));
+    }
+
+    @Test
+    public void testStructuredEventsToRollingFile() throws Exception {
+        File directory = File.createTempFile("baracus", "async");
+        directory.delete();
+        RollingFileLogTarget target = new RollingFileLogTarget(directory, 4096, 0, 1024 * 1024);
+        target.setEncoder(new JsonLinesEncoder());
+        AsyncLogTarget candidate = new AsyncLogTarget(target, 8, AsyncLogTarget.OverflowPolicy.BLOCK);
+
+        // one event object reused by the producer like Logger does, the buffer must copy it
+        LogEvent event = new LogEvent(true);
+        for (int i = 0; i < 50; ++i) {
+            candidate.log("APP", event.startPlain(Logger.Level.DEBUG, "saved", null)
+                    .with("table", "customer")
+                    .with("rows", i));
+        }
+        candidate.close();
+        target.close();
+        assertTrue(target.awaitRoller(5000));
+
+        List<String> lines = new ArrayList<String>();
+        for (File segment : target.listSegments(RollingFileLogTarget.COMPRESSED_SUFFIX)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(segment)), "UTF-8"));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+            reader.close();
+            segment.delete();
+        }
+        directory.delete();
+
+        assertEquals(50, lines.size());
+        for (int i = 0; i < 50; ++i) {
+            assertTrue(lines.get(i), lines.get(i).contains("\"msg\":\"saved\",\"table\":\"customer\",\"rows\":" + i + "}"));
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingTarget delegate = new RecordingTarget(gate);
+        AsyncLogTarget candidate = new AsyncLogTarget(delegate, 4, AsyncLogTarget.OverflowPolicy.DROP);
+
+        for (int i = 0; i < 20; ++i) {
+            candidate.info("TAG", String.valueOf(i));
+        }
+        long dropped = candidate.getDroppedCount();
+        assertTrue(dropped >= 15); // four buffered, at most one taken by the blocked consumer
+        gate.countDown();
+        candidate.flush();
+
+        assertEquals(20 - dropped, delegate.messages.size());
+        assertEquals("0", delegate.messages.get(0));
+    }
+
+    @Test
+    public void testSampleKeepsErrors() {
+        final CountDownLatch gate = new CountDownLatch(1);
+        RecordingTarget delegate = new RecordingTarget(gate);
+        AsyncLogTarget candidate = new AsyncLogTarget(delegate, 4, AsyncLogTarget.OverflowPolicy.SAMPLE, 1000);
+
+        for (int i = 0; i < 10; ++i) {
+            candidate.debug("TAG", "debug");
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                gate.countDown();
+            }
+        }).start();
+        candidate.error("TAG", "error"); // the buffer is full, waits for a free slot
+        candidate.flush();
+
+        assertTrue(candidate.getDroppedCount() > 0);
+        assertEquals("error", delegate.messages.get(delegate.messages.size() - 1));
+    }
+}
@@ -0,0 +1,142 @@
+package org.baracus.util;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the structured log events and their encoders
+ */
+public class LogEventTest {
+
+    private static LogEvent event() {
+        return new LogEvent(true).startPlain(Logger.Level.DEBUG, "saved \"all\"", null)
+                .with("table", "customer")
+                .with("rows", 12)
+                .with("ratio", 0.5)
+                .with("cached", true)
+                .with("name", "Gr\u00fc\u00dfe \ud83d\ude00\n");
+    }
+
+    private static String decode(ByteBuffer buffer) throws IOException {
+        return new String(buffer.array(), 0, buffer.position(), "UTF-8");
+    }
+
+    @Test
+    public void testDisabledEventIgnoresFields() {
+        Logger.setLoggingConfiguration(new LoggingConfiguration());
+        Logger logger = new Logger(LogEventTest.class);
+
+        LogEvent event = logger.atDebug();
+        assertSame(LogEvent.DISABLED, event);
+        event.with("rows", 12).with("table", "customer").log("ignored");
+        assertEquals(0, event.getFieldCount());
+    }
+
+    @Test
+    public void testText() {
+        StringBuilder builder = new StringBuilder();
+        event().appendTo(builder);
+        assertEquals("saved \"all\" table=customer rows=12 ratio=0.5 cached=true name=Gr\u00fc\u00dfe \ud83d\ude00\n", builder.toString());
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        LogEvent event = event();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new JsonLinesEncoder().encode("APP", event, buffer);
+
+        assertEquals("{\"ts\":" + event.getTimestamp() + ",\"level\":\"DEBUG\",\"tag\":\"APP\",\"logger\":\"\","
+                + "\"msg\":\"saved \\\"all\\\"\",\"table\":\"customer\",\"rows\":12,\"ratio\":0.5,\"cached\":true,"
+                + "\"name\":\"Gr\u00fc\u00dfe \ud83d\ude00\\n\"}\n", decode(buffer));
+    }
+
+    @Test
+    public void testJsonLongs() throws IOException {
+        long[] values = {0, 7, -7, 10, 1000000007, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            ByteBuffer buffer = ByteBuffer.allocate(32);
+            JsonLinesEncoder.putLong(buffer, value);
+            assertEquals(String.valueOf(value), decode(buffer));
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        LogEvent event = event();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new BinaryLogEventEncoder().encode("APP", event, buffer);
+        buffer.flip();
+
+        assertEquals(buffer.limit() - 4, buffer.getInt());
+        assertEquals(BinaryLogEventEncoder.VERSION, buffer.get());
+        assertEquals(event.getTimestamp(), buffer.getLong());
+        assertEquals(Logger.Level.DEBUG.ordinal(), buffer.get());
+        assertEquals("APP", readString(buffer));
+        assertEquals("", readString(buffer));
+        assertEquals("saved \"all\"", readString(buffer));
+        assertEquals(5, buffer.getShort());
+        assertEquals("table", readString(buffer));
+        assertEquals(LogEvent.TYPE_STRING, buffer.get());
+        assertEquals("customer", readString(buffer));
+        assertEquals("rows", readString(buffer));
+        assertEquals(LogEvent.TYPE_LONG, buffer.get());
+        assertEquals(12, buffer.getLong());
+        assertEquals("ratio", readString(buffer));
+        assertEquals(LogEvent.TYPE_DOUBLE, buffer.get());
+        assertEquals(0.5, buffer.getDouble(), 0);
+        assertEquals("cached", readString(buffer));
+        assertEquals(LogEvent.TYPE_BOOLEAN, buffer.get());
+        assertEquals(1, buffer.get());
+        assertEquals("name", readString(buffer));
+        assertEquals(LogEvent.TYPE_STRING, buffer.get());
+        assertEquals("Gr\u00fc\u00dfe \ud83d\ude00\n", readString(buffer));
+        assertNull(readString(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        String result = new String(buffer.array(), buffer.position(), length, "UTF-8");
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    @Test
+    public void testRollingFileTargetEncodes() throws Exception {
+        File directory = File.createTempFile("baracus", "json");
+        directory.delete();
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        candidate.setEncoder(new JsonLinesEncoder());
+        for (int i = 0; i < 20; ++i) {
+            candidate.log("APP", event());
+        }
+        candidate.info("APP", "plain");
+        candidate.close();
+        assertTrue(candidate.awaitRoller(5000));
+
+        List<File> segments = candidate.listSegments(RollingFileLogTarget.COMPRESSED_SUFFIX);
+        assertTrue(segments.size() > 1);
+        int lines = 0;
+        for (File segment : segments) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(segment)), "UTF-8"));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                assertTrue(line, line.startsWith("{\"ts\":") && line.endsWith("}"));
+                ++lines;
+            }
+            reader.close();
+            segment.delete();
+        }
+        directory.delete();
+        assertEquals(21, lines);
+    }
+}
@@ -21,4 +21,31 @@ public class LoggerTest {
         assertNotNull(probe);
         assertEquals("4 times 3 makes 12", probe);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProcessMessageArgsSinglePass() throws Exception {
+        assertEquals("a$2b", candidate.processMessageArgs("$1$2b", "a"));
+        assertEquals("x0 costs $", candidate.processMessageArgs("$10 costs $", "x"));
+        assertEquals("$0 $01 null", candidate.processMessageArgs("$0 $01 $1", (Object) null));
+        assertEquals("no args $1", candidate.processMessageArgs("no args $1"));
+        Object[] args = new Object[12];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = i + 1;
+        }
+        assertEquals("12 1", candidate.processMessageArgs("$12 $1", args));
+    }
+
+    @Test
+    public void testLevelIsCachedUntilConfigurationChanges() throws Exception {
+        LoggingConfiguration configuration = new LoggingConfiguration();
+        Logger.setLoggingConfiguration(configuration);
+        assertFalse(candidate.isDebugEnabled());
+
+        configuration.setLogLevel(LoggerTest.class, Logger.Level.DEBUG);
+        assertTrue(candidate.isDebugEnabled());
+        assertFalse(candidate.isTraceEnabled());
+
+        Logger.setLoggingConfiguration(new LoggingConfiguration());
+        assertFalse(candidate.isDebugEnabled());
+    }
+}
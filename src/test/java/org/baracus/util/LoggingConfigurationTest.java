@@ -123,4 +123,40 @@ public class LoggingConfigurationTest {
     public void testSetLogLevel() throws Exception {
 
     }
+
+    @Test
+    public void testMostSpecificPackageWins() throws Exception {
+        candidate.setLogLevel("org", Logger.Level.WARN);
+        candidate.setLogLevel("org.baracus.dao", Logger.Level.TRACE);
+        candidate.setLogLevel("org.baracus", Logger.Level.INFO);
+
+        assertEquals(Logger.Level.TRACE, candidate.getLogLevel("org.baracus.dao"));
+        assertEquals(Logger.Level.TRACE, candidate.getLogLevel("org.baracus.dao.impl"));
+        assertEquals(Logger.Level.INFO, candidate.getLogLevel("org.baracus.util"));
+        assertEquals(Logger.Level.WARN, candidate.getLogLevel("org.baracusx"));
+        assertEquals(Logger.Level.ERROR, candidate.getLogLevel("com.example"));
+        assertEquals(Logger.Level.ERROR, candidate.getLogLevel(""));
+
+        candidate.setDefaultLogLevel(Logger.Level.DEBUG);
+        assertEquals(Logger.Level.DEBUG, candidate.getLogLevel("com.example"));
+        assertEquals(Logger.Level.TRACE, candidate.getLogLevel("org.baracus.dao"));
+    }
+
+    /**
+     * resolves the levels of 50000 packages against 5000 configured packages
+     */
+    @Test
+    public void testThousandsOfPackages() throws Exception {
+        Logger.Level[] levels = Logger.Level.values();
+        for (int i = 0; i < 5000; ++i) {
+            candidate.setLogLevel("com.vendor" + (i % 50) + ".module" + i, levels[i % levels.length]);
+        }
+
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 5000; ++i) {
+                assertEquals(levels[i % levels.length], candidate.getLogLevel("com.vendor" + (i % 50) + ".module" + i + ".impl.sub"));
+            }
+        }
+        assertEquals(Logger.Level.ERROR, candidate.getLogLevel("com.vendor0.module1"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package org.baracus.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit Test for the rolling file log target
+ */
+public class RollingFileLogTargetTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("baracus", "logs");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRollsAndCompresses() throws Exception {
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        for (int i = 0; i < 100; ++i) {
+            candidate.info("TAG", "message number " + i);
+        }
+        candidate.error("TAG", "failure", new IllegalStateException("expected"));
+        candidate.close();
+        assertTrue(candidate.awaitRoller(5000));
+
+        List<File> segments = candidate.listSegments(RollingFileLogTarget.COMPRESSED_SUFFIX);
+        assertTrue(segments.size() > 1);
+        assertTrue(candidate.listSegments(RollingFileLogTarget.ACTIVE_SUFFIX, RollingFileLogTarget.CLOSED_SUFFIX).isEmpty());
+
+        StringBuilder all = new StringBuilder();
+        for (File segment : segments) {
+            all.append(read(segment));
+        }
+        String content = all.toString();
+        assertTrue(content.contains(" I TAG message number 0\n"));
+        assertTrue(content.contains(" I TAG message number 99\n"));
+        assertTrue(content.contains("IllegalStateException: expected"));
+        assertFalse(content.contains("\u0000"));
+    }
+
+    @Test
+    public void testKeepsDiskBudget() throws Exception {
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 4096);
+        for (int i = 0; i < 2000; ++i) {
+            candidate.info("TAG", "incompressible " + Math.random() + " " + Math.random());
+        }
+        candidate.close();
+        assertTrue(candidate.awaitRoller(5000));
+
+        long total = 0;
+        for (File file : directory.listFiles()) {
+            total += file.length();
+        }
+        assertTrue(total <= 4096);
+    }
+
+    @Test
+    public void testRecoversOrphanedSegments() throws Exception {
+        RandomAccessFile orphan = new RandomAccessFile(new File(directory, "log-1" + RollingFileLogTarget.ACTIVE_SUFFIX), "rw");
+        orphan.write("before the crash\n".getBytes("UTF-8"));
+        orphan.setLength(2048);
+        orphan.close();
+
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        candidate.close();
+        assertTrue(candidate.awaitRoller(5000));
+
+        List<File> segments = candidate.listSegments(RollingFileLogTarget.COMPRESSED_SUFFIX);
+        assertEquals(1, segments.size());
+        assertEquals("before the crash\n", read(segments.get(0)));
+    }
+
+    @Test
+    public void testKeepsActiveSegmentOfLiveTarget() throws Exception {
+        RollingFileLogTarget live = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        live.info("TAG", "first");
+        List<File> active = live.listSegments(RollingFileLogTarget.ACTIVE_SUFFIX);
+        assertEquals(1, active.size());
+
+        // a second target on the same directory must not take the live segment for an orphan
+        RollingFileLogTarget other = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        other.close();
+        assertTrue(other.awaitRoller(5000));
+        assertTrue(active.get(0).isFile());
+        assertEquals(1024, active.get(0).length());
+
+        live.info("TAG", "second");
+        live.close();
+        assertTrue(live.awaitRoller(5000));
+        List<File> segments = live.listSegments(RollingFileLogTarget.COMPRESSED_SUFFIX);
+        assertEquals(1, segments.size());
+        String content = read(segments.get(0));
+        assertTrue(content.contains(" I TAG first\n"));
+        assertTrue(content.endsWith(" I TAG second\n"));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        candidate.warn("TAG", "exported");
+        File target = new File(directory, "export");
+
+        long size = candidate.exportTo(target, 3);
+        candidate.close();
+
+        assertTrue(size > 0);
+        File[] exported = target.listFiles();
+        assertEquals(1, exported.length);
+        assertTrue(read(exported[0]).endsWith(" W TAG exported\n"));
+    }
+
+    @Test
+    public void testExportNothing() throws Exception {
+        RollingFileLogTarget candidate = new RollingFileLogTarget(directory, 1024, 0, 1024 * 1024);
+        for (int i = 0; i < 100; ++i) {
+            candidate.info("TAG", "message number " + i);
+        }
+        File target = new File(directory, "export");
+
+        assertEquals(0, candidate.exportTo(target, 0));
+        assertEquals(0, candidate.exportTo(target, -1));
+        candidate.close();
+        assertEquals(0, target.listFiles().length);
+    }
+}